@@ -5,6 +5,8 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
 import java.util.NoSuchElementException;
 import java.util.StringTokenizer;
 
@@ -45,6 +47,12 @@ public class ByteArrayLayout {
 	
 	public static final String NONE = "NONE";
 	
+	// How the records for this layout are stored in the table segments on disk
+	public static final String FORMAT_CSV = "csv";
+	public static final String FORMAT_BINARY = "binary";
+	public String segmentFormat = FORMAT_CSV;
+	public int[] rollupIntervals = new int[0]; // seconds of uptime in each rollup tier kept for long graphs, none by default
+	
 	public String[] fieldName = null;  // name of the field that the bits correspond to
 	public String[] type = null;  // the type of the data long, int, byte
 	public int[] conversion = null; // the conversion routine to change raw bits into a real value
@@ -59,6 +67,7 @@ public class ByteArrayLayout {
 	public String[] description = null;
 	
 	private int numberOfBytes = 0;
+	private HashMap<String, Integer> fieldIndex = null; // lower case field name to position, built when the layout is loaded
 
 	public static final int CONVERT_NONE = 0;
 	
@@ -85,6 +94,10 @@ public class ByteArrayLayout {
 		return numberOfBytes;
 	}
 	
+	public boolean isBinarySegments() {
+		return FORMAT_BINARY.equalsIgnoreCase(segmentFormat);
+	}
+	
 	public boolean isSecondaryPayload() {
 		if (parentLayout != null) return true;
 		return false;
@@ -98,20 +111,26 @@ public class ByteArrayLayout {
 		return conversions;
 	}
 	
-	public boolean hasFieldName(String name) {
+	/**
+	 * Build the map from field name to position.  Names are not case sensitive and if a name is repeated then the
+	 * first field with that name is used.
+	 */
+	private void buildFieldIndex() {
+		HashMap<String, Integer> index = new HashMap<String, Integer>(fieldName.length * 2);
 		for (int i=0; i < fieldName.length; i++) {
-			if (name.equalsIgnoreCase(fieldName[i]))
-				return true;
+			String key = fieldName[i].toLowerCase(Locale.ROOT);
+			if (!index.containsKey(key))
+				index.put(key, i);
 		}
-		return false;
+		fieldIndex = index;
+	}
+	
+	public boolean hasFieldName(String name) {
+		return getPositionByName(name) != ERROR_POSITION;
 	}
 	
 	public int getConversionByName(String name) {
-		int pos = ERROR_POSITION;
-		for (int i=0; i < fieldName.length; i++) {
-			if (name.equalsIgnoreCase(fieldName[i]))
-				pos = i;
-		}
+		int pos = getPositionByName(name);
 		if (pos == ERROR_POSITION) {
 			return ByteArrayLayout.CONVERT_NONE;
 		} else {
@@ -120,11 +139,7 @@ public class ByteArrayLayout {
 	}
 
 	public String getUnitsByName(String name) {
-		int pos = ERROR_POSITION;
-		for (int i=0; i < fieldName.length; i++) {
-			if (name.equalsIgnoreCase(fieldName[i]))
-				pos = i;
-		}
+		int pos = getPositionByName(name);
 		if (pos == ERROR_POSITION) {
 			return "";
 		} else {
@@ -132,25 +147,22 @@ public class ByteArrayLayout {
 		}
 	}
 	
+	/**
+	 * Return the position of a field in the layout, which is also its position in DataRecord.fieldValue
+	 * @param name - not case sensitive
+	 * @return the position or ERROR_POSITION if there is no such field
+	 */
 	public int getPositionByName(String name) {
-		int pos = ERROR_POSITION;
-		for (int i=0; i < fieldName.length; i++) {
-			if (name.equalsIgnoreCase(fieldName[i]))
-				pos = i;
-		}
-		if (pos == ERROR_POSITION) {
-			return ERROR_POSITION;
-		} else {
-			return pos;
-		}
+		if (name == null) return ERROR_POSITION;
+		if (fieldIndex == null)
+			buildFieldIndex();
+		Integer pos = fieldIndex.get(name.toLowerCase(Locale.ROOT));
+		if (pos == null) return ERROR_POSITION;
+		return pos;
 	}
 	
 	public String getShortNameByName(String name) {
-		int pos = ERROR_POSITION;
-		for (int i=0; i < fieldName.length; i++) {
-			if (name.equalsIgnoreCase(fieldName[i]))
-				pos = i;
-		}
+		int pos = getPositionByName(name);
 		if (pos == ERROR_POSITION) {
 			return "";
 		} else {
@@ -159,11 +171,7 @@ public class ByteArrayLayout {
 	}
 
 	public String getModuleByName(String name) {
-		int pos = ERROR_POSITION;
-		for (int i=0; i < fieldName.length; i++) {
-			if (name.equalsIgnoreCase(fieldName[i]))
-				pos = i;
-		}
+		int pos = getPositionByName(name);
 		if (pos == ERROR_POSITION) {
 			return "";
 		} else {
@@ -227,6 +235,7 @@ public class ByteArrayLayout {
 				numberOfBytes += fieldByteLength[i];
 			}
 		}
+		buildFieldIndex();
 	}
 
 	public String getTableCreateStmt(boolean storeMode) {
@@ -4,6 +4,7 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.NoSuchElementException;
 import java.util.StringTokenizer;
 
@@ -25,6 +26,14 @@ public class ConversionTable {
 	public int[] low = null;  // name of the field that the bits correspond to
 	public int[] high = null;  // name of the field that the bits correspond to
 	public String[] description = null;  // name of the field that the bits correspond to
+	
+	// Each conversion is compiled when it is loaded into the simplest kernel that gives the same polynomial
+	static final int KERNEL_IDENTITY = 0; // x
+	static final int KERNEL_CONSTANT = 1; // a
+	static final int KERNEL_LINEAR = 2; // a + bx
+	static final int KERNEL_POLYNOMIAL = 3; // Horner form up to the highest non zero coefficient
+	int[] kernel = null;
+	double[][] coefficients = null; // coefficients[conversion] highest power first, for Horner
 
 	public static final String TERMINATOR = "NOTES:"; // File is done when we detect this in the first row
 	
@@ -52,17 +61,117 @@ public class ConversionTable {
 	public double convertRawValue(int conversion, long rawValue) {
 		if (conversion < 0 || conversion > NUMBER_OF_FIELDS)
 			throw new NumberFormatException("Conversion number invalid");
-		double A = a[conversion];
-		double B = b[conversion];
-		double C = c[conversion];
-		double D = d[conversion];
-		double E = e[conversion];
-		double F = f[conversion];
-		double val = A + B * rawValue + C * Math.pow(rawValue, 2) + D * Math.pow(rawValue, 3) + E * Math.pow(rawValue, 4)
-			+ F * Math.pow(rawValue, 5);
+		switch (kernel[conversion]) {
+		case KERNEL_IDENTITY:
+			return rawValue;
+		case KERNEL_CONSTANT:
+			return a[conversion];
+		case KERNEL_LINEAR:
+			return a[conversion] + b[conversion] * rawValue;
+		default:
+			return horner(coefficients[conversion], rawValue);
+		}
+	}
+	
+	/**
+	 * Convert a block of raw values with the same conversion, such as a column of graph data.  The kernel is chosen
+	 * once for the block rather than for each value.
+	 * @param conversion
+	 * @param raw
+	 * @param out - must be at least as long as raw
+	 */
+	public void convert(int conversion, int[] raw, double[] out) {
+		convert(conversion, raw, 0, out, 0, raw.length);
+	}
+	
+	public void convert(int conversion, int[] raw, int rawOffset, double[] out, int outOffset, int length) {
+		if (conversion < 0 || conversion > NUMBER_OF_FIELDS)
+			throw new NumberFormatException("Conversion number invalid");
+		int k = kernel[conversion];
+		if (k == KERNEL_CONSTANT) {
+			Arrays.fill(out, outOffset, outOffset + length, a[conversion]);
+		} else if (k == KERNEL_IDENTITY) {
+			for (int i=0; i < length; i++)
+				out[outOffset + i] = raw[rawOffset + i];
+		} else if (k == KERNEL_LINEAR) {
+			double A = a[conversion];
+			double B = b[conversion];
+			for (int i=0; i < length; i++)
+				out[outOffset + i] = A + B * raw[rawOffset + i];
+		} else {
+			double[] coef = coefficients[conversion];
+			for (int i=0; i < length; i++)
+				out[outOffset + i] = horner(coef, raw[rawOffset + i]);
+		}
+	}
+	
+	/**
+	 * Return the range of raw values that could convert to a value between low and high, so that a search can test
+	 * the raw values.  The range may be wider than needed but never narrower.  A polynomial may not be monotonic, so
+	 * every raw value is returned for those.
+	 * @param conversion
+	 * @param low
+	 * @param high
+	 * @return the lowest and highest raw value, or null if no raw value converts into the range
+	 */
+	public double[] getRawRange(int conversion, double low, double high) {
+		if (conversion < 0 || conversion > NUMBER_OF_FIELDS)
+			throw new NumberFormatException("Conversion number invalid");
+		switch (kernel[conversion]) {
+		case KERNEL_IDENTITY:
+			return new double[] {Math.floor(low), Math.ceil(high)};
+		case KERNEL_CONSTANT:
+			if (a[conversion] < low || a[conversion] > high) return null;
+			return new double[] {Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY};
+		case KERNEL_LINEAR:
+			double r1 = (low - a[conversion]) / b[conversion];
+			double r2 = (high - a[conversion]) / b[conversion];
+			// Widen by one count so that rounding in the division can not drop a value on the edge
+			return new double[] {Math.floor(Math.min(r1, r2)) - 1, Math.ceil(Math.max(r1, r2)) + 1};
+		default:
+			return new double[] {Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY};
+		}
+	}
+	
+	private static double horner(double[] coef, double x) {
+		double val = coef[0];
+		for (int i=1; i < coef.length; i++)
+			val = val * x + coef[i];
 		return val;
 	}
 	
+	/**
+	 * True if the conversion keeps the order of the raw values, or reverses it, so that the smallest and largest raw
+	 * values of a group convert to the smallest and largest values.  A polynomial of a higher degree can turn.
+	 * @param conversion
+	 */
+	public boolean isMonotonic(int conversion) {
+		if (conversion < 0 || conversion >= NUMBER_OF_FIELDS) return false;
+		return kernel[conversion] != KERNEL_POLYNOMIAL;
+	}
+	
+	/**
+	 * Pick the kernel for each conversion from the coefficients that are zero
+	 */
+	void compile() {
+		kernel = new int[NUMBER_OF_FIELDS];
+		coefficients = new double[NUMBER_OF_FIELDS][];
+		for (int i=0; i < NUMBER_OF_FIELDS; i++) {
+			double[] coef = {f[i], e[i], d[i], c[i], b[i], a[i]};
+			int first = 0;
+			while (first < coef.length-1 && coef[first] == 0)
+				first++;
+			int degree = coef.length-1 - first;
+			if (degree == 0)
+				kernel[i] = KERNEL_CONSTANT;
+			else if (degree == 1)
+				kernel[i] = (a[i] == 0 && b[i] == 1) ? KERNEL_IDENTITY : KERNEL_LINEAR;
+			else
+				kernel[i] = KERNEL_POLYNOMIAL;
+			coefficients[i] = Arrays.copyOfRange(coef, first, coef.length);
+		}
+	}
+	
 	protected void load(String file) throws LayoutLoadException, IOException {
 		String line;
 		ArrayList<String> lines = new ArrayList<String>();
@@ -125,6 +234,7 @@ public class ConversionTable {
 
 		if (NUMBER_OF_FIELDS != field) throw new LayoutLoadException("Error loading fields from " + file +
 				". Expected " + NUMBER_OF_FIELDS + " fields , but loaded " + field);
+		compile();
 	}
 	
 	public static void main(String[] args) throws LayoutLoadException, IOException {
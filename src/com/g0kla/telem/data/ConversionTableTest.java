@@ -0,0 +1,67 @@
+package com.g0kla.telem.data;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ConversionTableTest {
+
+	File file;
+	ConversionTable ct;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		file = File.createTempFile("conversions", ".csv");
+		Writer w = new FileWriter(file);
+		w.write("a,a,identity,0,1,0,0,0,0,Counts,0,0,raw\n");
+		w.write("b,b,constant,3.5,0,0,0,0,0,V,0,0,fixed\n");
+		w.write("c,c,linear,-40,0.25,0,0,0,0,C,0,0,temp\n");
+		w.write("d,d,quadratic,1,2,0.5,0,0,0,mA,0,0,\n");
+		w.write("e,e,quintic,0.1,-0.2,0.003,-4e-5,5e-7,-6e-9,dB,0,0,poly\n");
+		w.write("NOTES:\n");
+		w.close();
+		ct = new ConversionTable(file.getPath());
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		file.delete();
+	}
+
+	@Test
+	void testKernels() {
+		assertEquals(ConversionTable.KERNEL_IDENTITY, ct.kernel[0]);
+		assertEquals(ConversionTable.KERNEL_CONSTANT, ct.kernel[1]);
+		assertEquals(ConversionTable.KERNEL_LINEAR, ct.kernel[2]);
+		assertEquals(ConversionTable.KERNEL_POLYNOMIAL, ct.kernel[3]);
+		assertEquals(ConversionTable.KERNEL_POLYNOMIAL, ct.kernel[4]);
+		assertTrue(ct.isMonotonic(0));
+		assertTrue(ct.isMonotonic(1));
+		assertTrue(ct.isMonotonic(2));
+		assertFalse(ct.isMonotonic(3));
+		assertFalse(ct.isMonotonic(4));
+	}
+
+	@Test
+	void testConvertMatchesPolynomial() {
+		int[] raw = {0, 1, -1, 7, 255, 1000, -3000, 4095, 65535};
+		double[] out = new double[raw.length];
+		for (int conv=0; conv < 5; conv++) {
+			ct.convert(conv, raw, out);
+			for (int i=0; i < raw.length; i++) {
+				double x = raw[i];
+				double expected = ct.a[conv] + ct.b[conv] * x + ct.c[conv] * Math.pow(x, 2) + ct.d[conv] * Math.pow(x, 3)
+						+ ct.e[conv] * Math.pow(x, 4) + ct.f[conv] * Math.pow(x, 5);
+				double delta = Math.abs(expected) * 1e-12;
+				assertEquals(expected, ct.convertRawValue(conv, raw[i]), delta);
+				assertEquals(expected, out[i], delta);
+			}
+		}
+	}
+}
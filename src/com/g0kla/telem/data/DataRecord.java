@@ -28,6 +28,19 @@ public class DataRecord implements Comparable<DataRecord> {
 		load(line);
 	}
 	
+	/**
+	 * Create an empty record with the given key.  The caller fills in the fieldValues, which are already converted
+	 * from the raw bytes, for example when they are read back from a binary table segment
+	 */
+	public DataRecord(ByteArrayLayout layout, int id, int resets, long uptime, int type) {
+		this.id = id;
+		this.resets = resets;
+		this.uptime = uptime;
+		this.type = type;
+		this.layout = layout;
+		fieldValue = new int[layout.fieldName.length];
+	}
+	
 	public DataRecord(ByteArrayLayout layout, int id, int resets, long uptime, int type, int[] data) throws LayoutLoadException, IOException {
 		this.id = id;
 		this.resets = resets;
@@ -57,28 +70,42 @@ public class DataRecord implements Comparable<DataRecord> {
 	}
 	
 	public int getRawValue(String name) {
-		for (int i =0; i < layout.fieldName.length; i++)
-			if (layout.fieldName[i].equalsIgnoreCase(name))
-				return fieldValue[i];
-		return 0;
+		int i = layout.getPositionByName(name);
+		if (i == ByteArrayLayout.ERROR_POSITION) return 0;
+		return fieldValue[i];
+	}
+
+	/**
+	 * Return the raw value of the field at this position in the layout.  Use getPositionByName() on the layout to find
+	 * the position once, rather than looking the name up for every record
+	 * @param field
+	 * @return
+	 */
+	public int getRawValue(int field) {
+		return fieldValue[field];
 	}
 
 	public double getDoubleValue(String name) {
-		for (int i =0; i < layout.fieldName.length; i++)
-			if (layout.fieldName[i].equalsIgnoreCase(name)) {
-				ConversionTable ct = layout.getConversionTable(); 
-				return ct.convertRawValue(layout.conversion[i], fieldValue[i]);
-			}
-		return 0;
+		int i = layout.getPositionByName(name);
+		if (i == ByteArrayLayout.ERROR_POSITION) return 0;
+		return getDoubleValue(i);
+	}
+
+	/**
+	 * Return the converted value of the field at this position in the layout
+	 * @param field
+	 * @return
+	 */
+	public double getDoubleValue(int field) {
+		ConversionTable ct = layout.getConversionTable(); 
+		return ct.convertRawValue(layout.conversion[field], fieldValue[field]);
 	}
 
 	public String getStringValue(String name) {
-		for (int i =0; i < layout.fieldName.length; i++)
-			if (layout.fieldName[i].equalsIgnoreCase(name)) {
-				ConversionTable ct = layout.getConversionTable(); 
-				return ct.getStringValue(layout.conversion[i], fieldValue[i]);
-			}
-		return null;
+		int i = layout.getPositionByName(name);
+		if (i == ByteArrayLayout.ERROR_POSITION) return null;
+		ConversionTable ct = layout.getConversionTable(); 
+		return ct.getStringValue(layout.conversion[i], fieldValue[i]);
 	}
 
 	
@@ -0,0 +1,207 @@
+package com.g0kla.telem.data;
+
+import java.util.Arrays;
+
+/**
+ *
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2018 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Smooths a series of values for a graph, such as a running average.  The whole series is filtered once in O(n) and
+ * then new values can be added to the end, dropping the oldest value once the window is full, without filtering the
+ * whole series again.  The filters are:
+ *
+ *   RUNNING_AVERAGE - the mean of the period values centred on each point, from prefix sums
+ *   EXPONENTIAL_AVERAGE - an exponential moving average with the same centre of mass as a running average of the period
+ *   MEDIAN - the median of the period values centred on each point, from a sorted window that slides along the series
+ *
+ * The centred filters hold the first and last full window value out to the ends of the series.  This class is not
+ * thread safe.
+ *
+ */
+public class SeriesFilter {
+	public static final int RUNNING_AVERAGE = 0;
+	public static final int EXPONENTIAL_AVERAGE = 1;
+	public static final int MEDIAN = 2;
+	public static final String[] NAMES = {"Avg", "EMA", "Median"};
+
+	private final int type;
+	private final int period;
+	private final int capacity;
+	private final double alpha; // for the exponential average
+	private double[] in; // the values are in[start] to in[start+count-1], so the oldest can be dropped without copying
+	private double[] out;
+	private double[] prefix; // prefix[p] is the sum of in[0] to in[p-1], so a window is the difference of two of them
+	private int start = 0;
+	private int count = 0;
+	private double[] window; // the sorted window for the median
+	private int windowFrom = -1; // the first value in the sorted window, or -1 if it is not valid
+
+	/**
+	 * Filter a series
+	 * @param type - RUNNING_AVERAGE, EXPONENTIAL_AVERAGE or MEDIAN
+	 * @param period - the number of values to smooth over
+	 * @param data - the series, oldest first
+	 * @param capacity - the number of values in the window, when values are added.  The window is never less than the
+	 * length of the data
+	 */
+	public SeriesFilter(int type, int period, double[] data, int capacity) {
+		if (type < RUNNING_AVERAGE || type > MEDIAN)
+			throw new IllegalArgumentException("Unknown filter type: " + type);
+		this.type = type;
+		this.period = period;
+		this.capacity = Math.max(1, Math.max(capacity, data.length));
+		alpha = 2.0 / (Math.max(1, period) + 1);
+		in = new double[2*this.capacity];
+		out = new double[2*this.capacity];
+		prefix = new double[2*this.capacity+1];
+		if (type == MEDIAN)
+			window = new double[Math.max(1, period)];
+		System.arraycopy(data, 0, in, 0, data.length);
+		count = data.length;
+		for (int i=0; i < count; i++)
+			prefix[i+1] = prefix[i] + in[i];
+		filter(0, count);
+	}
+
+	public int getType() { return type; }
+	public int getPeriod() { return period; }
+	public int size() { return count; }
+
+	/**
+	 * Return the filtered value of a point
+	 * @param i - the position in the series, 0 is the oldest
+	 */
+	public double get(int i) {
+		if (i < 0 || i >= count) throw new IndexOutOfBoundsException("Point " + i + " of " + count);
+		return out[start+i];
+	}
+
+	/**
+	 * Return a copy of the filtered series, oldest first
+	 */
+	public double[] getOutput() {
+		return Arrays.copyOfRange(out, start, start+count);
+	}
+
+	/**
+	 * Add a value to the end of the series, dropping the oldest value if the window is full.  Only the points that
+	 * the new value, or the dropped value, change are filtered again.
+	 * @param value
+	 */
+	public void add(double value) {
+		boolean dropped = false;
+		if (count == capacity) {
+			start++;
+			count--;
+			dropped = true;
+		}
+		if (start + count == in.length)
+			compact();
+		int p = start + count;
+		in[p] = value;
+		prefix[p+1] = prefix[p] + value;
+		count++;
+		if (type == EXPONENTIAL_AVERAGE) {
+			// The earlier points do not depend on the new value, or on the one that was dropped
+			out[p] = count == 1 ? value : alpha * value + (1 - alpha) * out[p-1];
+			return;
+		}
+		int span = Math.max(1, period);
+		if (count <= span + 1) {
+			filter(0, count);
+			return;
+		}
+		if (dropped)
+			filter(0, span); // the points at the start hold the first full window, which has moved
+		filter(count - 1 - span, count);
+	}
+
+	/**
+	 * Move the values back to the start of the arrays.  This happens once for every capacity values that are added.
+	 */
+	private void compact() {
+		System.arraycopy(in, start, in, 0, count);
+		System.arraycopy(out, start, out, 0, count);
+		start = 0;
+		prefix[0] = 0;
+		for (int i=0; i < count; i++)
+			prefix[i+1] = prefix[i] + in[i];
+		windowFrom = -1;
+	}
+
+	/**
+	 * Filter the points from and up to, but not including, to
+	 */
+	private void filter(int from, int to) {
+		if (type == EXPONENTIAL_AVERAGE) {
+			for (int i=from; i < to; i++) {
+				int p = start + i;
+				out[p] = i == 0 ? in[p] : alpha * in[p] + (1 - alpha) * out[p-1];
+			}
+			return;
+		}
+		int span = Math.max(1, period);
+		for (int i=from; i < to; i++) {
+			int first; // the first value in the window for this point
+			int length;
+			if (count < span) {
+				// Not enough points for a window, so use all of them
+				first = 0;
+				length = count;
+			} else {
+				first = i - span/2;
+				if (first < 0) first = 0;
+				if (first > count - span) first = count - span;
+				length = span;
+			}
+			if (type == RUNNING_AVERAGE)
+				out[start+i] = (prefix[start+first+length] - prefix[start+first]) / length;
+			else
+				out[start+i] = median(first, length);
+		}
+	}
+
+	/**
+	 * The median of the values from first, sliding the sorted window along by one value if it was at the previous
+	 * position
+	 */
+	private double median(int first, int length) {
+		int from = start + first;
+		if (length != window.length || windowFrom != from) {
+			if (length == window.length && windowFrom >= 0 && windowFrom == from - 1) {
+				// Swap the value that left the window for the one that joined it
+				int pos = Arrays.binarySearch(window, in[from-1]);
+				System.arraycopy(window, pos+1, window, pos, length-pos-1);
+				double value = in[from+length-1];
+				int ins = Arrays.binarySearch(window, 0, length-1, value);
+				if (ins < 0) ins = -ins - 1;
+				System.arraycopy(window, ins, window, ins+1, length-1-ins);
+				window[ins] = value;
+			} else {
+				if (length != window.length)
+					window = new double[length];
+				System.arraycopy(in, from, window, 0, length);
+				Arrays.sort(window);
+			}
+			windowFrom = from;
+		}
+		if (length % 2 == 1)
+			return window[length/2];
+		return (window[length/2 - 1] + window[length/2]) / 2;
+	}
+}
@@ -0,0 +1,83 @@
+package com.g0kla.telem.data;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class SeriesFilterTest {
+
+	/**
+	 * The filter worked out the slow way, for one point
+	 */
+	private double expected(int type, int period, double[] data, int i) {
+		int first = Math.max(0, Math.min(i - period/2, data.length - period));
+		double[] window = Arrays.copyOfRange(data, first, first + period);
+		if (type == SeriesFilter.RUNNING_AVERAGE) {
+			double sum = 0;
+			for (double d : window) sum += d;
+			return sum / period;
+		}
+		Arrays.sort(window);
+		if (period % 2 == 1) return window[period/2];
+		return (window[period/2 - 1] + window[period/2]) / 2;
+	}
+
+	@Test
+	void testRunningAverage() {
+		double[] data = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+		SeriesFilter f = new SeriesFilter(SeriesFilter.RUNNING_AVERAGE, 3, data, 0);
+		assertEquals(10, f.size());
+		assertEquals(2, f.get(0), 0.0000001); // holds the first full window
+		assertEquals(2, f.get(1), 0.0000001);
+		assertEquals(5, f.get(4), 0.0000001);
+		assertEquals(9, f.get(9), 0.0000001); // holds the last full window
+	}
+
+	@Test
+	void testMedian() {
+		double[] data = {5, 1, 100, 2, 6, -50, 3};
+		SeriesFilter f = new SeriesFilter(SeriesFilter.MEDIAN, 3, data, 0);
+		double[] out = f.getOutput();
+		for (int i=0; i < data.length; i++)
+			assertEquals(expected(SeriesFilter.MEDIAN, 3, data, i), out[i], 0.0000001);
+		assertEquals(5, out[1]);
+		assertEquals(6, out[3]);
+	}
+
+	@Test
+	void testExponentialAverage() {
+		double[] data = {10, 0, 0, 0};
+		SeriesFilter f = new SeriesFilter(SeriesFilter.EXPONENTIAL_AVERAGE, 3, data, 0);
+		assertEquals(10, f.get(0), 0.0000001);
+		assertEquals(5, f.get(1), 0.0000001);
+		assertEquals(2.5, f.get(2), 0.0000001);
+		f.add(10);
+		assertEquals(5.625, f.get(3), 0.0000001); // the window is full, so the first point was dropped
+	}
+
+	@Test
+	void testAddMatchesWholeSeries() {
+		Random rand = new Random(1);
+		int capacity = 50;
+		for (int type : new int[] {SeriesFilter.RUNNING_AVERAGE, SeriesFilter.MEDIAN})
+			for (int period : new int[] {1, 4, 7}) {
+				double[] all = new double[300];
+				for (int i=0; i < all.length; i++)
+					all[i] = rand.nextInt(100);
+				SeriesFilter f = new SeriesFilter(type, period, Arrays.copyOf(all, 20), capacity);
+				for (int n=20; n < all.length; n++) {
+					f.add(all[n]);
+					double[] window = Arrays.copyOfRange(all, Math.max(0, n+1-capacity), n+1);
+					assertEquals(window.length, f.size());
+					SeriesFilter whole = new SeriesFilter(type, period, window, capacity);
+					for (int i=0; i < window.length; i++) {
+						assertEquals(expected(type, period, window, i), f.get(i), 0.0000001, "type " + type + " period " + period + " at " + n);
+						assertEquals(whole.get(i), f.get(i), 0.0000001);
+					}
+				}
+			}
+	}
+}
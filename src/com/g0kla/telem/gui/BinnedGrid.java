@@ -0,0 +1,138 @@
+package com.g0kla.telem.gui;
+
+/**
+ *
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2018 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * A grid of bins that holds the average of the values that fall in each bin, such as a value by latitude and
+ * longitude.  The points in the grid are kept in a window, so that a new point can be added without binning all of
+ * the data again.  When the window is full the oldest point is taken back out of its bin.  The min and max of the
+ * averages are only found again after the grid changes.
+ *
+ */
+class BinnedGrid {
+	private final int rows;
+	private final int cols;
+	private final double[][] sum;
+	private final int[][] count;
+	private final int capacity;
+	private final int[] pointRow; // the window of points, so the oldest can be removed
+	private final int[] pointCol;
+	private final double[] pointValue;
+	private int first = 0;
+	private int size = 0;
+	private double minValue;
+	private double maxValue;
+	private boolean rangeValid = false;
+
+	/**
+	 * @param rows
+	 * @param cols
+	 * @param capacity - the number of points in the window
+	 */
+	BinnedGrid(int rows, int cols, int capacity) {
+		this.rows = rows;
+		this.cols = cols;
+		this.capacity = Math.max(1, capacity);
+		sum = new double[rows][cols];
+		count = new int[rows][cols];
+		pointRow = new int[this.capacity];
+		pointCol = new int[this.capacity];
+		pointValue = new double[this.capacity];
+	}
+
+	int getRows() { return rows; }
+	int getCols() { return cols; }
+	int size() { return size; }
+
+	/**
+	 * Add a value to a bin, removing the oldest point if the window is full.  A bin outside the grid is put in the
+	 * nearest bin.
+	 * @param row
+	 * @param col
+	 * @param value
+	 */
+	void add(int row, int col, double value) {
+		if (row < 0) row = 0;
+		if (col < 0) col = 0;
+		if (row >= rows) row = rows-1;
+		if (col >= cols) col = cols-1;
+		int pos;
+		if (size < capacity) {
+			pos = (first + size) % capacity;
+			size++;
+		} else {
+			pos = first;
+			first = (first + 1) % capacity;
+			remove(pointRow[pos], pointCol[pos], pointValue[pos]);
+		}
+		pointRow[pos] = row;
+		pointCol[pos] = col;
+		pointValue[pos] = value;
+		sum[row][col] += value;
+		count[row][col]++;
+		rangeValid = false;
+	}
+
+	private void remove(int row, int col, double value) {
+		count[row][col]--;
+		if (count[row][col] == 0)
+			sum[row][col] = 0; // so rounding does not leave a value in an empty bin
+		else
+			sum[row][col] -= value;
+	}
+
+	/**
+	 * The average of the values in a bin, or zero if it is empty
+	 */
+	double getAverage(int row, int col) {
+		if (count[row][col] == 0) return 0;
+		return sum[row][col] / (double)count[row][col];
+	}
+
+	/**
+	 * The lowest average that is not zero
+	 */
+	double getMin() {
+		calcRange();
+		return minValue;
+	}
+
+	/**
+	 * The highest average that is not zero
+	 */
+	double getMax() {
+		calcRange();
+		return maxValue;
+	}
+
+	private void calcRange() {
+		if (rangeValid) return;
+		maxValue = -999999999;
+		minValue = 999999999;
+		for (int h=0; h < cols; h++)
+			for (int v=0; v < rows; v++) {
+				double avg = getAverage(v, h);
+				if (avg != 0) {
+					if (avg > maxValue) maxValue = avg;
+					if (avg < minValue) minValue = avg;
+				}
+			}
+		rangeValid = true;
+	}
+}
@@ -1,8 +1,18 @@
 package com.g0kla.telem.gui;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
 import javax.swing.table.AbstractTableModel;
 
 import com.g0kla.telem.data.ByteArrayLayout;
+import com.g0kla.telem.data.DataLoadException;
+import com.g0kla.telem.data.DataRecord;
+import com.g0kla.telem.segDb.RecordCursor;
 
 @SuppressWarnings("serial")
 public class DataRecordTableModel  extends AbstractTableModel {
@@ -24,6 +34,86 @@ public class DataRecordTableModel  extends AbstractTableModel {
     	fireTableDataChanged();
     }
     
+    /**
+     * Fill the table from a cursor, with the latest record in the first row.  The values are copied straight from the
+     * records rather than going through strings.
+     * @param cursor
+     * @throws IOException
+     * @throws DataLoadException
+     */
+    public void setData(RecordCursor cursor) throws IOException, DataLoadException {
+    	setData(readRows(cursor));
+    }
+    
+    /**
+     * Read the rows for the table from a cursor, latest first.  This does not change the table, so it can be called
+     * on a worker thread and the result passed to setData() on the Swing thread.
+     * @param cursor
+     * @return
+     * @throws IOException
+     * @throws DataLoadException
+     */
+    public long[][] readRows(RecordCursor cursor) throws IOException, DataLoadException {
+    	ArrayList<long[]> rows = new ArrayList<long[]>();
+    	int columns = columnNames.length;
+    	while (cursor.next()) {
+    		long[] row = new long[columns];
+    		row[RESET_COL] = cursor.getResets();
+    		row[UPTIME_COL] = cursor.getUptime();
+    		int fields = Math.min(cursor.getFieldCount(), columns-2);
+    		for (int k=0; k<fields; k++)
+    			row[k+2] = cursor.getRawValue(k);
+    		rows.add(row);
+    	}
+    	if (!cursor.isReverse())
+    		Collections.reverse(rows);
+    	return rows.toArray(new long[rows.size()][]);
+    }
+    
+    /**
+     * Add records that were just saved to a table that shows the latest records, rather than reading the rows again.
+     * The rows stay in order, latest first, so a late record goes into the middle, and the oldest rows are dropped to
+     * keep no more than maxRows.  A record that is already in the table is not added again.  Call this on the Swing
+     * thread.
+     * @param records
+     * @param maxRows
+     */
+    public void addRecords(List<DataRecord> records, int maxRows) {
+    	int columns = columnNames.length;
+    	ArrayList<long[]> added = new ArrayList<long[]>(records.size());
+    	for (DataRecord r : records) {
+    		long[] row = new long[columns];
+    		row[RESET_COL] = r.resets;
+    		row[UPTIME_COL] = r.uptime;
+    		int fields = Math.min(r.fieldValue.length, columns-2);
+    		for (int k=0; k<fields; k++)
+    			row[k+2] = r.fieldValue[k];
+    		added.add(row);
+    	}
+    	Collections.sort(added, LATEST_FIRST);
+    	long[][] old = data == null ? new long[0][] : data;
+    	ArrayList<long[]> rows = new ArrayList<long[]>(Math.min(maxRows, old.length + added.size()));
+    	int i = 0;
+    	int j = 0;
+    	while (rows.size() < maxRows && (i < old.length || j < added.size())) {
+    		if (j == added.size() || (i < old.length && LATEST_FIRST.compare(old[i], added.get(j)) <= 0)) {
+    			if (j < added.size() && Arrays.equals(old[i], added.get(j)))
+    				j++; // we already have it
+    			rows.add(old[i++]);
+    		} else
+    			rows.add(added.get(j++));
+    	}
+    	setData(rows.toArray(new long[rows.size()][]));
+    }
+    
+    private static final Comparator<long[]> LATEST_FIRST = new Comparator<long[]>() {
+    	public int compare(long[] a, long[] b) {
+    		if (a[RESET_COL] != b[RESET_COL]) return a[RESET_COL] > b[RESET_COL] ? -1 : 1;
+    		if (a[UPTIME_COL] != b[UPTIME_COL]) return a[UPTIME_COL] > b[UPTIME_COL] ? -1 : 1;
+    		return 0;
+    	}
+    };
+    
     public int getColumnCount() {
         return columnNames.length;
     }
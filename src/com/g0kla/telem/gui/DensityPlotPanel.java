@@ -6,6 +6,7 @@ import java.awt.Graphics;
 import java.text.DecimalFormat;
 
 import com.g0kla.telem.data.ByteArrayLayout;
+import com.g0kla.telem.data.DataRecord;
 import com.g0kla.telem.segDb.DataTable;
 import com.g0kla.telem.segDb.SatTelemStore;
 import com.g0kla.telem.segDb.Spacecraft;
@@ -20,6 +21,10 @@ import com.g0kla.telem.segDb.Spacecraft;
 @SuppressWarnings("serial")
 public class DensityPlotPanel extends GraphCanvas {
 	int[][] timePeriod = null; // The time period for the graph reset count and uptime
+	int maxVertBoxes = 90/2;//18*4; // 90 = 1 degree sky segments, 45 = 2 degree
+	int maxHorBoxes = 180/2;//36*4; // 180 = 2 degree sky segments
+	private BinnedGrid grid; // the data binned by az and el, built when the data is loaded
+	private boolean noAzElReadings = true;
 
 	DensityPlotPanel(String t, Spacecraft sat, ByteArrayLayout layout, GraphFrame gf, SatTelemStore db) {
 		super(t, sat, layout, gf, db);
@@ -43,7 +48,7 @@ public class DensityPlotPanel extends GraphCanvas {
 			int boxHeight = (int)legendHeight/rows;
 			legendHeight = boxHeight*rows;
 
-			g.setFont(new Font("SansSerif", Font.PLAIN, graphAxisFontSize));
+			g.setFont(getAxisFont());
 			g2.drawString("Key", sideBorder + graphWidth + leftOffset + 5, verticalOffset - fonth*2  );
 			g2.drawString("("+units+")", sideBorder + graphWidth + leftOffset + 5, verticalOffset - fonth  );
 
@@ -63,83 +68,83 @@ public class DensityPlotPanel extends GraphCanvas {
 		}
 		
 	}
+	protected void graphDataLoaded() {
+		buildGrid();
+	}
+	
+	/**
+	 * Bin the data into the grid.  This is done once when the data is loaded rather than each time the plot is drawn.
+	 * We do not care about resets and uptime, we just running average the data into the grid.
+	 */
+	private void buildGrid() {
+		grid = null;
+		noAzElReadings = true;
+		if (!checkDataExists() || !drawGraph2 || graphData2.length < 2) return;
+		int length = graphData[0][DataTable.DATA_COL].length;
+		grid = new BinnedGrid(maxVertBoxes, maxHorBoxes, Math.max(graphFrame.SAMPLES, length));
+		// we have three sets of data:
+		// In graphData2 EL is in variable 0, AZ in variable 1 and the value is in variable 0 of graphData
+		for (int i=1; i < length; i++) {
+			// integrity check
+			if (graphData[0][DataTable.UPTIME_COL][i] != graphData2[1][DataTable.UPTIME_COL][i])
+				System.err.println("ERROR!!!!!!!!!");
+			addToGrid(graphData2[0][DataTable.DATA_COL][i], graphData2[1][DataTable.DATA_COL][i], graphData[0][DataTable.DATA_COL][i]);
+		}
+	}
+	
+	private void addToGrid(double vert, double hor, double value) {
+		double maxVert = 90.0;
+		double maxHor = 360.0;
+		double vertStep = maxVert/(double)maxVertBoxes; // the step size for the vertical axis
+		double horStep = maxHor/(double)maxHorBoxes; // the step size for the horixental axis
+		if (vert > 0) noAzElReadings = false;
+		if (hor > 0) noAzElReadings = false;
+		if (Double.isNaN(value)) value = 0;
+		
+		if (hor > maxHor) hor = hor % maxHor;  // if greater than 360 we start again at 0
+		if (vert > maxVert) vert = maxVert - (vert - maxVert); // if greater than 90 we start to count back down to zero.
+		int vertBox = (int)Math.round((vert/vertStep));
+		int horBox = (int)Math.round((hor/horStep));
+		grid.add(vertBox, horBox, value);
+	}
+	
+	protected void recordAppended(DataRecord r) {
+		if (grid == null) return;
+		addToGrid(SeriesRing.getValue(layout, layout.getPositionByName(graphFrame.fieldName2[0]), r),
+				SeriesRing.getValue(layout, layout.getPositionByName(graphFrame.fieldName2[1]), r),
+				SeriesRing.getValue(layout, layout.getPositionByName(graphFrame.fieldName[0]), r));
+	}
+	
 	public void paintComponent(Graphics gr) {
 		super.paintComponent( gr ); // call superclass's paintComponent  
-		
+		paintPlot(gr);
+	}
+	
+	protected void renderPlot() {
 		if (!checkDataExists()) return;
-		boolean noAzElReadings = true;	
+		if (grid == null) buildGrid();
+		if (grid == null) return;
 		int graphHeight = getHeight() - topBorder - bottomBorder;
 		int graphWidth = getWidth() - sideBorder*2; // width of entire graph
 		
-		g.setFont(new Font("SansSerif", Font.PLAIN, graphAxisFontSize));
+		g.setFont(getAxisFont());
 		
 
 		// Create the Data Grid and the Horizontal Axis and a new version of graphData that will hold the data for the axis themselves, so the
 		// standard routines can draw them
 		double maxVert = 90.0;
 		double maxHor = 360.0;
-		int maxVertBoxes = 90/2;//18*4; // 90 = 1 degree sky segments, 45 = 2 degree
-		int maxHorBoxes = 180/2;//36*4; // 180 = 2 degree sky segments
-		
 		int boxHeight = graphHeight / maxVertBoxes;
 		graphHeight = boxHeight * maxVertBoxes; // fix rounding issues
 		int boxWidth = graphWidth / maxHorBoxes;
 		graphWidth = boxWidth * maxHorBoxes;
 		
-		double[][] dataGrid = new double[maxVertBoxes][maxHorBoxes]; 
-		int[][] dataGridCount = new int[maxVertBoxes][maxHorBoxes]; 
-		
-		double vertStep = maxVert/(double)maxVertBoxes; // the step size for the vertical axis
-		double horStep = maxHor/(double)maxHorBoxes; // the step size for the horixental axis
-		
-		// we have three sets of data:
-		// In graphData2 EL is in variable 0, AZ in variable 1 and the value is in variable 0 of graphData
-		// We do not care about resets and uptime, we just running average the data into the grid
-		for (int i=1; i < graphData[0][DataTable.DATA_COL].length; i++) {
-			double vert = graphData2[0][DataTable.DATA_COL][i];
-			if (vert > 0) noAzElReadings = false;
-			double hor = graphData2[1][DataTable.DATA_COL][i];
-			if (hor > 0) noAzElReadings = false;
-			double value = graphData[0][DataTable.DATA_COL][i];
-			if (Double.isNaN(value)) value = 0;
-			
-			// integrity check
-			if (graphData[0][DataTable.UPTIME_COL][i] != graphData2[1][DataTable.UPTIME_COL][i])
-				System.err.println("ERROR!!!!!!!!!");
-			
-			if (hor > maxHor) hor = hor % maxHor;  // if greater than 360 we start again at 0
-			if (vert > maxVert) vert = maxVert - (vert - maxVert); // if greater than 90 we start to count back down to zero.
-			int vertBox = (int)Math.round((vert/vertStep));
-			int horBox = (int)Math.round((hor/horStep));
-			if (vertBox < 0) vertBox = 0;
-			if (horBox < 0) horBox = 0;
-			if (vertBox >= maxVertBoxes) vertBox = maxVertBoxes-1;
-			if (horBox >= maxHorBoxes) horBox = maxHorBoxes-1;
-			dataGrid[vertBox][horBox] += value;
-			
-			dataGridCount[vertBox][horBox]++;
-			
-		}
-		// now calculate the averages
-		double maxValue = -999999999;
-		double minValue = 999999999;
-		for (int h=0; h < maxHorBoxes; h++) {
-			for (int v=0; v < maxVertBoxes; v++) {
-				if (dataGridCount[v][h] == 0)
-					dataGrid[v][h] = 0;
-				else
-					dataGrid[v][h] = dataGrid[v][h] / (double)dataGridCount[v][h];
-				if (dataGrid[v][h] != 0) {
-					if (dataGrid[v][h] > maxValue) maxValue = dataGrid[v][h];
-					if (dataGrid[v][h] < minValue) minValue = dataGrid[v][h];
-				}
-				
-			}
-		}
+		double maxValue = grid.getMax();
+		double minValue = grid.getMin();
 
 		drawLegend(graphHeight, graphWidth, minValue, maxValue, graphFrame.fieldUnits);
 		
-		g.setFont(new Font("SansSerif", Font.PLAIN, graphAxisFontSize));
+		g.setFont(getAxisFont());
 		// Draw vertical axis - always in the same place
 		g2.setColor(graphAxisColor);
 		g2.drawLine(sideBorder, getHeight()-bottomBorder, sideBorder, topBorder);
@@ -160,7 +165,7 @@ public class DensityPlotPanel extends GraphCanvas {
 		}
 		g2.setColor(graphAxisColor);
 		int zeroPoint = graphHeight + topBorder;
-		g.setFont(new Font("SansSerif", Font.PLAIN, graphAxisFontSize));
+		g.setFont(getAxisFont());
 
 		int titleHeight = graphAxisFontSize+10;
 		if (zeroPoint < graphAxisFontSize*3) {
@@ -170,11 +175,11 @@ public class DensityPlotPanel extends GraphCanvas {
 
 		// Draw the title
 		g2.setColor(Color.BLACK);
-		g.setFont(new Font("SansSerif", Font.BOLD, graphAxisFontSize+3));
+		g.setFont(getTitleFont());
 		String title = graphFrame.displayTitle + " vs Az El";
 		g2.drawString(title, sideBorder/2 + graphWidth/2 - graphFrame.displayTitle.length()/2 * graphAxisFontSize/2, titleHeight-graphAxisFontSize/2);
 
-		g.setFont(new Font("SansSerif", Font.PLAIN, graphAxisFontSize));
+		g.setFont(getAxisFont());
 		
 		// Draw baseline at the zero point
 		g2.setColor(graphAxisColor);
@@ -206,7 +211,7 @@ public class DensityPlotPanel extends GraphCanvas {
 				int x = getRatioPosition(0, maxHorBoxes, h, graphWidth) +sideBorder+1;
 				int y = getRatioPosition(0, maxVertBoxes, v, graphHeight);
 
-				double val = dataGrid[v][h];
+				double val = grid.getAverage(v, h);
 				if (val == 0) val = -100;
 				//minValue = -100;
 				//maxValue = -10;
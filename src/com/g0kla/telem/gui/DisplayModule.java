@@ -27,6 +27,7 @@ import com.g0kla.telem.data.ByteArrayLayout;
 import com.g0kla.telem.data.DataLoadException;
 import com.g0kla.telem.data.DataRecord;
 import com.g0kla.telem.segDb.SatTelemStore;
+import com.g0kla.telem.segDb.TableChange;
 import com.g0kla.telem.segDb.Spacecraft;
 
 /**
@@ -279,7 +280,31 @@ public class DisplayModule extends JPanel implements ActionListener, MouseListen
 	}
 
 
+	/**
+	 * Show the values of a record.  The caller may have skipped the records saved since the last call, so the open
+	 * graphs fetch their data again.  Use updateValues(TableChange) to add the records to them instead.
+	 * @param rt
+	 */
 	public void updateValues(DataRecord rt) throws NumberFormatException, IOException, DataLoadException {
+		showValues(rt);
+		for (int i=0; i < size; i++)
+			if (fieldName[i] != null && rt.hasFieldName(fieldName[i]))
+				for (int p=0; p < GraphFrame.MAX_PLOT_TYPES; p++)
+					if (graph[p][i] != null) graph[p][i].updateGraphData("DisplayModule.updateRtValues");
+	}
+	
+	/**
+	 * Show the latest of a batch of records that were saved.  The change has every record, so they are all added to
+	 * the open graphs rather than fetching the window again.
+	 * @param change
+	 */
+	public void updateValues(TableChange change) throws NumberFormatException, IOException, DataLoadException {
+		for (DataRecord r : change.getRecords())
+			appendToGraphs(r);
+		showValues(change.getLatest());
+	}
+	
+	private void showValues(DataRecord rt) throws NumberFormatException, IOException, DataLoadException {
 		rtPayload = rt;
 		for (int i=0; i < size; i++) {
 			if(fieldName[i] != null) {
@@ -289,13 +314,18 @@ public class DisplayModule extends JPanel implements ActionListener, MouseListen
 						rtValue[i].setText(Integer.toString(rt.getRawValue(fieldName[i])));
 					else
 						rtValue[i].setText(rt.getStringValue(fieldName[i]));
-					for (int p=0; p < GraphFrame.MAX_PLOT_TYPES; p++)
-						if (graph[p][i] != null) graph[p][i].updateGraphData("DisplayModule.updateRtValues");
 				}
 			}
 		}
 	}
 	
+	private void appendToGraphs(DataRecord r) {
+		for (int i=0; i < size; i++)
+			if (fieldName[i] != null && r.hasFieldName(fieldName[i]))
+				for (int p=0; p < GraphFrame.MAX_PLOT_TYPES; p++)
+					if (graph[p][i] != null) graph[p][i].appendRecord(r);
+	}
+	
 	public void updateSingleValue(int line, String value) throws NumberFormatException, IOException, DataLoadException {
 		rtValue[line].setFont(new Font("SansSerif", Font.PLAIN, displayModuleFontSize));
 		rtValue[line].setText(value);
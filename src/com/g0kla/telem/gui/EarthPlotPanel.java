@@ -6,14 +6,15 @@ import java.awt.Graphics;
 import java.io.IOException;
 import java.text.DecimalFormat;
 
-import javax.imageio.ImageIO;
-
 import com.g0kla.telem.data.ByteArrayLayout;
 import com.g0kla.telem.data.DataRecord;
+import com.g0kla.telem.predict.PositionCalcException;
 import com.g0kla.telem.segDb.DataTable;
 import com.g0kla.telem.segDb.SatTelemStore;
 import com.g0kla.telem.segDb.Spacecraft;
 
+import uk.me.g4dpz.satellite.SatPos;
+
 @SuppressWarnings("serial")
 public class EarthPlotPanel extends GraphCanvas {
 
@@ -22,6 +23,10 @@ public class EarthPlotPanel extends GraphCanvas {
 	public static final int RECTANGULAR_PROJECTION = 0;
 	public static final int MERCATOR_PROJECTION = 1;
 	public int mapProjection = RECTANGULAR_PROJECTION;
+	private int imageMapType = -1; // the map type of the image that is loaded
+	private BinnedGrid grid; // the data binned by lat and lon, built when the data is loaded
+	private int lastReset; // the latest record in the grid
+	private long lastUptime;
 	
 	EarthPlotPanel(String t, Spacecraft sat, ByteArrayLayout layout, GraphFrame gf, SatTelemStore db) {
 		super(t, sat, layout, gf, db);
@@ -32,19 +37,21 @@ public class EarthPlotPanel extends GraphCanvas {
 	}
 	
 	private void setImage() throws IOException {
+		if (graphFrame.mapType == imageMapType) return; // we already have it
 		try {
 		if (graphFrame.mapType == GraphFrame.COLOR_MAP_EQUIRECTANGULAR) {
 			mapProjection = RECTANGULAR_PROJECTION;
-				image = ImageIO.read(this.getClass().getResource("/images/Equirectangular_projection_SW.jpg"));
+				image = getMapImage("/images/Equirectangular_projection_SW.jpg");
 			//setImage(this.getClass().getResource());
 //		else if (graphFrame.mapType == GraphFrame.COLOR_MAP_MERCATOR)
 //			setImage("C:\\Users\\chris\\Desktop\\workspace\\FoxTelem\\src\\images\\Mercator_projection_SW.jpg");	
 		} else if (graphFrame.mapType == GraphFrame.LINE_MAP_EQUIRECTANGULAR) {
 			mapProjection = RECTANGULAR_PROJECTION;
-			image = ImageIO.read(this.getClass().getResource("/images/map_outline.jpg"));
+			image = getMapImage("/images/map_outline.jpg");
 			//setImage(this.getClass().getResource("/images/map_outline.jpg"));	
 			//setImage(this.getClass().getResource("/images/WorldCoastLine_EquiRectangular.jpg").getFile());	
 		}
+		imageMapType = graphFrame.mapType;
 		} catch (IOException e) {
 			 throw new IOException("Could not set map image: " + "\n" + e.getMessage());
 		}
@@ -96,7 +103,7 @@ public class EarthPlotPanel extends GraphCanvas {
 			int boxHeight = (int)legendHeight/rows;
 			legendHeight = boxHeight*rows;
 
-			g.setFont(new Font("SansSerif", Font.PLAIN, graphAxisFontSize));
+			g.setFont(getAxisFont());
 			g2.drawString("Key", sideBorder + graphWidth + leftOffset + 5, verticalOffset - fonth*2  );
 			g2.drawString("("+units+")", sideBorder + graphWidth + leftOffset + 5, verticalOffset - fonth  );
 
@@ -127,6 +134,89 @@ public class EarthPlotPanel extends GraphCanvas {
 	int maxVertBoxes = 90; // = 2 degree sky segments
 	int maxHorBoxes = 180;// = 2 degree sky segments
 	
+	protected void graphDataLoaded() {
+		buildGrid();
+	}
+	
+	/**
+	 * Bin the data into the grid.  This is done once when the data is loaded rather than each time the plot is drawn.
+	 * We do not care about resets and uptime, we just running average the data into the grid.
+	 */
+	private void buildGrid() {
+		grid = null;
+		if (!checkDataExists() || graphData[0].length <= DataTable.LON_COL
+				|| graphData[0][DataTable.LON_COL] == null) return;
+		int length = graphData[0][DataTable.DATA_COL].length;
+		grid = new BinnedGrid(maxVertBoxes, maxHorBoxes, Math.max(graphFrame.SAMPLES, length));
+		// we have data as follows:
+		// In graphData[0] DATA_COL has the actual data values
+		// In LAT_COL we should have the latitude in degrees.  In LON_COL the longitude
+		for (int i=1; i < length; i++)
+			addToGrid(graphData[0][DataTable.LAT_COL][i], graphData[0][DataTable.LON_COL][i], graphData[0][DataTable.DATA_COL][i]);
+		lastReset = (int)graphData[0][DataTable.RESETS_COL][length-1];
+		lastUptime = (long)graphData[0][DataTable.UPTIME_COL][length-1];
+	}
+	
+	private void addToGrid(double lat, double lon, double value) {
+		if (lat == DataRecord.NO_POSITION_DATA || lat == DataRecord.NO_T0 || lat == DataRecord.NO_TLE)
+			return; // we don't calc this point
+		double maxVert = 90.0; // latitude
+		double minVert = -90.0; // latitude
+		double maxHor = 180.0;
+		double minHor = -180.0;
+		double vertStep = (maxVert-minVert)/(double)maxVertBoxes; // the step size for the vertical axis
+		double horStep = (maxHor-minHor)/(double)maxHorBoxes; // the step size for the horixental axis
+
+		if (lat > maxVert) lat = maxVert;				
+		if (lat < minVert) lat = minVert;
+		if (lon > maxHor) lon = maxHor;;			
+		if (lon < minHor) lon = minHor;
+		if (Double.isNaN(value)) 
+			value = 0;
+
+		// We plot longitude horizontally
+		// We plot latitude vertically
+		// Map to a positive scale so we can store in array and calc the averages
+		lat += 90;
+		lon += 180;
+		int vertBox = (int)Math.round((lat/vertStep));
+		int horBox = (int)Math.round((lon/horStep));
+		grid.add(vertBox, horBox, value);
+	}
+	
+	/**
+	 * Calculate the position of a new record and add it to the grid, rather than loading the whole window again with
+	 * the positions.  Anything that can not simply go on the end is loaded again.
+	 */
+	public void appendRecord(DataRecord r) {
+		if (isLoading() || grid == null || graphFrame.showLatest != GraphFrame.SHOW_LIVE || r.layout == null
+				|| !layout.name.equals(r.layout.name)) {
+			super.appendRecord(r); // held until the load finishes, or loads the data again because we have position data
+			return;
+		}
+		if (r.resets == lastReset && r.uptime == lastUptime) return; // we already have it
+		if (r.resets < lastReset || (r.resets == lastReset && r.uptime < lastUptime)) {
+			super.appendRecord(r); // it belongs earlier in the window
+			return;
+		}
+		double satLatitude = DataRecord.NO_TLE;
+		double satLongitude = DataRecord.NO_TLE;
+		try {
+			SatPos pos = sat.getSatellitePosition(r.resets, r.uptime);
+			if (pos != null) {
+				satLatitude = Spacecraft.latRadToDeg(pos.getLatitude());
+				satLongitude = Spacecraft.lonRadToDeg(pos.getLongitude());
+			}
+		} catch (PositionCalcException e) {
+			// we just store the default values for NO_TLE, which are not plotted
+		}
+		addToGrid(satLatitude, satLongitude, SeriesRing.getValue(layout, layout.getPositionByName(graphFrame.fieldName[0]), r));
+		lastReset = r.resets;
+		lastUptime = r.uptime;
+		invalidatePlot();
+		repaint();
+	}
+	
     /**
      * We plot lat lon on a map projection.
      * lat is stored in degrees from -90 to +90
@@ -141,7 +231,10 @@ public class EarthPlotPanel extends GraphCanvas {
      */
 	public void paintComponent(Graphics gr) {
 		super.paintComponent( gr ); // call superclass's paintComponent  
-		
+		paintPlot(gr);
+	}
+	
+	protected void renderPlot() {
 		topBorder = 0;
 		bottomBorder = 0;
 
@@ -153,10 +246,11 @@ public class EarthPlotPanel extends GraphCanvas {
 			g2.drawString("No Data Available for plot", graphWidth/2-50, graphHeight/3);
 			return;
 		}
-		boolean noLatLonReadings = true;	
+		if (grid == null) buildGrid();
+		boolean noLatLonReadings = grid == null || grid.size() == 0;
 		
 		
-		g.setFont(new Font("SansSerif", Font.PLAIN, graphAxisFontSize));
+		g.setFont(getAxisFont());
 		
 		// Create the Data Grid and the Horizontal Axis and a new version of graphData that will hold the data for the axis themselves, so the
 		// standard routines can draw them
@@ -180,84 +274,15 @@ public class EarthPlotPanel extends GraphCanvas {
 				System.err.println("ERROR: " + e.getMessage());
 				e.printStackTrace();
 			}
-			paintMap(gr, sideBorder, 0, graphHeight, graphWidth);
+			paintMap(g, sideBorder, 0, graphHeight, graphWidth);
 		}
 
-		double[][] dataGrid = new double[maxVertBoxes][maxHorBoxes]; 
-		int[][] dataGridCount = new int[maxVertBoxes][maxHorBoxes]; 
-
-		double vertStep = (maxVert-minVert)/(double)maxVertBoxes; // the step size for the vertical axis
-		double horStep = (maxHor-minHor)/(double)maxHorBoxes; // the step size for the horixental axis
-
-		// we have data as follows:
-		// In graphData[0] DATA_COL has the actual data values
-		// In LAT_COL we should have the latitude in radians.  In LON_COL the longitude
-		// We do not care about resets and uptime, we just running average the data into the grid
-		for (int i=1; i < graphData[0][DataTable.DATA_COL].length; i++) {
-			double lat = graphData[0][DataTable.LAT_COL][i];
-			if (lat == DataRecord.NO_POSITION_DATA || lat == DataRecord.NO_T0 || lat == DataRecord.NO_TLE) {
-				// we don't calc this point
-			} else {
-				noLatLonReadings = false;
-				//lat = FramePart.radToDeg(lat);
-				//lat = lat/ (Math.PI * 2.0) * 360;
-				if (lat > maxVert) lat = maxVert;				
-				if (lat < minVert) lat = minVert;
-
-				double lon = graphData[0][DataTable.LON_COL][i];
-				if (lon > maxHor) lon = maxHor;;			
-				if (lon < minHor) lon = minHor;
-
-				double value = graphData[0][DataTable.DATA_COL][i];
-				if (Double.isNaN(value)) 
-					value = 0;
-				else {
-//					if (graphFrame.conversionType == BitArrayLayout.CONVERT_STATUS_BIT || graphFrame.conversionType == BitArrayLayout.CONVERT_BOOLEAN
-//							|| graphFrame.conversionType == BitArrayLayout.CONVERT_ANTENNA ) {
-//						value = value + 1;
-//					}
-				}
-
-				// We plot longitude horizontally
-				// We plot latitude vertically
-				// Map to a positive scale so we can store in array and calc the averages
-				lat += 90;
-				lon += 180;
-				
-				int vertBox = (int)Math.round((lat/vertStep));
-				int horBox = (int)Math.round((lon/horStep));
-
-
-				//System.out.println("Lat: " + lat + " vert: " + vertBox);
-				//System.out.println("Lon: " + lon + " hor: " + horBox);
-
-				if (vertBox >= maxVertBoxes) vertBox = maxVertBoxes-1;
-				if (horBox >= maxHorBoxes) horBox = maxHorBoxes-1;
-				dataGrid[vertBox][horBox] += value;
-
-				dataGridCount[vertBox][horBox]++;
-			}
-		}
-		// now calculate the averages
-		double maxValue = -999999999;
-		double minValue = 999999999;
-		for (int h=0; h < maxHorBoxes; h++) {
-			for (int v=0; v < maxVertBoxes; v++) {
-				if (dataGridCount[v][h] == 0)
-					dataGrid[v][h] = 0;
-				else
-					dataGrid[v][h] = dataGrid[v][h] / (double)dataGridCount[v][h];
-				if (dataGrid[v][h] != 0) {
-					if (dataGrid[v][h] > maxValue) maxValue = dataGrid[v][h];
-					if (dataGrid[v][h] < minValue) minValue = dataGrid[v][h];
-				}
-				
-			}
-		}
+		double maxValue = grid == null ? -999999999 : grid.getMax();
+		double minValue = grid == null ? 999999999 : grid.getMin();
 
 		drawLegend(graphHeight, graphWidth, minValue, maxValue, graphFrame.fieldUnits);
 		
-		g.setFont(new Font("SansSerif", Font.PLAIN, graphAxisFontSize));
+		g.setFont(getAxisFont());
 		
 		// Draw vertical axis - always in the same place
 		g2.setColor(graphAxisColor);
@@ -292,7 +317,7 @@ public class EarthPlotPanel extends GraphCanvas {
 		}
 		g2.setColor(graphAxisColor);
 		
-		g.setFont(new Font("SansSerif", Font.PLAIN, graphAxisFontSize));
+		g.setFont(getAxisFont());
 
 		int titleHeight = graphAxisFontSize+10;
 		if (zeroPoint < graphAxisFontSize*3) {
@@ -302,13 +327,13 @@ public class EarthPlotPanel extends GraphCanvas {
 
 		// Draw the title
 		g2.setColor(Color.BLACK);
-		g.setFont(new Font("SansSerif", Font.BOLD, graphAxisFontSize+3));
+		g.setFont(getTitleFont());
 //		String title = graphFrame.displayTitle + " (Mercator Projection)";
 		String title = graphFrame.displayTitle + " (Equirectangular Projection)";
 		
 		g2.drawString(title, sideBorder/2 + graphWidth/2 - graphFrame.displayTitle.length()/2 * graphAxisFontSize/2, titleHeight-graphAxisFontSize/2);
 
-		g.setFont(new Font("SansSerif", Font.PLAIN, graphAxisFontSize));
+		g.setFont(getAxisFont());
 		
 		// Draw baseline at the zero point
 		g2.setColor(graphAxisColor);
@@ -350,7 +375,7 @@ public class EarthPlotPanel extends GraphCanvas {
 				double lon = 360.0*h/maxHorBoxes;
 				int x = lonToX(lon, graphWidth) +sideBorder+1;
     			int y = latToY(lat, graphWidth, graphHeight);
-    			double val = dataGrid[v][h];
+    			double val = grid.getAverage(v, h);
 				if (val != 0) {
 //					if (graphFrame.conversionType == BitArrayLayout.CONVERT_STATUS_BIT || graphFrame.conversionType == BitArrayLayout.CONVERT_BOOLEAN) {
 //						g2.setColor(getColorGradient(1, 2, val, 255));
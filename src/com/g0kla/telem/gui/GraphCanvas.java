@@ -1,11 +1,16 @@
 package com.g0kla.telem.gui;
 
 import java.awt.Color;
+import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
+
+import javax.swing.SwingUtilities;
 
 import com.g0kla.telem.data.ByteArrayLayout;
 import com.g0kla.telem.data.DataLoadException;
@@ -28,6 +33,11 @@ public abstract class GraphCanvas extends MapPanel {
 	Color graphAxisColor = Color.BLACK;
 	Color graphTextColor = Color.DARK_GRAY;
 	static int graphAxisFontSize = 11;
+	// Made when the font size changes rather than each time a plot is drawn
+	private int fontSize = -1;
+	private Font axisFont;
+	private Font titleFont;
+	private Font noteFont;
 
 	int topBorder = (int)(graphAxisFontSize*2); //Config.graphAxisFontSize; // The distance from the top of the drawing surface to the graph.  The title goes in this space
 	int bottomBorder = (int)(graphAxisFontSize*2.5); // The distance from the bottom of the drawing surface to the graph
@@ -47,6 +57,14 @@ public abstract class GraphCanvas extends MapPanel {
 	Spacecraft sat;
 	ByteArrayLayout layout;
 	boolean getPostionData = false;
+	boolean decimated = false; // true if graphData holds the min and max for each pixel rather than every record
+	boolean everyRecord = false; // true if graphData has one point for each record, so a new record can be added
+	private SeriesRing ring; // the live points, once a record has been added since the data was loaded
+	private SeriesRing ring2;
+	private BufferedImage plotImage; // the plot as it was last drawn by renderPlot()
+	private boolean plotValid = false;
+	private boolean loading = false; // true from updateGraphData() until the data it loads is shown
+	private ArrayList<DataRecord> arrivedWhileLoading = new ArrayList<DataRecord>();
 
 	GraphCanvas(String title, Spacecraft sat, ByteArrayLayout layout, GraphFrame gf, SatTelemStore db) {
 		this.title = title;
@@ -57,123 +75,331 @@ public abstract class GraphCanvas extends MapPanel {
 		this.layout = layout;
 	}
 
+	/**
+	 * The graph data that is loaded on a worker thread and then shown
+	 */
+	private static class GraphData {
+		double[][][] graphData;
+		double[][][] graphData2;
+		boolean decimated;
+		boolean everyRecord;
+	}
+	
+	/**
+	 * Load the data for the graph on a worker thread and repaint when it arrives.  If the graph is updated again
+	 * before the load finishes, for example as the range is typed, then the old load is cancelled.  The settings are
+	 * read here on the Swing thread, so the worker does not see them change.
+	 * @param by
+	 */
 	public void updateGraphData(String by)  {
-		int showDialogThreshold = 999999;
-		ProgressPanel fileProgress = null;
-		if (graphFrame.SAMPLES > showDialogThreshold) {
-			fileProgress = new ProgressPanel(graphFrame, "Loading Spacecraft data, please wait ...", false);
-			fileProgress.setVisible(true);
-		}
-		
-		int totalFields = graphFrame.fieldName.length;
-		if (graphFrame.fieldName2 != null)
-			totalFields += graphFrame.fieldName2.length;
-		boolean reverse=false;
-		graphData = new double[graphFrame.fieldName.length][][];
-		for (int i=0; i<graphFrame.fieldName.length; i++) {
-			if (graphFrame.SAMPLES > showDialogThreshold)
-				fileProgress.updateProgress((int)(100*i/totalFields));
-			if (graphFrame.showLatest == GraphFrame.SHOW_LIVE)
-				reverse=true;
-				try {
-					graphData[i] = db.getGraphData(graphFrame.fieldName[i], graphFrame.SAMPLES, satId, graphFrame.START_RESET, 
-							graphFrame.START_UPTIME, layout.name, false, getPostionData, reverse);
-				} catch (NumberFormatException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				} catch (IOException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				} catch (DataLoadException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}
-
-			if (graphFrame.plotType == GraphFrame.EARTH_PLOT)
-				graphData[i] = addPositionData(graphData[i]);
-		}
+		final String[] fieldName = graphFrame.fieldName;
+		final String[] fieldName2 = graphFrame.fieldName2;
+		final int samples = graphFrame.SAMPLES;
+		final int startReset = graphFrame.START_RESET;
+		final long startUptime = graphFrame.START_UPTIME;
+		final boolean reverse = graphFrame.showLatest == GraphFrame.SHOW_LIVE;
+		final boolean earthPlot = graphFrame.plotType == GraphFrame.EARTH_PLOT;
+		final boolean positionData = getPostionData;
+		final boolean utc = graphFrame.showUTCtime && !earthPlot;
+		// If the graph can be decimated then fetch two points, the min and max, per pixel rather than every record
+		final int maxPoints = 2 * getDecimationWidth();
 
-		graphData2 = null;
-		if (graphFrame.fieldName2 != null && graphFrame.fieldName2.length > 0) {
-			graphData2 = new double[graphFrame.fieldName2.length][][];
-			for (int i=0; i<graphFrame.fieldName2.length; i++) {
-				if (graphFrame.SAMPLES > showDialogThreshold)
-					fileProgress.updateProgress((int)(100*i+graphFrame.fieldName.length/totalFields));
-				try {
-					graphData2[i] = db.getGraphData(graphFrame.fieldName2[i], graphFrame.SAMPLES, satId, graphFrame.START_RESET, 
-							graphFrame.START_UPTIME, layout.name, false, false, reverse);
-				} catch (NumberFormatException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				} catch (IOException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				} catch (DataLoadException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
+		loading = true;
+		QueryExecutor.getShared().submit(this, new QueryExecutor.Query<GraphData>() {
+			public GraphData run(QueryExecutor.Ticket ticket) throws Exception {
+				GraphData result = new GraphData();
+				result.decimated = maxPoints > 0 && !positionData;
+				// A window that is no wider than the graph is never reduced, so it still has every record
+				result.everyRecord = !result.decimated || samples <= maxPoints / 2;
+				// All of the fields on an axis are read in one pass over the records
+				result.graphData = loadGraphData(fieldName, samples, startReset, startUptime, reverse, result.decimated, positionData, maxPoints);
+				if (result.graphData == null)
+					result.graphData = new double[fieldName.length][][];
+				if (ticket.isCancelled()) return null;
+				if (earthPlot && result.graphData[0] != null) {
+					// The fields share the same records, so the positions are only calculated once
+					double[][] withPosition = addPositionData(result.graphData[0], ticket);
+					if (withPosition == null) return null; // cancelled
+					for (int i=0; i<result.graphData.length; i++) {
+						double[][] fieldData = withPosition.clone();
+						fieldData[DataTable.DATA_COL] = result.graphData[i][DataTable.DATA_COL];
+						result.graphData[i] = fieldData;
+					}
 				}
-
+				if (utc)
+					sat.addUtcColumn(result.graphData); // the time axis labels are read from the first axis
+				if (fieldName2 != null && fieldName2.length > 0) {
+					result.graphData2 = loadGraphData(fieldName2, samples, startReset, startUptime, reverse, result.decimated, false, maxPoints);
+					if (result.graphData2 == null)
+						result.graphData2 = new double[fieldName2.length][][];
+				}
+				return result;
+			}
+		}, new QueryExecutor.Result<GraphData>() {
+			public void done(GraphData result) {
+				loading = false;
+				decimated = result.decimated;
+				everyRecord = result.everyRecord;
+				graphData = result.graphData;
+				graphData2 = result.graphData2;
+				ring = null;
+				ring2 = null;
+				graphDataLoaded();
+				invalidatePlot();
+				//System.err.println("-repaint by: " + by);
+				if (graphData != null && graphData[0] != null)
+					repaint();
+				appendArrivedWhileLoading();
+			}
+			public void failed(Exception e) {
+				loading = false;
+				e.printStackTrace();
+				appendArrivedWhileLoading();
 			}
+		});
+	}
+	
+	/**
+	 * Add the records that arrived while the data was loading.  Any that the load already had are skipped by
+	 * appendRecord().
+	 */
+	private void appendArrivedWhileLoading() {
+		if (arrivedWhileLoading.isEmpty()) return;
+		ArrayList<DataRecord> records = arrivedWhileLoading;
+		arrivedWhileLoading = new ArrayList<DataRecord>();
+		for (DataRecord r : records)
+			appendRecord(r);
+	}
+	
+	/**
+	 * True from updateGraphData() until the data it loads is shown.  Records that arrive in that time are held by
+	 * appendRecord() and added once the data is shown.
+	 */
+	protected boolean isLoading() {
+		return loading;
+	}
+	
+	/**
+	 * Add a record that has just arrived to a live graph, rather than fetching the whole window from the table again.
+	 * The oldest point is dropped once the window is full.  If the graph is not showing the latest records, or the
+	 * record does not simply go on the end, then the data is fetched again with updateGraphData().  Call this on the
+	 * Swing thread.
+	 * @param r
+	 */
+	public void appendRecord(DataRecord r) {
+		if (loading) {
+			arrivedWhileLoading.add(r); // the data we would add it to is about to be replaced
+			return;
 		}
-		
-		
-		if (graphFrame.SAMPLES > showDialogThreshold)
-			fileProgress.updateProgress(100);
-		
-		//System.err.println("-repaint by: " + by);
-		if (graphData != null && graphData[0] != null)
-			this.repaint();
+		if (!canAppend(r)) {
+			updateGraphData("GraphCanvas.appendRecord");
+			return;
+		}
+		if (ring == null) {
+			ring = new SeriesRing(layout, graphFrame.fieldName, graphData, graphFrame.SAMPLES);
+			if (graphData2 != null && graphData2[0] != null)
+				ring2 = new SeriesRing(layout, graphFrame.fieldName2, graphData2, graphFrame.SAMPLES);
+		}
+		int order = ring.compareToLatest(r);
+		if (order == 0) return; // it was saved before the data was loaded, so we already have it
+		if (order < 0) {
+			updateGraphData("GraphCanvas.appendRecord:late"); // it belongs earlier in the window
+			return;
+		}
+		ring.add(r);
+		if (ring2 != null)
+			ring2.add(r);
+		recordAppended(r);
+		invalidatePlot();
+		repaint();
+	}
+	
+	/**
+	 * Called on the Swing thread when new graph data has been loaded, before it is painted
+	 */
+	protected void graphDataLoaded() {
+	}
+	
+	/**
+	 * Called on the Swing thread when a record has been added to the end of a live graph
+	 * @param r
+	 */
+	protected void recordAppended(DataRecord r) {
+	}
+	
+	private void makeFonts() {
+		if (fontSize == graphAxisFontSize) return;
+		fontSize = graphAxisFontSize;
+		axisFont = new Font("SansSerif", Font.PLAIN, fontSize);
+		titleFont = new Font("SansSerif", Font.BOLD, fontSize+3);
+		noteFont = new Font("SansSerif", Font.PLAIN, (int)(fontSize*0.9));
+	}
+	
+	protected Font getAxisFont() {
+		makeFonts();
+		return axisFont;
+	}
+	
+	protected Font getTitleFont() {
+		makeFonts();
+		return titleFont;
+	}
 	
+	protected Font getNoteFont() {
+		makeFonts();
+		return noteFont;
+	}
+	
+	/**
+	 * Draw the plot again the next time it is painted.  Only needed by plots that draw with paintPlot().
+	 */
+	protected void invalidatePlot() {
+		plotValid = false;
+	}
+	
+	/**
+	 * Paint a plot that is slow to draw from a copy.  The plot is drawn by renderPlot() into an image, which is only
+	 * done again when the data changes, invalidatePlot() is called or the panel changes size.  Otherwise the image is
+	 * just copied to the screen.  Call this from paintComponent() after super.paintComponent().
+	 * @param gr
+	 */
+	protected void paintPlot(Graphics gr) {
+		int w = getWidth();
+		int h = getHeight();
+		if (w <= 0 || h <= 0) return;
+		if (plotImage == null || plotImage.getWidth() != w || plotImage.getHeight() != h) {
+			plotImage = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+			plotValid = false;
+		}
+		if (!plotValid) {
+			Graphics2D ig = plotImage.createGraphics();
+			try {
+				ig.setColor(getBackground());
+				ig.fillRect(0, 0, w, h);
+				ig.setFont(gr.getFont());
+				ig.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_GASP);
+				g2 = ig;
+				g = ig;
+				renderPlot();
+			} finally {
+				ig.dispose();
+				g2 = ( Graphics2D ) gr;
+				g = gr;
+			}
+			plotValid = true;
+		}
+		gr.drawImage(plotImage, 0, 0, null);
+	}
+	
+	/**
+	 * Draw the plot with g and g2, for plots that use paintPlot()
+	 */
+	protected void renderPlot() {
+	}
+	
+	private boolean canAppend(DataRecord r) {
+		if (graphFrame.showLatest != GraphFrame.SHOW_LIVE || !everyRecord || getPostionData) return false;
+		return r.layout != null && layout.name.equals(r.layout.name) && graphData != null && graphData[0] != null
+				&& graphData[0][DataTable.UPTIME_COL] != null;
+	}
+	
+	/**
+	 * Read the fields on one axis from the table.  Runs on the worker thread.  A failure is thrown so that the query
+	 * reports it through failed(), and the graph keeps the data it had.
+	 */
+	private double[][][] loadGraphData(String[] names, int samples, int startReset, long startUptime, boolean reverse, 
+			boolean decimate, boolean positionData, int maxPoints) throws IOException, DataLoadException {
+		if (decimate)
+			return db.getGraphData(names, samples, satId, startReset, startUptime, layout.name, false, reverse, maxPoints);
+		else
+			return db.getGraphData(names, samples, satId, startReset, startUptime, layout.name, false, positionData, reverse);
 	}
 	
 	/**
-	 * Add Lat Lon from stored data or by calculation if needed
-	 * Ask the user if its a lot of data
+	 * Return the width in pixels that the data can be decimated to, keeping the min and max for each pixel, or zero if
+	 * the plot needs every record.  By default every record is fetched.
 	 */
-	private double[][] addPositionData(double[][] coreGraphData) {
+	protected int getDecimationWidth() {
+		return 0;
+	}
+	
+	/**
+	 * Add Lat Lon from stored data or by calculation if needed.  This runs on a worker thread, so the progress is
+	 * shown with invokeLater.
+	 * @return the data with the position, or null if the query was cancelled
+	 */
+	private double[][] addPositionData(double[][] coreGraphData, QueryExecutor.Ticket ticket) {
 		//Log.println("ADDING position data to graph");
 		int showDialogThreshold = 9999;
-		ProgressPanel fileProgress = null;
-		if (graphFrame.SAMPLES > showDialogThreshold) {
-			fileProgress = new ProgressPanel(graphFrame, "Calculating Spacecraft positions, please wait ...", false);
-			fileProgress.setVisible(true);
-		}
+		final int length = coreGraphData[DataTable.RESETS_COL].length;
+		ProgressUpdater progress = null;
+		if (length > showDialogThreshold)
+			progress = new ProgressUpdater("Calculating Spacecraft positions, please wait ...");
 
 		double[][] newGraphData = new double[DataTable.LON_COL+1][]; // make room for the lat/lon	
 		newGraphData[DataTable.RESETS_COL] = coreGraphData[DataTable.RESETS_COL];
 		newGraphData[DataTable.UPTIME_COL] = coreGraphData[DataTable.UPTIME_COL];
 		newGraphData[DataTable.DATA_COL] = coreGraphData[DataTable.DATA_COL];
-		newGraphData[DataTable.LAT_COL] = new double[coreGraphData[DataTable.RESETS_COL].length];
-		newGraphData[DataTable.LON_COL] = new double[coreGraphData[DataTable.RESETS_COL].length];
-		for (int i=0; i< coreGraphData[DataTable.RESETS_COL].length; i++) {
-			// Calculate the position
-			if (graphFrame.SAMPLES > showDialogThreshold)
-				fileProgress.updateProgress((int)(100*i/coreGraphData[DataTable.RESETS_COL].length));
-			SatPos pos = null;
-			double satLatitude = DataRecord.NO_TLE;
-			double satLongitude = DataRecord.NO_TLE;
-			try {
-				pos = sat.getSatellitePosition((int)newGraphData[DataTable.RESETS_COL][i], (long)newGraphData[DataTable.UPTIME_COL][i]);
-				if (pos != null) {
-					satLatitude = Spacecraft.latRadToDeg (pos.getLatitude());
-					satLongitude = Spacecraft.lonRadToDeg(pos.getLongitude());
+		newGraphData[DataTable.LAT_COL] = new double[length];
+		newGraphData[DataTable.LON_COL] = new double[length];
+		try {
+			for (int i=0; i< length; i++) {
+				if (ticket.isCancelled()) return null;
+				// Calculate the position
+				if (progress != null)
+					progress.update((int)(100L*i/length));
+				SatPos pos = null;
+				double satLatitude = DataRecord.NO_TLE;
+				double satLongitude = DataRecord.NO_TLE;
+				try {
+					pos = sat.getSatellitePosition((int)newGraphData[DataTable.RESETS_COL][i], (long)newGraphData[DataTable.UPTIME_COL][i]);
+					if (pos != null) {
+						satLatitude = Spacecraft.latRadToDeg (pos.getLatitude());
+						satLongitude = Spacecraft.lonRadToDeg(pos.getLongitude());
+					}
+					//Log.println("POS: " + (int)newGraphData[PayloadStore.RESETS_COL][i] + "," + (long)newGraphData[PayloadStore.UPTIME_COL][i] + " at "
+					//						+ satLatitude + ", " + satLongitude) ;
+				} catch (PositionCalcException e) {
+					if (e.errorCode == DataRecord.NO_TLE) {
+						// we just store the default values for NO_TLE
+					}
+				}	
+				newGraphData[DataTable.LAT_COL][i] = satLatitude;
+				newGraphData[DataTable.LON_COL][i] = satLongitude;
+			}
+		} finally {
+			if (progress != null)
+				progress.update(100);
+		}
+		return newGraphData;
+	}
+	
+	/**
+	 * Shows a ProgressPanel for work on a worker thread.  The panel is only touched on the Swing thread and is only
+	 * updated when the percentage changes.
+	 */
+	private class ProgressUpdater {
+		private ProgressPanel panel;
+		private int last = -1;
+		
+		ProgressUpdater(final String message) {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					panel = new ProgressPanel(graphFrame, message, false);
+					panel.setVisible(true);
 				}
-				//Log.println("POS: " + (int)newGraphData[PayloadStore.RESETS_COL][i] + "," + (long)newGraphData[PayloadStore.UPTIME_COL][i] + " at "
-				//						+ satLatitude + ", " + satLongitude) ;
-			} catch (PositionCalcException e) {
-				if (e.errorCode == DataRecord.NO_TLE) {
-					// we just store the default values for NO_TLE
+			});
+		}
+		
+		void update(final int percent) {
+			if (percent == last) return;
+			last = percent;
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					panel.updateProgress(percent);
 				}
-			}	
-			newGraphData[DataTable.LAT_COL][i] = satLatitude;
-			newGraphData[DataTable.LON_COL][i] = satLongitude;
-
+			});
 		}
-		if (graphFrame.SAMPLES > showDialogThreshold)
-			fileProgress.updateProgress(100);
-
-		return newGraphData;
-//		return null;
 	}
 
 	public boolean checkDataExists() {
@@ -195,6 +421,13 @@ public abstract class GraphCanvas extends MapPanel {
 	public void paintComponent(Graphics gr) {
 		super.paintComponent( gr ); // call superclass's paintComponent  
 		
+		if (ring != null) {
+			// Copy out the records that were added since the last paint
+			graphData = ring.getGraphData();
+			if (ring2 != null)
+				graphData2 = ring2.getGraphData();
+		}
+		
 		if (graphFrame.showUTCtime && !graphFrame.hideUptime) {
 			bottomBorder = (int)(graphAxisFontSize*3.5);
 		} else {
@@ -53,7 +53,9 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 import com.g0kla.telem.data.ByteArrayLayout;
 import com.g0kla.telem.data.ConversionTable;
 import com.g0kla.telem.data.DataLoadException;
+import com.g0kla.telem.data.DataRecord;
 import com.g0kla.telem.data.EpochTime;
+import com.g0kla.telem.data.SeriesFilter;
 import com.g0kla.telem.segDb.SatTelemStore;
 import com.g0kla.telem.segDb.Spacecraft;
 
@@ -117,6 +119,7 @@ public class GraphFrame extends JFrame implements WindowListener, ActionListener
 	private JCheckBox cbShowSun;
 	@SuppressWarnings("rawtypes")
 	private JComboBox cbAddVariable;
+	private JComboBox<String> cbAvgFilter;
 	private ArrayList<String> variables;
 	
 	public Spacecraft sat;
@@ -144,6 +147,7 @@ public class GraphFrame extends JFrame implements WindowListener, ActionListener
 	public static final int MAX_AVG_SAMPLES = 999;
 	public static int DEFAULT_AVG_PERIOD = 12;
 	public int AVG_PERIOD = DEFAULT_AVG_PERIOD;
+	public int avgFilter = SeriesFilter.RUNNING_AVERAGE; // the filter that is drawn when dspAvg is set
 	public Date fromUtcDate;
 	public Date toUtcDate;
 	//private JLabel lblActual;
@@ -440,6 +444,10 @@ public class GraphFrame extends JFrame implements WindowListener, ActionListener
 		if (!(plotType == SKY_PLOT || plotType == EARTH_PLOT)) {
 
 			lblAvg = new JLabel("Avg");
+			cbAvgFilter = new JComboBox<String>(SeriesFilter.NAMES);
+			cbAvgFilter.setSelectedIndex(avgFilter);
+			cbAvgFilter.setToolTipText("Running average, exponential moving average or median");
+			cbAvgFilter.addActionListener(this);
 			txtAvgPeriod = new JTextField();
 			txtAvgPeriod.addActionListener(this);
 			txtAvgPeriod.addFocusListener(this);
@@ -448,6 +456,7 @@ public class GraphFrame extends JFrame implements WindowListener, ActionListener
 			setAvgVisible(dspAvg);
 
 			footerPanel1.add(lblAvg);
+			footerPanel1.add(cbAvgFilter);
 			footerPanel1.add(txtAvgPeriod);
 			footerPanel1.add(lblAvgPeriod);
 			txtAvgPeriod.setText(Integer.toString(AVG_PERIOD));
@@ -678,6 +687,7 @@ public class GraphFrame extends JFrame implements WindowListener, ActionListener
 	}
 	private void setAvgVisible(boolean f) {
 		lblAvg.setVisible(f);
+		cbAvgFilter.setVisible(f);
 		txtAvgPeriod.setVisible(f);
 		lblAvgPeriod.setVisible(f);
 		
@@ -711,6 +721,15 @@ public class GraphFrame extends JFrame implements WindowListener, ActionListener
 //		} else
 			panel.updateGraphData("GraphFrame.updateGraphData");
 	}
+	
+	/**
+	 * Add a record that has just arrived.  A live graph adds it to the points it has, otherwise the data is fetched
+	 * again.  See GraphCanvas.appendRecord()
+	 * @param r
+	 */
+	public void appendRecord(DataRecord r) {
+		panel.appendRecord(r);
+	}
 
 	/**
 	 * Save properties that are not captured realtime.  This is mainly generic properties such as the size of the
@@ -1255,6 +1274,10 @@ public class GraphFrame extends JFrame implements WindowListener, ActionListener
 			
 		} else if (e.getSource() == this.txtAvgPeriod) {
 				parseAvgPeriod();
+		} else if (e.getSource() == cbAvgFilter) {
+			if (cbAvgFilter.getSelectedIndex() == -1) return;
+			avgFilter = cbAvgFilter.getSelectedIndex();
+			panel.updateGraphData("GraphFrame.actionPerformed:avgFilter");
 		} else if (e.getSource() == this.btnLatest) {
 			showLatest++;
 			if (showLatest > SHOW_RANGE)
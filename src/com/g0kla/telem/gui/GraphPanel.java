@@ -1,8 +1,13 @@
 package com.g0kla.telem.gui;
 
 import java.awt.Color;
-import java.awt.Font;
 import java.awt.Graphics;
+import java.awt.GraphicsEnvironment;
+import java.awt.Toolkit;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.awt.geom.Ellipse2D;
 import java.io.IOException;
 import java.text.DecimalFormat;
@@ -11,6 +16,8 @@ import java.util.HashMap;
 
 import com.g0kla.telem.data.ByteArrayLayout;
 import com.g0kla.telem.data.DataLoadException;
+import com.g0kla.telem.data.DataRecord;
+import com.g0kla.telem.data.SeriesFilter;
 import com.g0kla.telem.segDb.DataTable;
 import com.g0kla.telem.segDb.SatTelemStore;
 import com.g0kla.telem.segDb.Spacecraft;
@@ -47,13 +54,17 @@ public class GraphPanel extends GraphCanvas {
 	public static final int NO_TIME_VALUE = -999;
 	double[] firstDifference = null;
 	double[] dspData = null;
+	private SeriesFilter dspFilter; // filters graphData[0] once when the data changes, rather than on every paint
 
 	int[] plottedXreset;
 	long[] plottedXuptime;
+	long[] plottedXutc; // from the UTC_COL of the graph data, or worked out if it was not loaded
 	int zeroPoint;
 	Spacecraft sat;
 	
 	public static final int MAX_VARIABLES = 13;
+	static final Color SUN_ECLIPSED = new Color(204,204,204); // gray
+	static final Color SUN_LIT = new Color(255,204,0); // yellow
 	Color[] graphColor = {Tools.AMSAT_BLUE, Tools.GRAPH1, Tools.GRAPH2, Tools.GRAPH3, Tools.GRAPH4, Tools.GRAPH5, Tools.GRAPH6, 
 			Tools.GRAPH7, Tools.GRAPH8, Tools.GRAPH9, Tools.GRAPH10 , Tools.GRAPH11 , Tools.GRAPH12};
 	
@@ -63,11 +74,34 @@ public class GraphPanel extends GraphCanvas {
 	
 	int sideLabel = 0;
 	int bottomLabelOffset = 5;
+	private int cursorX = -1; // the position of the mouse, or -1 if it is not over the graph
+	private final Ellipse2D.Double point = new Ellipse2D.Double(); // reused for each point that is drawn
+	private final DecimalFormat labelFormat = new DecimalFormat("0");
+	private int decimationWidth = 0; // the width that the data was last decimated to
 	
 	GraphPanel(String title, Spacecraft sat, ByteArrayLayout layout, GraphFrame gf, SatTelemStore db) throws NumberFormatException, IOException, DataLoadException {
 		super(title, sat, layout, gf, db);
 		this.sat = sat;
 //		freqOffset = fox2.telemetryDownlinkFreqkHz * 1000;
+		MouseAdapter cursor = new MouseAdapter() {
+			public void mouseMoved(MouseEvent e) {
+				cursorX = e.getX();
+				repaint();
+			}
+			public void mouseExited(MouseEvent e) {
+				cursorX = -1;
+				repaint();
+			}
+		};
+		addMouseListener(cursor);
+		addMouseMotionListener(cursor);
+		addComponentListener(new ComponentAdapter() {
+			public void componentResized(ComponentEvent e) {
+				// Decimated data has two points per pixel of the width it was fetched for
+				if (decimated && getWidth() - sideBorder*2 > 0 && getWidth() - sideBorder*2 != decimationWidth)
+					updateGraphData("GraphPanel.resized");
+			}
+		});
 		updateGraphData("GrapPanel.new");
 	}
 
@@ -109,7 +143,7 @@ public class GraphPanel extends GraphCanvas {
 				longestWord = graphFrame.fieldName2[i].length();
 		int leftOffset = longestWord * fontw + 20; // the point where we start drawing the box from the right edge of the graph
 		
-		g.setFont(new Font("SansSerif", Font.PLAIN, font));
+		g.setFont(getAxisFont());
 		g2.drawRect(sideBorder + graphWidth - leftOffset - 1, titleHeight + 4,longestWord * fontw +1 , 9 + fonth * rows +1  );
 		g2.setColor(Color.WHITE);
 		g2.fillRect(sideBorder + graphWidth - leftOffset, titleHeight + 5, longestWord * fontw , 9 + fonth * rows  );
@@ -154,14 +188,53 @@ public class GraphPanel extends GraphCanvas {
 		}
 	}
 	
+	/**
+	 * The axes and the traces are drawn into an image by renderPlot() when the data, size or settings change.  A
+	 * repaint for the mouse or when the window is uncovered copies the image and draws the cursor on top.
+	 */
+	public void paintComponent(Graphics gr) {
+		super.paintComponent( gr ); // call superclass's paintComponent  
+		paintPlot(gr);
+		if (!isPaintingForPrint())
+			paintCursor();
+	}
+	
+	/**
+	 * Draw a line at the mouse with the reset and uptime of the data that was plotted there
+	 */
+	private void paintCursor() {
+		if (cursorX < 0 || plottedXuptime == null || !checkDataExists()) return;
+		int pos = cursorX - sideBorder;
+		if (pos < 0 || pos >= plottedXuptime.length) return;
+		// Find the nearest point, as the points can be several pixels apart
+		int found = -1;
+		for (int d=0; d < labelWidth/2 && found == -1; d++) {
+			if (pos-d >= 0 && plottedXuptime[pos-d] != NO_TIME_VALUE) found = pos-d;
+			else if (pos+d < plottedXuptime.length && plottedXuptime[pos+d] != NO_TIME_VALUE) found = pos+d;
+		}
+		if (found == -1) return;
+		int x = found + sideBorder;
+		g2.setColor(Color.GRAY);
+		g2.drawLine(x, topBorder, x, getHeight()-bottomBorder);
+		String s = plottedXreset[found] + ":" + plottedXuptime[found];
+		if (graphFrame.showUTCtime)
+			s = Spacecraft.formatUtcTime(plottedXutc[found]) + " " + s;
+		g.setFont(getAxisFont());
+		int w = g.getFontMetrics().stringWidth(s) + 4;
+		int labelX = x + 3;
+		if (labelX + w > getWidth()) labelX = x - 3 - w; // keep it on the screen
+		g2.setColor(Color.WHITE);
+		g2.fillRect(labelX, topBorder, w, graphAxisFontSize + 4);
+		g2.setColor(graphTextColor);
+		g2.drawString(s, labelX + 2, topBorder + graphAxisFontSize);
+	}
+	
 	/*
 	 * Draw on a panel, where x is horizontal from left to right and y is vertical from top to bottom
 	 * Draw a line segment for each sample, from the previous sample
 	 * drawline x1,y1,x2,y2
 	 */
-	public void paintComponent(Graphics gr) {
-		super.paintComponent( gr ); // call superclass's paintComponent  
-		
+	protected void renderPlot() {
 		if (!checkDataExists()) return;
 		
 		maxPlottedUptimeForReset = new HashMap<Integer, Long>();
@@ -176,13 +249,15 @@ public class GraphPanel extends GraphCanvas {
 		
 		plottedXreset = new int[graphWidth+1];
 		plottedXuptime = new long[graphWidth+1];
+		plottedXutc = new long[graphWidth+1];
 		
 		for (int j=0; j<graphWidth+1; j++) {
 			plottedXreset[j] = NO_TIME_VALUE;
 			plottedXuptime[j] = NO_TIME_VALUE; 
+			plottedXutc[j] = Spacecraft.NO_UTC;
 		}
 		
-		g.setFont(new Font("SansSerif", Font.PLAIN, graphAxisFontSize));
+		g.setFont(getAxisFont());
 		
 		if (graphFrame.plotDerivative) {
 			firstDifference = new double[graphData[0][0].length];	
@@ -197,7 +272,7 @@ public class GraphPanel extends GraphCanvas {
 		
 		
 		zeroPoint = (int) axisPoints[0];
-		g.setFont(new Font("SansSerif", Font.PLAIN, graphAxisFontSize));
+		g.setFont(getAxisFont());
 		
 		// Analyze the data for the horizontal axis next
 		// We only need to do this for the first data set (if there are multiple)
@@ -236,13 +311,13 @@ public class GraphPanel extends GraphCanvas {
 
 		// Draw the title
 		g2.setColor(Color.BLACK);
-		g.setFont(new Font("SansSerif", Font.BOLD, graphAxisFontSize+3));
+		g.setFont(getTitleFont());
 		g2.drawString(graphFrame.displayTitle, sideBorder/2 + graphWidth/2 - graphFrame.displayTitle.length()/2 * graphAxisFontSize/2, titleHeight);
 
 		// draw the key
 		drawLegend(graphHeight, graphWidth); // FIXME - need to work out where to plot the key when the axis is on top
 		
-		g.setFont(new Font("SansSerif", Font.PLAIN, graphAxisFontSize));
+		g.setFont(getAxisFont());
 		
 		// Draw baseline at the zero point, but not the labels, which are drawn for each reset
 		g2.setColor(graphAxisColor);
@@ -258,9 +333,9 @@ public class GraphPanel extends GraphCanvas {
 			g2.drawString("Resets", sideLabelOffset, zeroPoint+1*graphAxisFontSize + offset );
 		else {
 			g2.drawString("UTC", sideLabelOffset, zeroPoint+(int)(1.5*graphAxisFontSize)+offset );
-			g.setFont(new Font("SansSerif", Font.PLAIN, (int)(graphAxisFontSize*0.9)));
+			g.setFont(getNoteFont());
 			g2.drawString("(Spacecraft UTC is approximate)", graphWidth-graphAxisFontSize*10, titleHeight );
-			g.setFont(new Font("SansSerif", Font.PLAIN, graphAxisFontSize));
+			g.setFont(getAxisFont());
 		
 		}
 
@@ -322,7 +397,6 @@ public class GraphPanel extends GraphCanvas {
 
 		int prevReset = -1;
 		boolean firstLabel = true;
-		DecimalFormat d = new DecimalFormat("0");
 		int w = 0;
 		for (int v=0; v < plottedXuptime.length; v++) {
 			int resets = plottedXreset[v];
@@ -334,7 +408,7 @@ public class GraphPanel extends GraphCanvas {
 				w=0;
 				int timepos = v;
 
-				String s = d.format(uptime);
+				String s = labelFormat.format(uptime);
 				int offset = 0;
 				if (!graphFrame.hideUptime) {
 					offset = graphAxisFontSize;	
@@ -358,8 +432,9 @@ public class GraphPanel extends GraphCanvas {
 //					if (fox.isFox1()) {
 //						FoxSpacecraft fox2 = (FoxSpacecraft)fox;
 //						if (fox2.hasTimeZero(resets) && resets != NO_TIME_VALUE) {
-							g2.drawString(sat.getUtcTimeForReset(resets, uptime), timepos+sideBorder+2, zeroPoint+1*graphAxisFontSize + offset);
-							g2.drawString(""+sat.getUtcDateForReset(resets, uptime), timepos+sideBorder+2, zeroPoint+2 * graphAxisFontSize +offset);
+							long utc = plottedXutc[v];
+							g2.drawString(Spacecraft.formatUtcTime(utc), timepos+sideBorder+2, zeroPoint+1*graphAxisFontSize + offset);
+							g2.drawString(Spacecraft.formatUtcDate(utc), timepos+sideBorder+2, zeroPoint+2 * graphAxisFontSize +offset);
 //						}
 //					}
 				}
@@ -402,27 +477,8 @@ public class GraphPanel extends GraphCanvas {
 		 * Calculate a running average if the user selected it.  We can only do this if we have enough data
 		 * 
 		 */
-		if (graphFrame.dspAvg) {
-			if (graphFrame.AVG_PERIOD > graphData[0][0].length/2)
-				graphFrame.AVG_PERIOD = graphData[0][0].length /2 ;
-			double sum = 0;
-			boolean first = true;
-			dspData = new double[graphData[0][0].length];
-			for (int i=graphFrame.AVG_PERIOD/2; i < graphData[0][0].length-graphFrame.AVG_PERIOD/2; i++) {
-				sum = 0;
-				for (int j=0; j< graphFrame.AVG_PERIOD; j++)
-					sum += graphData[0][DataTable.DATA_COL][i+j-graphFrame.AVG_PERIOD/2];
-				sum = sum / (double)(graphFrame.AVG_PERIOD);
-				dspData[i] = sum;
-				if (first) {
-					for (int j=0; j<graphFrame.AVG_PERIOD/2; j++)
-						dspData[j] = sum;
-					first = false;
-				}
-			}
-			for (int j=graphData[0][0].length-graphFrame.AVG_PERIOD; j<graphData[0][0].length; j++)
-				dspData[j] = sum;
-		}
+		if (graphFrame.dspAvg)
+			updateDspData();
 
 		double maxTimeValue = 0;
 		double minTimeValue = 99E99;
@@ -461,7 +517,6 @@ public class GraphPanel extends GraphCanvas {
 			int resets = (int) graphData[0][DataTable.RESETS_COL][start];
 
 			boolean firstLabel = true;
-			DecimalFormat d = new DecimalFormat("0");
 			for (int v=0; v < numberOfTimeLabels; v++) {
 				if ( ! (maxPlottedUptimeForReset.containsKey(resets) && maxPlottedUptimeForReset.get(resets) > timelabels[v]) ) {
 					maxPlottedUptimeForReset.put(resets, (long) timelabels[v]); // otherwise store this uptime as the maximum value
@@ -476,7 +531,7 @@ public class GraphPanel extends GraphCanvas {
 							// this is for rests with 1 value. It might cause an overlap but we live with that
 							|| (!graphFrame.showContinuous && numberOfTimeLabels == 1)) {  
 
-						String s = d.format(timelabels[v]);
+						String s = labelFormat.format(timelabels[v]);
 
 						int offset = 0;
 						if (!graphFrame.hideUptime) {
@@ -499,8 +554,9 @@ public class GraphPanel extends GraphCanvas {
 						}
 						if (graphFrame.showUTCtime) {
 //							if (fox.hasTimeZero(resets)) {
-								g2.drawString(sat.getUtcTimeForReset(resets, (long)timelabels[v]), timepos+sideBorder+2, zeroPoint+1*graphAxisFontSize + offset);
-								g2.drawString(""+sat.getUtcDateForReset(resets, (long)timelabels[v]), timepos+sideBorder+2, zeroPoint+2 * graphAxisFontSize +offset);
+								long utc = sat.getUtcMillisForReset(resets, (long)timelabels[v]);
+								g2.drawString(Spacecraft.formatUtcTime(utc), timepos+sideBorder+2, zeroPoint+1*graphAxisFontSize + offset);
+								g2.drawString(Spacecraft.formatUtcDate(utc), timepos+sideBorder+2, zeroPoint+2 * graphAxisFontSize +offset);
 //							}
 						}
 						g2.setColor(graphAxisColor);
@@ -522,7 +578,9 @@ public class GraphPanel extends GraphCanvas {
 		int stepSize = 1;
 		//int spaceSize = 1;
 
-		if (end - start > graphWidth && graphWidth != 0) {
+		if (decimated) {
+			// already reduced to the min and max for each pixel, so we plot every point to keep the peaks
+		} else if (end - start > graphWidth && graphWidth != 0) {
 			stepSize = Math.round((end - start)/graphWidth);
 		} else {
 			// we leave step size at 1 and plot all of the points, but space them out.
@@ -538,6 +596,57 @@ public class GraphPanel extends GraphCanvas {
 		
 	}
 
+	/**
+	 * Filter the main trace if the data or the filter changed since it was last filtered.  The period is limited to
+	 * half of the data.
+	 */
+	private void updateDspData() {
+		int length = graphData[0][0].length;
+		if (graphFrame.AVG_PERIOD > length/2)
+			graphFrame.AVG_PERIOD = length /2 ;
+		if (dspFilter == null || dspFilter.getType() != graphFrame.avgFilter || dspFilter.getPeriod() != graphFrame.AVG_PERIOD
+				|| dspFilter.size() != length) {
+			dspFilter = new SeriesFilter(graphFrame.avgFilter, graphFrame.AVG_PERIOD, graphData[0][DataTable.DATA_COL], graphFrame.SAMPLES);
+			dspData = null;
+		}
+		if (dspData == null)
+			dspData = dspFilter.getOutput();
+	}
+	
+	@Override
+	protected void graphDataLoaded() {
+		dspFilter = null;
+		dspData = null;
+	}
+	
+	/**
+	 * A live record is added to the filter, which only filters the points near the ends again
+	 */
+	@Override
+	protected void recordAppended(DataRecord r) {
+		if (dspFilter == null) return;
+		dspFilter.add(SeriesRing.getValue(layout, layout.getPositionByName(graphFrame.fieldName[0]), r));
+		dspData = null;
+	}
+
+	/**
+	 * Line graphs are decimated to the width of the plot.  Until the panel has been laid out the width of the screen
+	 * is used, and the data is fetched again when the width changes.  The derivative and the running average need
+	 * every record.
+	 */
+	@Override
+	protected int getDecimationWidth() {
+		if (graphFrame.plotDerivative || graphFrame.dspAvg || graphFrame.textDisplay) return 0;
+		int graphWidth = getWidth() - sideBorder*2;
+		if (graphWidth > 0)
+			decimationWidth = graphWidth;
+		else if (GraphicsEnvironment.isHeadless())
+			return 0;
+		else
+			decimationWidth = Toolkit.getDefaultToolkit().getScreenSize().width;
+		return decimationWidth;
+	}
+
 	private void plotGraph(double[][][] graphData, int graphHeight, int graphWidth, int start, int end, int stepSize, int sideBorder, double minTimeValue, 
 			double maxTimeValue, double minValue, double maxValue, int colorIdx, boolean plotDsp) {
 		if (graphData != null)
@@ -571,6 +680,12 @@ public class GraphPanel extends GraphCanvas {
 
 					plottedXreset[x-this.sideBorder] = (int) graphData[j][DataTable.RESETS_COL][i];
 					plottedXuptime[x-this.sideBorder] = (long) graphData[j][DataTable.UPTIME_COL][i];
+					if (graphFrame.showUTCtime) {
+						if (graphData[j].length > DataTable.UTC_COL && graphData[j][DataTable.UTC_COL] != null)
+							plottedXutc[x-this.sideBorder] = (long) graphData[j][DataTable.UTC_COL][i];
+						else // live points added since the load do not have the column
+							plottedXutc[x-this.sideBorder] = sat.getUtcMillisForReset(plottedXreset[x-this.sideBorder], plottedXuptime[x-this.sideBorder]);
+					}
 
 					
 					// draw the sun if requested by user
@@ -623,9 +738,9 @@ public class GraphPanel extends GraphCanvas {
 					
 					if (graphFrame.showSun) {
 						if (pos != null && pos.isEclipsed())
-							g2.setColor(new Color(204,204,204)); // gray
+							g2.setColor(SUN_ECLIPSED);
 						else
-							g2.setColor(new Color(255,204,0)); // yellow
+							g2.setColor(SUN_LIT);
 
 						int midPoint = 0;
 						int w = 0; // width of sun rectangle
@@ -651,18 +766,27 @@ public class GraphPanel extends GraphCanvas {
 					if (!graphFrame.hideMain || ( graphFrame.hideMain && plotDsp && j > 0 ) || ( graphFrame.hideMain && !plotDsp)) {
 						g2.setColor(graphColor[j+colorIdx]);
 						if (!graphFrame.hideLines) g2.drawLine(lastx, lasty, x, y);
-						if (!graphFrame.hidePoints) g2.draw(new Ellipse2D.Double(x-1, y-1, 2,2));
+						if (!graphFrame.hidePoints) {
+							point.setFrame(x-1, y-1, 2, 2);
+							g2.draw(point);
+						}
 					}
 
 					if (graphFrame.plotDerivative && plotDsp && j==0) {
 						g2.setColor(Tools.AMSAT_RED);
 						if (!graphFrame.hideLines) g2.drawLine(lastx2, lasty2, x2, y2);
-						if (!graphFrame.hidePoints) g2.draw(new Ellipse2D.Double(x2, y2,2,2));
+						if (!graphFrame.hidePoints) {
+							point.setFrame(x2, y2, 2, 2);
+							g2.draw(point);
+						}
 					}
 					if (graphFrame.dspAvg && plotDsp && j==0) {
 						g2.setColor(Tools.AMSAT_GREEN);
 						if (!graphFrame.hideLines) g2.drawLine(lastx, lasty3, x, y3);
-						if (!graphFrame.hidePoints) g2.draw(new Ellipse2D.Double(x, y3,2,2));
+						if (!graphFrame.hidePoints) {
+							point.setFrame(x, y3, 2, 2);
+							g2.draw(point);
+						}
 					}
 
 					
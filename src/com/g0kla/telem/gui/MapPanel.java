@@ -9,6 +9,8 @@ import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.net.URL;
+import java.util.HashMap;
 
 import javax.imageio.ImageIO;
 import javax.swing.JPanel;
@@ -42,6 +44,10 @@ public class MapPanel extends JPanel {
 	private static final long serialVersionUID = 1L;
 	
     protected BufferedImage image;
+    private BufferedImage scaled; // the image at the size it was last drawn
+    private BufferedImage scaledFrom;
+    private double scaledRatio;
+    private static final HashMap<String, BufferedImage> maps = new HashMap<String, BufferedImage>();
 
     public MapPanel() {
     	super();
@@ -55,6 +61,27 @@ public class MapPanel extends JPanel {
             image = ImageIO.read(new File(filePath));
     }
 
+    /**
+     * Return a map image from the resources.  It is decoded the first time it is asked for and then shared by all of
+     * the panels, so switching between maps or opening another plot does not read the file again.
+     * @param resource
+     * @return
+     * @throws IOException
+     */
+    protected static BufferedImage getMapImage(String resource) throws IOException {
+    	synchronized (maps) {
+    		BufferedImage img = maps.get(resource);
+    		if (img == null) {
+    			URL url = MapPanel.class.getResource(resource);
+    			if (url == null)
+    				throw new IOException("Missing map image: " + resource);
+    			img = ImageIO.read(url);
+    			maps.put(resource, img);
+    		}
+    		return img;
+    	}
+    }
+
     public void setBufferedImage( BufferedImage img) {
     	image = img;
     	this.repaint();
@@ -67,8 +94,15 @@ public class MapPanel extends JPanel {
     			double ratio = (double)graphHeight/(double)image.getHeight();
     			if (image.getWidth() * ratio > graphWidth)
     				ratio = (double)graphWidth/(double)image.getWidth();
-    			if (ratio > 0)
-    				display = scale(image, ratio);
+    			if (ratio > 0) {
+    				// Only scale again if the image or the size changed
+    				if (scaled == null || scaledFrom != image || scaledRatio != ratio) {
+    					scaled = scale(image, ratio);
+    					scaledFrom = image;
+    					scaledRatio = ratio;
+    				}
+    				display = scaled;
+    			}
     			//Log.println("RATIO:"+ ratio);
     		}
     		g.drawImage(display, x, y, null); // see javadoc for more info on the parameters
@@ -14,12 +14,15 @@ import java.awt.event.ItemListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.io.IOException;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Locale;
 import java.util.TimeZone;
+import java.util.concurrent.Executor;
 
 import javax.swing.AbstractAction;
 import javax.swing.ActionMap;
@@ -36,16 +39,24 @@ import javax.swing.JSplitPane;
 import javax.swing.JTable;
 import javax.swing.JTextField;
 import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
 import javax.swing.border.BevelBorder;
 import javax.swing.border.SoftBevelBorder;
 import javax.swing.plaf.SplitPaneUI;
 import javax.swing.plaf.basic.BasicSplitPaneUI;
+import javax.swing.table.AbstractTableModel;
 
 import com.g0kla.telem.data.ByteArrayLayout;
+import com.g0kla.telem.data.DataLoadException;
+import com.g0kla.telem.data.DataRecord;
 import com.g0kla.telem.data.EpochTime;
 import com.g0kla.telem.data.LayoutLoadException;
+import com.g0kla.telem.segDb.DataTable;
+import com.g0kla.telem.segDb.RecordCursor;
 import com.g0kla.telem.segDb.SatTelemStore;
 import com.g0kla.telem.segDb.Spacecraft;
+import com.g0kla.telem.segDb.TableChange;
+import com.g0kla.telem.segDb.TableListener;
 
 /**
  * 
@@ -158,10 +169,19 @@ public abstract class ModuleTab extends JPanel implements Runnable, FocusListene
 	
 	// The table model needs to be dynamic and take a Layout at a paramater
 	protected DataRecordTableModel recordTableModel;
+	protected PagedRecordTableModel pagedTableModel; // used instead when the rows are paged from the table
 	protected JTable table;
 	protected ByteArrayLayout layout;
 	Spacecraft sat; 
 	protected SatTelemStore db;
+	private TableListener tableListener; // set while the tab is updated as records are saved
+	private boolean tableLoading = false; // true while parseTelemetryInBackground() reads the rows
+	private ArrayList<DataRecord> arrivedWhileLoading = new ArrayList<DataRecord>();
+	private static final Executor SWING_THREAD = new Executor() {
+		public void execute(Runnable r) {
+			SwingUtilities.invokeLater(r);
+		}
+	};
 	
 	public ModuleTab(ByteArrayLayout layout, Spacecraft sat, SatTelemStore db) {
 		this.sat = sat;
@@ -246,6 +266,59 @@ public abstract class ModuleTab extends JPanel implements Runnable, FocusListene
 	
 	public void stopProcessing() {
 		running = false;
+		stopListening();
+	}
+	
+	/**
+	 * Update the tab as records are saved to its table, rather than polling the store for the updated flag.  The
+	 * records arrive on the Swing thread and records that are saved together arrive as one change.
+	 */
+	public void listenForRecords() {
+		if (tableListener != null || db == null || layout == null) return;
+		tableListener = new TableListener() {
+			public void recordsAdded(TableChange change) {
+				ModuleTab.this.recordsAdded(change);
+			}
+		};
+		if (!db.addTableListener(layout.name, tableListener, SWING_THREAD))
+			tableListener = null;
+	}
+	
+	public void stopListening() {
+		if (tableListener == null) return;
+		db.removeTableListener(layout.name, tableListener);
+		tableListener = null;
+	}
+	
+	/**
+	 * Called on the Swing thread with records that were saved to the table of this tab.  When the tab shows the live
+	 * records the modules show the latest values and the open graphs and the table add the new records.  A paged
+	 * table is moved on to the latest rows.  If the table has not been filled yet it is refreshed with parseFrames().
+	 * A tab that shows a range does not change.
+	 * @param change
+	 */
+	protected void recordsAdded(TableChange change) {
+		if (showLatest != SHOW_LIVE) return;
+		try {
+			if (topModules != null)
+				for (DisplayModule mod : topModules)
+					if (mod != null)
+						mod.updateValues(change);
+			if (bottomModules != null)
+				for (DisplayModule mod : bottomModules)
+					if (mod != null)
+						mod.updateValues(change);
+		} catch (NumberFormatException | IOException | DataLoadException e) {
+			e.printStackTrace();
+		}
+		if (table != null && table.getModel() == pagedTableModel)
+			movePagedWindow(change);
+		else if (tableLoading)
+			arrivedWhileLoading.addAll(change.getRecords()); // added once the rows that are being read are shown
+		else if (table != null && table.getModel() == recordTableModel && recordTableModel.getRowCount() > 0)
+			recordTableModel.addRecords(change.getRecords(), SAMPLES);
+		else
+			parseFrames();
 	}
 
 	public boolean isDone() {
@@ -835,6 +908,109 @@ public abstract class ModuleTab extends JPanel implements Runnable, FocusListene
 
 	public abstract void parseFrames();
 	
+	/**
+	 * Put the records from a cursor into the table, latest first.  The values are read as numbers, so nothing is
+	 * converted to a string and back.
+	 * @param cursor
+	 * @throws IOException
+	 * @throws DataLoadException
+	 */
+	protected void parseTelemetry(RecordCursor cursor) throws IOException, DataLoadException {
+		useTableModel(recordTableModel);
+		recordTableModel.setData(cursor);
+	}
+	
+	/**
+	 * Fill the table with the records selected in the footer on a worker thread, so that the screen does not stop
+	 * while they are read.  A refresh that arrives before the last one has finished replaces it.
+	 * @throws IOException
+	 */
+	protected void parseTelemetryInBackground() throws IOException {
+		final RecordCursor cursor = getTableCursor(); // the settings are read here, the records in the background
+		if (cursor == null) return;
+		tableLoading = true;
+		QueryExecutor.getShared().submit(this, new QueryExecutor.Query<long[][]>() {
+			public long[][] run(QueryExecutor.Ticket ticket) throws Exception {
+				return recordTableModel.readRows(cursor);
+			}
+		}, new QueryExecutor.Result<long[][]>() {
+			public void done(long[][] rows) {
+				useTableModel(recordTableModel);
+				recordTableModel.setData(rows);
+				addArrivedWhileLoading();
+			}
+			public void failed(Exception e) {
+				e.printStackTrace();
+				addArrivedWhileLoading();
+			}
+		});
+	}
+	
+	/**
+	 * Add the records that were saved while the rows were read.  Any that were read too are not added again.
+	 */
+	private void addArrivedWhileLoading() {
+		tableLoading = false;
+		if (arrivedWhileLoading.isEmpty()) return;
+		if (showLatest == SHOW_LIVE && table.getModel() == recordTableModel)
+			recordTableModel.addRecords(arrivedWhileLoading, SAMPLES);
+		arrivedWhileLoading = new ArrayList<DataRecord>();
+	}
+	
+	/**
+	 * Show the records selected in the footer by paging them from the table as the user scrolls, rather than loading
+	 * them all first.  The rows of the range are found on the page loader thread, so this returns straight away and a
+	 * large range opens without waiting.  The paged table can not be sorted.  Call this from parseFrames() in place of
+	 * parseTelemetry().  Once it is showing, live records move the window with movePagedWindow() rather than calling
+	 * parseFrames().
+	 * @throws IOException
+	 * @throws DataLoadException
+	 */
+	protected void parseTelemetryPaged() throws IOException, DataLoadException {
+		DataTable t = db.getTable(layout.name);
+		if (t == null) return;
+		if (pagedTableModel == null)
+			pagedTableModel = new PagedRecordTableModel(layout);
+		useTableModel(pagedTableModel);
+		if (showLatest == SHOW_LIVE)
+			pagedTableModel.showLatest(t, SAMPLES);
+		else if (showLatest == SHOW_RANGE)
+			pagedTableModel.showRange(t, START_RESET, START_UPTIME, END_RESET, END_UPTIME, SAMPLES);
+		else
+			pagedTableModel.showRange(t, START_RESET, START_UPTIME, 0, Long.MAX_VALUE, SAMPLES);
+	}
+	
+	/**
+	 * Move a paged table on to the latest SAMPLES rows after records were saved.  The pages before the earliest new
+	 * record are kept, so only the new rows are read.  The rows are found on the page loader thread.
+	 * @param change
+	 */
+	private void movePagedWindow(TableChange change) {
+		DataTable t = db.getTable(layout.name);
+		if (t == null) return;
+		pagedTableModel.showAdded(t, change.getFromReset(), change.getFromUptime(), SAMPLES);
+	}
+	
+	private void useTableModel(AbstractTableModel model) {
+		if (table.getModel() == model) return;
+		table.setModel(model);
+		table.setAutoCreateRowSorter(model == recordTableModel); // sorting a paged model would load every page
+	}
+	
+	/**
+	 * Return a cursor over the records selected in the footer: the latest SAMPLES records when showing live data,
+	 * otherwise SAMPLES records from the start reset and uptime, up to the end when a range is shown.
+	 * @return the cursor, or null if the layout is not in the store
+	 * @throws IOException
+	 */
+	protected RecordCursor getTableCursor() throws IOException {
+		if (showLatest == SHOW_LIVE)
+			return db.getCursor(0, 0, Integer.MAX_VALUE, Long.MAX_VALUE, SAMPLES, true, layout.name);
+		if (showLatest == SHOW_RANGE)
+			return db.getCursor(START_RESET, START_UPTIME, END_RESET, END_UPTIME, SAMPLES, false, layout.name);
+		return db.getCursor(START_RESET, START_UPTIME, Integer.MAX_VALUE, Long.MAX_VALUE, SAMPLES, false, layout.name);
+	}
+	
 	protected void parseTelemetry(String data[][]) {	
 		// Now put the telemetry packets into the table data structure
 		long[][] packetData = new long[data.length][data[0].length];
@@ -851,6 +1027,7 @@ public abstract class ModuleTab extends JPanel implements Runnable, FocusListene
 		}
 
 		if (data.length > 0) {
+			useTableModel(recordTableModel);
 			recordTableModel.setData(packetData);
 		}
 	}
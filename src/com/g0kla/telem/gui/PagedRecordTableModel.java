@@ -0,0 +1,296 @@
+package com.g0kla.telem.gui;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+
+import com.g0kla.telem.data.ByteArrayLayout;
+import com.g0kla.telem.data.DataLoadException;
+import com.g0kla.telem.data.DataRecord;
+import com.g0kla.telem.segDb.DataTable;
+
+/**
+ *
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2018 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * A table model that shows a window of rows from a DataTable without loading them all.  The rows are fetched a page
+ * at a time on a background thread when the table first asks for them, and only the most recent pages are kept.  A
+ * page holds PAGE_SIZE rows of the table, counted from the start of the table, so the pages are still valid when a live
+ * window moves on.
+ * Until its page arrives a row is shown as blank.  The columns and the order, latest first, are the same as
+ * DataRecordTableModel.
+ *
+ * The pages are read from the segment files, so they do not go through the cache of the table.  The model does not
+ * support sorting, because that would load every row.
+ *
+ */
+@SuppressWarnings("serial")
+public class PagedRecordTableModel extends AbstractTableModel {
+	public static final int PAGE_SIZE = 256;
+	public static final int MAX_PAGES = 16;
+	public static final int RESET_COL = DataRecordTableModel.RESET_COL;
+	public static final int UPTIME_COL = DataRecordTableModel.UPTIME_COL;
+
+	private static final ExecutorService loader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "Table page loader");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	String[] columnNames = null;
+	private DataTable table;
+	private int firstRow = 0; // the window of rows in the table, in the order of DataTable.getRows()
+	private int rows = 0;
+	private int generation = 0; // changed when pages are dropped, so that pages that are still loading are dropped too
+	private final HashSet<Integer> loading = new HashSet<Integer>();
+	private final LinkedHashMap<Integer, long[][]> pages = new LinkedHashMap<Integer, long[][]>(MAX_PAGES, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry<Integer, long[][]> eldest) {
+			return size() > MAX_PAGES;
+		}
+	};
+
+	PagedRecordTableModel(ByteArrayLayout lay) {
+		columnNames = new String[lay.fieldName.length+2];
+		columnNames[RESET_COL] = "RESET";
+		columnNames[UPTIME_COL] = "UPTIME";
+		for (int k=0; k<columnNames.length-2; k++)
+			columnNames[k+2] = lay.fieldName[k];
+	}
+
+	/**
+	 * Show a window of rows from a table.  This returns straight away and the rows are loaded as they are shown.
+	 * Call this on the Swing thread.
+	 * @param table
+	 * @param firstRow - the first row in the table, see DataTable.getRowNumber()
+	 * @param rows - the number of rows to show
+	 */
+	public void setWindow(DataTable table, int firstRow, int rows) {
+		this.table = table;
+		this.firstRow = Math.max(0, firstRow);
+		this.rows = Math.max(0, rows);
+		generation++;
+		pages.clear();
+		loading.clear();
+		fireTableDataChanged();
+	}
+
+	/**
+	 * Move the window after records were added to the table, for example to show the latest rows.  The pages before
+	 * the first row that was added are kept, because those rows have not moved.  Call this on the Swing thread.
+	 * @param firstRow - the first row in the table
+	 * @param rows - the number of rows to show
+	 * @param addedFrom - the row number of the earliest record that was added
+	 */
+	public void moveWindow(int firstRow, int rows, int addedFrom) {
+		this.firstRow = Math.max(0, firstRow);
+		this.rows = Math.max(0, rows);
+		generation++;
+		loading.clear();
+		Iterator<Integer> it = pages.keySet().iterator();
+		while (it.hasNext())
+			if ((it.next()+1) * PAGE_SIZE > addedFrom)
+				it.remove();
+		fireTableDataChanged();
+	}
+
+	/**
+	 * Show the latest rows of a table.  The size of the table is read on the loader thread, so this returns straight
+	 * away and the window is set once it is known.  Call this on the Swing thread.
+	 * @param t
+	 * @param count - the number of rows to show
+	 */
+	public void showLatest(final DataTable t, final int count) {
+		loader.execute(new Runnable() {
+			public void run() {
+				final int last = t.getSize();
+				final int first = Math.max(0, last - count);
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						setWindow(t, first, last - first);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Show the rows of a table from a reset and uptime, up to an end reset and uptime.  The row numbers are found on
+	 * the loader thread, because that may read a segment, and the window is set once they are known.  Call this on the
+	 * Swing thread.
+	 * @param t
+	 * @param reset
+	 * @param uptime
+	 * @param endReset
+	 * @param endUptime - the last uptime to show, or Long.MAX_VALUE to show count rows
+	 * @param count - the most rows to show
+	 */
+	public void showRange(final DataTable t, final int reset, final long uptime, final int endReset,
+			final long endUptime, final int count) {
+		loader.execute(new Runnable() {
+			public void run() {
+				try {
+					int size = t.getSize();
+					int from = t.getRowNumber(reset, uptime);
+					int to = from + count;
+					if (endUptime < Long.MAX_VALUE)
+						to = Math.min(to, t.getRowNumber(endReset, endUptime+1));
+					final int first = Math.max(0, from);
+					final int last = Math.min(size, to);
+					SwingUtilities.invokeLater(new Runnable() {
+						public void run() {
+							setWindow(t, first, Math.max(0, last - first));
+						}
+					});
+				} catch (IOException | DataLoadException e) {
+					e.printStackTrace();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Move the window on to the latest rows after records were saved to the table.  The row of the earliest new
+	 * record is found on the loader thread and then the window is moved with moveWindow().  The loader runs one job at
+	 * a time, so windows are set and moved in the order they were asked for.  Call this on the Swing thread.
+	 * @param t
+	 * @param fromReset - the reset of the earliest record that was added
+	 * @param fromUptime - the uptime of the earliest record that was added
+	 * @param count - the number of rows to show
+	 */
+	public void showAdded(final DataTable t, final int fromReset, final long fromUptime, final int count) {
+		loader.execute(new Runnable() {
+			public void run() {
+				try {
+					final int addedFrom = t.getRowNumber(fromReset, fromUptime);
+					final int last = t.getSize();
+					final int first = Math.max(0, last - count);
+					SwingUtilities.invokeLater(new Runnable() {
+						public void run() {
+							if (table == t)
+								moveWindow(first, last - first, addedFrom);
+						}
+					});
+				} catch (IOException | DataLoadException e) {
+					e.printStackTrace();
+				}
+			}
+		});
+	}
+
+	public int getColumnCount() {
+		return columnNames.length;
+	}
+
+	public int getRowCount() {
+		return rows;
+	}
+
+	public String getColumnName(int col) {
+		return columnNames[col];
+	}
+
+	/**
+	 * Return the value, or null if the page is still loading
+	 */
+	public Object getValueAt(int row, int col) {
+		int tableRow = firstRow + rows - 1 - row; // latest first
+		int page = tableRow / PAGE_SIZE;
+		long[][] data = pages.get(page);
+		if (data == null || tableRow % PAGE_SIZE >= data.length) {
+			requestPage(page);
+			if (page > firstRow / PAGE_SIZE)
+				requestPage(page-1); // the user is probably scrolling down
+			return null;
+		}
+		long[] r = data[tableRow % PAGE_SIZE];
+		if (r == null) return null;
+		return r[col];
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public Class getColumnClass(int c) {
+		return Long.class;
+	}
+
+	public boolean isCellEditable(int row, int col) {
+		return false;
+	}
+
+	private void requestPage(final int page) {
+		long[][] have = pages.get(page);
+		if (table == null || (have != null && page * PAGE_SIZE + have.length >= Math.min(firstRow + rows, (page+1) * PAGE_SIZE))
+				|| !loading.add(page)) return;
+		final DataTable t = table;
+		final int gen = generation;
+		final int start = page * PAGE_SIZE;
+		final int count = Math.min(PAGE_SIZE, firstRow + rows - start); // rows past the window may not be in the table
+		final int columns = columnNames.length;
+		loader.execute(new Runnable() {
+			public void run() {
+				final long[][] data;
+				try {
+					ArrayList<DataRecord> records = t.getRows(start, count);
+					data = new long[records.size()][]; // a short page is requested again when its missing rows are shown
+					for (int i=0; i < records.size(); i++) {
+						DataRecord r = records.get(i);
+						long[] row = new long[columns];
+						row[RESET_COL] = r.resets;
+						row[UPTIME_COL] = r.uptime;
+						int fields = Math.min(r.fieldValue.length, columns-2);
+						for (int k=0; k<fields; k++)
+							row[k+2] = r.fieldValue[k];
+						data[i] = row;
+					}
+				} catch (IOException | DataLoadException e) {
+					e.printStackTrace();
+					SwingUtilities.invokeLater(new Runnable() {
+						public void run() {
+							if (gen == generation)
+								loading.remove(page); // not cached, so the page is requested again when it is shown
+						}
+					});
+					return;
+				}
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						if (gen != generation) return;
+						loading.remove(page);
+						pages.put(page, data);
+						// The rows are shown latest first.  Only the rows that were read are updated, so the rows
+						// of a short page are not asked for again straight away
+						int fromView = Math.max(0, firstRow + rows - start - data.length);
+						int toView = Math.min(rows - 1, firstRow + rows - 1 - start);
+						if (fromView <= toView)
+							fireTableRowsUpdated(fromView, toView);
+					}
+				});
+			}
+		});
+	}
+}
@@ -0,0 +1,215 @@
+package com.g0kla.telem.gui;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.SwingUtilities;
+
+/**
+ *
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2018 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Runs the slow work behind the screens, such as loading graph data or calculating positions, away from the Swing
+ * thread.  Each query is submitted with a key, normally the component that wants the result.  Only one query runs
+ * for each key at a time:
+ *
+ *   A new query cancels the one that is running for the same key, so a result for an old range is never shown
+ *   If several queries are submitted while one is running then only the last one is run
+ *
+ * Cancelling is cooperative.  A long query should check Ticket.isCancelled() and return early.  The result, or the
+ * exception if the query failed, is passed to the Swing thread with invokeLater, unless the query was cancelled first.
+ * Virtual threads are used when the JVM has them, otherwise a pool of daemon threads.
+ *
+ */
+public class QueryExecutor {
+	private static QueryExecutor shared;
+
+	private final ExecutorService executor;
+	private final HashMap<Object, Slot> slots = new HashMap<Object, Slot>();
+
+	public interface Query<T> {
+		/**
+		 * Do the work, on a worker thread
+		 * @param ticket - check this to stop early if the query is cancelled
+		 * @return the result that is passed to the Swing thread
+		 */
+		T run(Ticket ticket) throws Exception;
+	}
+
+	public interface Result<T> {
+		/**
+		 * Called on the Swing thread with the result of a query that was not cancelled
+		 */
+		void done(T result);
+
+		/**
+		 * Called on the Swing thread if a query that was not cancelled fails
+		 */
+		void failed(Exception e);
+	}
+
+	public static class Ticket {
+		private volatile boolean cancelled = false;
+		public boolean isCancelled() { return cancelled; }
+		void cancel() { cancelled = true; }
+	}
+
+	private static class Slot {
+		Job<?> running;
+		Job<?> pending;
+	}
+
+	private class Job<T> implements Runnable {
+		final Object key;
+		final Query<T> query;
+		final Result<T> result;
+		final Ticket ticket = new Ticket();
+
+		Job(Object key, Query<T> query, Result<T> result) {
+			this.key = key;
+			this.query = query;
+			this.result = result;
+		}
+
+		public void run() {
+			try {
+				if (ticket.isCancelled()) return;
+				final T value = query.run(ticket);
+				if (ticket.isCancelled() || result == null) return;
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						if (!ticket.isCancelled())
+							result.done(value);
+					}
+				});
+			} catch (final Exception e) {
+				if (ticket.isCancelled()) return;
+				if (result == null) {
+					e.printStackTrace();
+					return;
+				}
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						if (!ticket.isCancelled())
+							result.failed(e);
+					}
+				});
+			} finally {
+				finished(this);
+			}
+		}
+	}
+
+	public QueryExecutor() {
+		executor = createExecutor();
+	}
+
+	/**
+	 * The executor that is shared by the gui
+	 */
+	public static synchronized QueryExecutor getShared() {
+		if (shared == null)
+			shared = new QueryExecutor();
+		return shared;
+	}
+
+	private static ExecutorService createExecutor() {
+		try {
+			// Java 21 and later.  Found by name so that we still build and run on older JVMs
+			Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) m.invoke(null);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return Executors.newCachedThreadPool(new ThreadFactory() {
+				int n = 0;
+				public synchronized Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "Query " + n++);
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Run a query for a key, cancelling the query that is running for the same key and replacing any that is
+	 * waiting to run
+	 * @param key
+	 * @param query
+	 * @param result - called on the Swing thread, may be null
+	 * @return the ticket for the query, which can be used to see if it was cancelled
+	 */
+	public synchronized <T> Ticket submit(Object key, Query<T> query, Result<T> result) {
+		Slot slot = slots.get(key);
+		if (slot == null) {
+			slot = new Slot();
+			slots.put(key, slot);
+		}
+		Job<T> job = new Job<T>(key, query, result);
+		if (slot.pending != null)
+			slot.pending.ticket.cancel(); // coalesced with this one, so it never runs
+		if (slot.running != null)
+			slot.running.ticket.cancel();
+		slot.pending = job;
+		if (slot.running == null)
+			start(slot);
+		return job.ticket;
+	}
+
+	/**
+	 * Cancel the running and waiting queries for a key
+	 * @param key
+	 */
+	public synchronized void cancel(Object key) {
+		Slot slot = slots.get(key);
+		if (slot == null) return;
+		if (slot.pending != null) {
+			slot.pending.ticket.cancel();
+			slot.pending = null;
+		}
+		if (slot.running != null)
+			slot.running.ticket.cancel();
+	}
+
+	/**
+	 * True if a query is running or waiting for this key
+	 * @param key
+	 */
+	public synchronized boolean isBusy(Object key) {
+		return slots.containsKey(key);
+	}
+
+	private void start(Slot slot) {
+		Job<?> job = slot.pending;
+		slot.pending = null;
+		slot.running = job;
+		executor.execute(job);
+	}
+
+	private synchronized void finished(Job<?> job) {
+		Slot slot = slots.get(job.key);
+		if (slot == null || slot.running != job) return;
+		slot.running = null;
+		if (slot.pending != null)
+			start(slot);
+		else
+			slots.remove(job.key);
+	}
+}
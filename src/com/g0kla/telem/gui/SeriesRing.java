@@ -0,0 +1,154 @@
+package com.g0kla.telem.gui;
+
+import com.g0kla.telem.data.ByteArrayLayout;
+import com.g0kla.telem.data.ConversionTable;
+import com.g0kla.telem.data.DataRecord;
+import com.g0kla.telem.segDb.DataTable;
+
+/**
+ *
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2018 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The points of a live graph held in a ring, so that a new record can be added without fetching the whole window from
+ * the table again.  When the ring is full the oldest point is dropped.  The graph still draws from graph data in the
+ * form returned by DataTable.getGraphData(), so the ring is copied out to that form when it is next painted, once for
+ * however many records arrived in between.
+ *
+ */
+class SeriesRing {
+	private final ByteArrayLayout layout;
+	private final int[] fields; // the position of each field in the layout
+	private final int capacity;
+	private final double[] resets;
+	private final double[] uptime;
+	private final double[][] data; // one ring for each field
+	private int first = 0; // the oldest point
+	private int size = 0;
+	private double[][][] graphData; // the last copy that was made
+	private boolean changed = true;
+
+	/**
+	 * Create a ring for the fields of a graph and fill it with the graph data that was loaded for it
+	 * @param layout
+	 * @param names - the fields of the graph, in the same order as the graph data
+	 * @param graphData - the data loaded from the table, oldest first
+	 * @param capacity - the number of points in the window
+	 */
+	SeriesRing(ByteArrayLayout layout, String[] names, double[][][] graphData, int capacity) {
+		this.layout = layout;
+		this.capacity = Math.max(1, capacity);
+		fields = new int[names.length];
+		for (int f=0; f < names.length; f++)
+			fields[f] = layout.getPositionByName(names[f]);
+		resets = new double[this.capacity];
+		uptime = new double[this.capacity];
+		data = new double[names.length][this.capacity];
+		int rows = graphData[0][DataTable.UPTIME_COL].length;
+		int from = Math.max(0, rows - this.capacity);
+		for (int i=from; i < rows; i++) {
+			resets[size] = graphData[0][DataTable.RESETS_COL][i];
+			uptime[size] = graphData[0][DataTable.UPTIME_COL][i];
+			for (int f=0; f < fields.length; f++)
+				data[f][size] = graphData[f][DataTable.DATA_COL][i];
+			size++;
+		}
+	}
+
+	int size() { return size; }
+
+	/**
+	 * Compare a record with the latest point
+	 * @return less than zero if the record is older, zero if it is the same and more than zero if it is newer
+	 */
+	int compareToLatest(DataRecord r) {
+		if (size == 0) return 1;
+		int last = (first + size - 1) % capacity;
+		if (r.resets != resets[last]) return r.resets < resets[last] ? -1 : 1;
+		if (r.uptime != uptime[last]) return r.uptime < uptime[last] ? -1 : 1;
+		return 0;
+	}
+
+	/**
+	 * Add a record after the latest point, dropping the oldest point if the ring is full
+	 * @param r
+	 */
+	void add(DataRecord r) {
+		int pos;
+		if (size < capacity) {
+			pos = (first + size) % capacity;
+			size++;
+		} else {
+			pos = first;
+			first = (first + 1) % capacity;
+		}
+		resets[pos] = r.resets;
+		uptime[pos] = r.uptime;
+		for (int f=0; f < fields.length; f++)
+			data[f][pos] = getValue(layout, fields[f], r);
+		changed = true;
+	}
+
+	/**
+	 * Return the value of a field in a record, converted in the same way as the graph data from the table
+	 * @param layout
+	 * @param field - the position of the field in the layout
+	 * @param r
+	 */
+	static double getValue(ByteArrayLayout layout, int field, DataRecord r) {
+		// A field that is not in the layout is all zeros, as the table returns it
+		if (field == ByteArrayLayout.ERROR_POSITION || field >= r.fieldValue.length)
+			return 0;
+		ConversionTable ct = layout.getConversionTable();
+		if (ct == null)
+			return r.fieldValue[field];
+		return ct.convertRawValue(layout.conversion[field], r.fieldValue[field]);
+	}
+
+	/**
+	 * Return the points in the form returned by DataTable.getGraphData(), oldest first.  The fields share the resets
+	 * and uptime arrays.  The arrays are only copied again if a record was added, and they are reused if the ring
+	 * was already full, so this must be called on the same thread that adds the records and draws the graph.
+	 */
+	double[][][] getGraphData() {
+		if (!changed) return graphData;
+		boolean reuse = graphData != null && graphData[0][DataTable.UPTIME_COL].length == size;
+		double[] newResets = reuse ? graphData[0][DataTable.RESETS_COL] : new double[size];
+		double[] newUptime = reuse ? graphData[0][DataTable.UPTIME_COL] : new double[size];
+		unroll(resets, newResets);
+		unroll(uptime, newUptime);
+		double[][][] result = reuse ? graphData : new double[fields.length][][];
+		for (int f=0; f < fields.length; f++) {
+			if (!reuse) {
+				result[f] = new double[DataTable.DATA_COL+1][];
+				result[f][DataTable.RESETS_COL] = newResets;
+				result[f][DataTable.UPTIME_COL] = newUptime;
+				result[f][DataTable.DATA_COL] = new double[size];
+			}
+			unroll(data[f], result[f][DataTable.DATA_COL]);
+		}
+		graphData = result;
+		changed = false;
+		return graphData;
+	}
+
+	private void unroll(double[] ring, double[] to) {
+		int firstPart = Math.min(size, capacity - first);
+		System.arraycopy(ring, first, to, 0, firstPart);
+		System.arraycopy(ring, 0, to, firstPart, size - firstPart);
+	}
+}
@@ -0,0 +1,159 @@
+package com.g0kla.telem.segDb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import com.g0kla.telem.data.ByteArrayLayout;
+import com.g0kla.telem.data.DataLoadException;
+import com.g0kla.telem.data.DataRecord;
+
+/**
+ *
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2018 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The binary format for a table segment.  This is an alternative to the CSV .log files that does not need to be
+ * parsed when it is loaded.  The file is a header followed by fixed width records, all big endian:
+ *
+ * Header (16 bytes)
+ *   int   MAGIC
+ *   int   VERSION
+ *   int   number of fields in each record
+ *   int   reserved
+ * Record (20 + 4 * fields bytes)
+ *   int   id
+ *   int   resets
+ *   long  uptime
+ *   int   type
+ *   int[] fieldValue
+ *
+ */
+public class BinarySegment {
+	public static final int MAGIC = 0x544c4d53; // TLMS
+	public static final int VERSION = 1;
+	public static final int HEADER_LENGTH = 16;
+	public static final int KEY_LENGTH = 20;
+
+	private BinarySegment() {}
+
+	public static int getRecordLength(int fields) {
+		return KEY_LENGTH + 4 * fields;
+	}
+
+	static void writeHeader(ByteBuffer buf, int fields) {
+		buf.putInt(MAGIC);
+		buf.putInt(VERSION);
+		buf.putInt(fields);
+		buf.putInt(0);
+	}
+
+	static void write(ByteBuffer buf, DataRecord r) {
+		buf.putInt(r.id);
+		buf.putInt(r.resets);
+		buf.putLong(r.uptime);
+		buf.putInt(r.type);
+		for (int i=0; i < r.fieldValue.length; i++)
+			buf.putInt(r.fieldValue[i]);
+	}
+
+	/**
+	 * Read the number of fields from the header of an existing file, checking that it is a segment we can read
+	 * @param buf - positioned at the start of the file
+	 * @param path - used in the error message
+	 * @return the number of fields in each record
+	 * @throws DataLoadException
+	 */
+	static int readHeader(ByteBuffer buf, String path) throws DataLoadException {
+		if (buf.remaining() < HEADER_LENGTH)
+			throw new DataLoadException("ERROR: Binary segment is missing its header: " + path);
+		int magic = buf.getInt();
+		int version = buf.getInt();
+		int fields = buf.getInt();
+		buf.getInt();
+		if (magic != MAGIC)
+			throw new DataLoadException("ERROR: Not a binary segment: " + path);
+		if (version != VERSION)
+			throw new DataLoadException("ERROR: Binary segment version " + version + " is not supported: " + path);
+		return fields;
+	}
+
+	/**
+	 * Load all of the records in a segment file.  If the last record is incomplete, because we stopped while it was
+	 * being written, then it is ignored.
+	 * @param path
+	 * @param layout
+	 * @param records - the records are added to this list
+	 * @param seg - if not null, the key range and field statistics of the records are recorded in the segment
+	 * @throws IOException
+	 * @throws DataLoadException if the file is not a segment or has more fields than the layout
+	 */
+	public static void load(String path, ByteArrayLayout layout, RecordStore records, TableSeg seg) throws IOException, DataLoadException {
+		File file = new File(path);
+		if (!file.exists() || file.length() == 0) return;
+		ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+		int fields = readHeader(buf, path);
+		if (fields > layout.fieldName.length)
+			throw new DataLoadException("ERROR: Too many fields: segment has " + fields + " but layout " + layout.name + " has " + layout.fieldName.length + " in " + path);
+		int length = getRecordLength(fields);
+		while (buf.remaining() >= length) {
+			DataRecord r = new DataRecord(layout, buf.getInt(), buf.getInt(), buf.getLong(), buf.getInt());
+			for (int i=0; i < fields; i++)
+				r.fieldValue[i] = buf.getInt();
+			records.add(r);
+			if (seg != null)
+				seg.include(r);
+		}
+	}
+
+	/**
+	 * Return the number of complete records in a segment file
+	 * @param path
+	 * @return
+	 * @throws IOException
+	 */
+	public static int count(String path) throws IOException {
+		File file = new File(path);
+		if (file.length() < HEADER_LENGTH) return 0;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.seek(8);
+			int fields = raf.readInt();
+			return (int) ((file.length() - HEADER_LENGTH) / getRecordLength(fields));
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Return the length of the file up to the end of the last complete record, so a partial record at the end can be
+	 * truncated before we append.  Returns 0 for a file that has no header yet.
+	 * @param path
+	 * @param fields
+	 * @return
+	 * @throws IOException
+	 */
+	static long validLength(String path, int fields) throws IOException {
+		File file = new File(path);
+		long length = file.length();
+		if (length < HEADER_LENGTH) return 0;
+		int recordLength = getRecordLength(fields);
+		return HEADER_LENGTH + ((length - HEADER_LENGTH) / recordLength) * recordLength;
+	}
+}
@@ -0,0 +1,262 @@
+package com.g0kla.telem.segDb;
+
+import java.util.Arrays;
+
+import com.g0kla.telem.data.ByteArrayLayout;
+import com.g0kla.telem.data.DataRecord;
+
+/**
+ *
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2018 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Stores the loaded records of a table as columns rather than as a DataRecord per row.  There is a column of keys,
+ * packed with RecordKey so they sort as the records do, and an int column for each field in the layout.  A graph of
+ * one field is then a scan of one array and a row costs 8 bytes plus 4 per field, with no object headers.
+ *
+ * The columns grow in whole chunks.  The id is held once for the table and only gets a column if the records have
+ * different ids.  Records whose reset, uptime or type can not be packed can not be stored and add() throws an
+ * IllegalArgumentException, so the table can go back to storing DataRecords.  The position of the spacecraft is
+ * not stored.
+ *
+ */
+public class ColumnStore implements RecordStore {
+	public static final int CHUNK_SIZE = 1024;
+	private final ByteArrayLayout layout;
+	private long[] keys;
+	private int[][] columns; // columns[field][row]
+	private int[] ids; // only used if the ids are not all the same
+	private int commonId;
+	private int size = 0;
+	private LongHashSet keySet;
+	private LongHashSet timeKeys;
+
+	public ColumnStore(ByteArrayLayout layout, int initialSize) {
+		this.layout = layout;
+		int capacity = chunks(Math.max(initialSize, 1));
+		keys = new long[capacity];
+		columns = new int[layout.fieldName.length][capacity];
+		keySet = new LongHashSet(initialSize);
+		timeKeys = new LongHashSet(initialSize);
+	}
+
+	private static int chunks(int n) {
+		return ((n + CHUNK_SIZE - 1) / CHUNK_SIZE) * CHUNK_SIZE;
+	}
+
+	public static boolean canStore(DataRecord r) {
+		return RecordKey.isPackable(r);
+	}
+
+	public int size() { return size; }
+
+	/**
+	 * Add the record in sort order.  The field values are copied, so the DataRecord is not kept.
+	 * @throws IllegalArgumentException if the key can not be packed
+	 */
+	public boolean add(DataRecord r) {
+		if (!canStore(r))
+			throw new IllegalArgumentException("Record key can not be stored in columns: " + r.resets + "," + r.uptime + "," + r.type);
+		long key = RecordKey.pack(r);
+		if (keySet.contains(key))
+			return false;
+		int pos = size;
+		if (size > 0 && keys[size-1] > key) {
+			pos = Arrays.binarySearch(keys, 0, size, key);
+			pos = -pos-1;
+		}
+		ensureCapacity(size + 1);
+		if (pos < size) {
+			System.arraycopy(keys, pos, keys, pos+1, size-pos);
+			for (int[] col : columns)
+				System.arraycopy(col, pos, col, pos+1, size-pos);
+			if (ids != null)
+				System.arraycopy(ids, pos, ids, pos+1, size-pos);
+		}
+		keys[pos] = key;
+		for (int f=0; f < columns.length; f++)
+			columns[f][pos] = f < r.fieldValue.length ? r.fieldValue[f] : 0;
+		setId(pos, r.id);
+		size++;
+		keySet.add(key);
+		timeKeys.add(RecordKey.packTime(r.resets, r.uptime));
+		return true;
+	}
+
+	private void setId(int pos, int id) {
+		if (size == 0 && ids == null) {
+			commonId = id;
+			return;
+		}
+		if (ids == null) {
+			if (id == commonId) return;
+			ids = new int[keys.length];
+			Arrays.fill(ids, 0, size+1, commonId);
+		}
+		ids[pos] = id;
+	}
+
+	private void ensureCapacity(int n) {
+		if (n <= keys.length) return;
+		int capacity = chunks(Math.max(n, keys.length + keys.length / 2));
+		keys = Arrays.copyOf(keys, capacity);
+		for (int f=0; f < columns.length; f++)
+			columns[f] = Arrays.copyOf(columns[f], capacity);
+		if (ids != null)
+			ids = Arrays.copyOf(ids, capacity);
+	}
+
+	public DataRecord get(int i) {
+		checkIndex(i);
+		long key = keys[i];
+		DataRecord r = new DataRecord(layout, getId(i), RecordKey.getResets(key), RecordKey.getUptime(key), RecordKey.getType(key));
+		for (int f=0; f < columns.length; f++)
+			r.fieldValue[f] = columns[f][i];
+		return r;
+	}
+
+	private void checkIndex(int i) {
+		if (i < 0 || i >= size)
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+	}
+
+	public void clear() {
+		size = 0;
+		ids = null;
+		keySet.clear();
+		timeKeys.clear();
+	}
+
+	public void removeRecords(int fromIndex, int toIndex) {
+		if (fromIndex < 0 || toIndex > size || fromIndex > toIndex)
+			throw new IndexOutOfBoundsException("From: " + fromIndex + " To: " + toIndex + ", Size: " + size);
+		for (int i = fromIndex; i < toIndex; i++) {
+			keySet.remove(keys[i]);
+			timeKeys.remove(RecordKey.packTime(getResets(i), getUptime(i)));
+		}
+		int moved = size - toIndex;
+		System.arraycopy(keys, toIndex, keys, fromIndex, moved);
+		for (int[] col : columns)
+			System.arraycopy(col, toIndex, col, fromIndex, moved);
+		if (ids != null)
+			System.arraycopy(ids, toIndex, ids, fromIndex, moved);
+		size -= toIndex - fromIndex;
+		// Only the records either side of the gap can share a reset/uptime with a record we removed
+		if (fromIndex > 0)
+			timeKeys.add(RecordKey.packTime(getResets(fromIndex-1), getUptime(fromIndex-1)));
+		if (fromIndex < size)
+			timeKeys.add(RecordKey.packTime(getResets(fromIndex), getUptime(fromIndex)));
+	}
+
+	public int getId(int i) { return ids == null ? commonId : ids[i]; }
+	public int getResets(int i) { return RecordKey.getResets(keys[i]); }
+	public long getUptime(int i) { return RecordKey.getUptime(keys[i]); }
+	public int getType(int i) { return RecordKey.getType(keys[i]); }
+	public long getKey(int i) { return keys[i]; }
+	public int getRawValue(int i, int field) { return columns[field][i]; }
+
+	/**
+	 * Return the column for a field.  Only the first size() entries are valid
+	 */
+	public int[] getColumn(int field) { return columns[field]; }
+
+	public int[] getFieldValues(int i) {
+		int[] values = new int[columns.length];
+		for (int f=0; f < columns.length; f++)
+			values[f] = columns[f][i];
+		return values;
+	}
+
+	public boolean hasFrame(int id, long uptime, int resets) {
+		if (!RecordKey.isPackable(resets, uptime, 0) || !timeKeys.contains(RecordKey.packTime(resets, uptime)))
+			return false;
+		if (ids == null) return id == commonId;
+		for (int i = lowerBound(resets, uptime, Integer.MIN_VALUE); i < size && getResets(i) == resets && getUptime(i) == uptime; i++)
+			if (ids[i] == id) return true;
+		return false;
+	}
+
+	public boolean hasFrame(int id, long uptime, int resets, int type) {
+		if (!RecordKey.isPackable(resets, uptime, type))
+			return false;
+		long key = RecordKey.pack(resets, uptime, type);
+		if (!keySet.contains(key)) return false;
+		if (ids == null) return id == commonId;
+		return ids[Arrays.binarySearch(keys, 0, size, key)] == id;
+	}
+
+	public int getNearestFrameIndex(int id, long uptime, int resets) {
+		if (size == 0) return -1;
+		return getNearestFrameIndex(id, uptime, resets, getType(0));
+	}
+
+	/**
+	 * See SortedDataRecordArrayList.getNearestFrameIndex()
+	 */
+	public int getNearestFrameIndex(int id, long uptime, int resets, int type) {
+		if (size == 0) return -1;
+		if (resets > getResets(size-1)) return size-1;
+		if (resets == getResets(size-1) && uptime > getUptime(size-1)) return size-1;
+		int i = lowerBound(resets, uptime, type);
+		if (i == size) return -1;
+		return i;
+	}
+
+	public int getNearestPrevFrameIndex(int id, long uptime, int resets) {
+		if (size == 0) return -1;
+		return getNearestPrevFrameIndex(id, uptime, resets, getType(0));
+	}
+
+	/**
+	 * See SortedDataRecordArrayList.getNearestPrevFrameIndex()
+	 */
+	public int getNearestPrevFrameIndex(int id, long uptime, int resets, int type) {
+		if (size == 0) return -1;
+		if (resets > getResets(size-1)) return size-1;
+		if (resets == getResets(size-1) && uptime > getUptime(size-1)) return size-1;
+		int i = lowerBound(resets, uptime, type);
+		if (i == size) return -1;
+		if (getResets(i) == resets && getUptime(i) == uptime && getType(i) == type)
+			return i;
+		return i-1;
+	}
+
+	/**
+	 * The first row that is greater than or equal to the key, or size() if there is none.  The key is compared field
+	 * by field because the value searched for may not be packable.
+	 */
+	private int lowerBound(int resets, long uptime, int type) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (compare(mid, resets, uptime, type) < 0)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	private int compare(int row, int resets, long uptime, int type) {
+		int r = getResets(row);
+		if (r != resets) return r < resets ? -1 : 1;
+		long u = getUptime(row);
+		if (u != uptime) return u < uptime ? -1 : 1;
+		return Integer.compare(getType(row), type);
+	}
+}
@@ -8,12 +8,30 @@ import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.RandomAccessFile;
 import java.io.Writer;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import com.g0kla.telem.data.ByteArrayLayout;
+import com.g0kla.telem.data.ConversionTable;
 import com.g0kla.telem.data.DataLoadException;
 import com.g0kla.telem.data.DataRecord;
 import com.g0kla.telem.data.LayoutLoadException;
@@ -40,6 +58,13 @@ import com.g0kla.telem.data.LayoutLoadException;
  * This class is a flat file database for a single payload type.  It is referred to as a table, but
  * the actual data may be spread across several files on disk
  * 
+ * A table can be shared between threads, such as the thread that saves new records and the gui that graphs them.
+ * Each table has a read write lock.  Anything that changes the table, including loading segments into the cache,
+ * holds the write lock.  A query takes the write lock to load the segments it needs and then drops to the read lock
+ * while it copies the records out, so many queries can copy at the same time.  Reading a segment file into its own
+ * list, as the cursor and the paged rows do, only needs the read lock.  The record lists, segments and rollup tiers
+ * are not thread safe themselves and must only be used under the lock of their table.
+ * 
  */
 public class DataTable {
 
@@ -50,14 +75,40 @@ public class DataTable {
 	public static final int DATA_COL = 2;
 	public static final int LAT_COL = 3;
 	public static final int LON_COL = 4;
+	public static final int UTC_COL = 5; // optional epoch millis for each point, see Spacecraft.addUtcColumn()
 	private SortedArrayList<TableSeg> tableIdx; // The map of data on disk and the parts of it that are loaded
 	private static final int INITIAL_SIZE = 2; // inital number of table parts
+	private static final int INITIAL_RECORDS = 1000;
 	private String fileName; // this is the path and filename for this table
 	private String tableName; // this is the base filename for this table
 	private String dbDir;
 	private ByteArrayLayout layout;
-	private SortedDataRecordArrayList rtRecords; // this is the rtRecords that are loaded into memory
-	private boolean updated = false;
+	private RecordStore rtRecords; // this is the rtRecords that are loaded into memory
+	private volatile boolean updated = false;
+	
+	// Group commit.  When maxCommitRecords is zero every record is written and the index saved as it arrives.
+	private int maxCommitRecords = 0;
+	private long maxCommitInterval = 0;
+	private ScheduledFuture<?> commitTimer; // commits a group that has stopped growing, see startCommitTimer()
+	private static final ScheduledExecutorService commitTimers = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "Group commit timer");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+	private SegmentWriter writer; // the open file for the segment that is being appended to
+	private TableSeg writerSeg;
+	private ArrayList<DataRecord> uncommitted = new ArrayList<DataRecord>(); // in the writer, for the listeners
+	private final TableNotifier notifier;
+	
+	// Changes to the index are appended to the journal and the .idx file is only rewritten when we compact
+	private static final int MAX_JOURNAL_ENTRIES = 10000;
+	private IndexJournal journal;
+	
+	private SegmentCache cache = new SegmentCache(); // the segments that are loaded in rtRecords
+	private ArrayList<RollupTier> rollups = new ArrayList<RollupTier>(); // summaries for long graphs, finest first
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(); // see the class comment
 
 	public DataTable(int size, String dbDir, ByteArrayLayout layout, String tableName) throws IOException {
 		tableIdx = new SortedArrayList<TableSeg>(INITIAL_SIZE);
@@ -65,40 +116,702 @@ public class DataTable {
 		this.layout = layout;
 		this.dbDir = dbDir;
         fileName = dbDir +File.separator + tableName;
+        notifier = new TableNotifier(layout.name);
       
 		rtRecords = new SortedDataRecordArrayList(size);
+		journal = new IndexJournal(fileName + ".idx");
 		loadIdx();
+		setRollups(layout.rollupIntervals);
 		updated = true;
 	}
 	
+	/**
+	 * Keep rollup tiers with these intervals in seconds, for example 60, 3600 and 86400 for minutes, hours and
+	 * days.  Each tier is saved next to the table.  A tier that was not kept while all of the records were saved is
+	 * not used until rebuildRollups() is called.  Pass no intervals to stop using the tiers.
+	 * @param intervals
+	 */
+	public void setRollups(int... intervals) {
+		lock.writeLock().lock();
+		try {
+			// Save the tiers we have first, as a tier that we keep is loaded again from its file
+			try {
+				saveRollups();
+				closeRollups();
+			} catch (IOException e) {
+				e.printStackTrace(); // a tier that was not saved is not used until it is rebuilt
+			}
+			int[] sorted = intervals.clone();
+			Arrays.sort(sorted);
+			ArrayList<RollupTier> tiers = new ArrayList<RollupTier>(sorted.length);
+			for (int interval : sorted)
+				if (tiers.size() == 0 || tiers.get(tiers.size()-1).getInterval() != interval)
+					tiers.add(new RollupTier(interval, layout.fieldName.length, fileName + ".rollup" + interval));
+			rollups = tiers;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Rebuild the rollup tiers by reading every segment.  This is needed when tiers are added to a table that already
+	 * has data, or if the program stopped before the tiers were saved.
+	 * @throws IOException
+	 * @throws DataLoadException
+	 */
+	public void rebuildRollups() throws IOException, DataLoadException {
+		lock.writeLock().lock();
+		try {
+			if (rollups.size() == 0) return;
+			commitWriter(true);
+			for (RollupTier tier : rollups)
+				tier.clear();
+			for (TableSeg seg : tableIdx) {
+				SortedDataRecordArrayList records = readSegment(seg);
+				for (int i=0; i < records.size(); i++)
+					for (RollupTier tier : rollups)
+						tier.add(records.get(i));
+			}
+			saveRollups();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Read the records in a segment file into a separate list, so that the cache is not disturbed.  Buffered records
+	 * must be committed first.
+	 * @param seg
+	 * @return the records in the segment
+	 * @throws IOException
+	 * @throws DataLoadException
+	 */
+	SortedDataRecordArrayList readSegment(TableSeg seg) throws IOException, DataLoadException {
+		lock.readLock().lock();
+		try {
+			SortedDataRecordArrayList records = new SortedDataRecordArrayList(Math.max(1, seg.records));
+			String log = dbDir+File.separator + seg.fileName;
+			if (seg.isBinary())
+				BinarySegment.load(log, layout, records, null);
+			else if (new File(log).exists())
+				readCsv(log, records, null);
+			return records;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Read a segment that may still be open for new records, such as the head segment when a cursor reaches it.  Any
+	 * records that are buffered for it are committed first.
+	 * @param seg
+	 * @return the records in the segment
+	 * @throws IOException
+	 * @throws DataLoadException
+	 */
+	SortedDataRecordArrayList readCommittedSegment(TableSeg seg) throws IOException, DataLoadException {
+		lock.writeLock().lock();
+		try {
+			if (seg == writerSeg)
+				commitWriter(true);
+			lock.readLock().lock();
+		} finally {
+			lock.writeLock().unlock();
+		}
+		try {
+			return readSegment(seg);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Return the records where the value of a field is between low and high inclusive, such as every time a
+	 * temperature was over a limit.  Each segment keeps the min and max raw value of every field, so a segment that can
+	 * not hold a match is skipped without reading its file.  Segments that did not have their min and max yet get them
+	 * as they are read.  The records are in segment order and are not added to the cache.
+	 * @param name
+	 * @param low
+	 * @param high
+	 * @param raw - compare the raw values, otherwise the values are converted first
+	 * @return the matching records
+	 * @throws IOException
+	 * @throws DataLoadException
+	 */
+	public ArrayList<DataRecord> getRecordsInRange(String name, double low, double high, boolean raw) throws IOException, DataLoadException {
+		ArrayList<DataRecord> result = new ArrayList<DataRecord>();
+		int field = layout.getPositionByName(name);
+		if (field == ByteArrayLayout.ERROR_POSITION || low > high) return result;
+		ConversionTable ct = raw ? null : layout.getConversionTable();
+		int conversion = ct == null ? 0 : layout.conversion[field];
+		double rawLow = low;
+		double rawHigh = high;
+		if (ct != null) {
+			double[] range = ct.getRawRange(conversion, low, high);
+			if (range == null) return result;
+			rawLow = range[0];
+			rawHigh = range[1];
+		}
+		// The segments are read under the read lock, so saves only wait for the commit and for the new min and max
+		HashMap<TableSeg, TableSeg> built = new HashMap<TableSeg, TableSeg>();
+		commitAndReadLock();
+		try {
+			for (TableSeg seg : tableIdx) {
+				if (!seg.mayContain(field, rawLow, rawHigh)) continue;
+				SortedDataRecordArrayList records = readSegment(seg);
+				if (!seg.hasStats()) {
+					TableSeg stats = new TableSeg(seg.fromReset, seg.fromUptime, seg.fileName, seg.format);
+					for (int i=0; i < records.size(); i++)
+						stats.includeStats(records.get(i));
+					built.put(seg, stats);
+				}
+				for (int i=0; i < records.size(); i++) {
+					int value = records.getRawValue(i, field);
+					double v = ct == null ? value : ct.convertRawValue(conversion, value);
+					if (v >= low && v <= high)
+						result.add(records.get(i));
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		if (built.isEmpty()) return result;
+		lock.writeLock().lock();
+		try {
+			boolean statsChanged = false;
+			for (Map.Entry<TableSeg, TableSeg> e : built.entrySet())
+				statsChanged = e.getKey().copyStats(e.getValue()) || statsChanged;
+			if (statsChanged)
+				saveIdx(); // so the next search can skip these segments
+		} finally {
+			lock.writeLock().unlock();
+		}
+		return result;
+	}
+	
+	/**
+	 * Return a cursor over the records between two keys, inclusive.  Forwards it starts at the first record at or
+	 * after the from key, in reverse it starts at the last record at or before the to key.  The segments are read
+	 * as the cursor reaches them.
+	 * @param fromReset
+	 * @param fromUptime
+	 * @param toReset
+	 * @param toUptime
+	 * @param limit - the most records to return
+	 * @param reverse
+	 * @return
+	 * @throws IOException
+	 */
+	public RecordCursor getCursor(int fromReset, long fromUptime, int toReset, long toUptime, int limit, boolean reverse) throws IOException {
+		lock.writeLock().lock();
+		try {
+			commitWriter(true); // so the cursor reads anything that is still buffered
+			// A segment holds the records from its own key up to the key of the next one, so start with the last segment
+			// that begins at or before the from key
+			int first = 0;
+			for (int i=0; i < tableIdx.size(); i++) {
+				TableSeg seg = tableIdx.get(i);
+				if (compareKey(seg.fromReset, seg.fromUptime, 0, fromReset, fromUptime, 0) <= 0)
+					first = i;
+				else
+					break;
+			}
+			ArrayList<TableSeg> segs = new ArrayList<TableSeg>();
+			for (int i=first; i < tableIdx.size(); i++) {
+				TableSeg seg = tableIdx.get(i);
+				if (compareKey(seg.fromReset, seg.fromUptime, 0, toReset, toUptime, 0) > 0) break;
+				segs.add(seg);
+			}
+			if (reverse)
+				Collections.reverse(segs);
+			return new RecordCursor(this, segs, fromReset, fromUptime, toReset, toUptime, limit, reverse);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Return the row number of the first record at or after a key, counting the records of every segment from the
+	 * start of the table.  Only the segment that holds the key is read.
+	 * @param reset
+	 * @param uptime
+	 * @return the row number, or getSize() if every record is before the key
+	 * @throws IOException
+	 * @throws DataLoadException
+	 */
+	public int getRowNumber(int reset, long uptime) throws IOException, DataLoadException {
+		commitAndReadLock();
+		try {
+			return findRowNumber(reset, uptime);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	private int findRowNumber(int reset, long uptime) throws IOException, DataLoadException {
+		int row = 0;
+		for (int i=0; i < tableIdx.size(); i++) {
+			TableSeg seg = tableIdx.get(i);
+			boolean last = i == tableIdx.size()-1;
+			if (!last) {
+				TableSeg next = tableIdx.get(i+1);
+				if (compareKey(next.fromReset, next.fromUptime, 0, reset, uptime, 0) <= 0) {
+					row += seg.records; // the key is in a later segment
+					continue;
+				}
+			}
+			if (compareKey(seg.fromReset, seg.fromUptime, 0, reset, uptime, 0) >= 0)
+				return row;
+			SortedDataRecordArrayList records = readSegment(seg);
+			for (int j=0; j < records.size(); j++)
+				if (compareKey(records.getResets(j), records.getUptime(j), 0, reset, uptime, 0) >= 0)
+					return row + j;
+			return row + seg.records;
+		}
+		return row;
+	}
+	
+	/**
+	 * Return the records from a row number, in the order of getRowNumber().  Only the segments that hold the rows are
+	 * read and they are not added to the cache, so a table model can fetch a page at a time as the user scrolls.
+	 * @param firstRow
+	 * @param count
+	 * @return the records, fewer than count at the end of the table
+	 * @throws IOException
+	 * @throws DataLoadException
+	 */
+	public ArrayList<DataRecord> getRows(int firstRow, int count) throws IOException, DataLoadException {
+		commitAndReadLock();
+		try {
+			ArrayList<DataRecord> rows = new ArrayList<DataRecord>(Math.max(0, count));
+			int segStart = 0;
+			for (TableSeg seg : tableIdx) {
+				int segEnd = segStart + seg.records;
+				if (segEnd > firstRow) {
+					SortedDataRecordArrayList records = readSegment(seg);
+					int from = Math.max(0, firstRow - segStart);
+					for (int j=from; j < records.size() && rows.size() < count; j++)
+						rows.add(records.get(j));
+					if (rows.size() >= count) break;
+					firstRow = segEnd;
+				}
+				segStart = segEnd;
+			}
+			return rows;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Commit any buffered records under the write lock and then hold the read lock, so that the segment files can be
+	 * read while other queries run.  The caller must release the read lock.
+	 * @throws IOException
+	 */
+	private void commitAndReadLock() throws IOException {
+		lock.writeLock().lock();
+		try {
+			commitWriter(true);
+			lock.readLock().lock();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Write the records between two keys to a CSV file with a header line.  The records are read one segment at a
+	 * time, so the whole table can be exported.
+	 * @param out
+	 * @param fromReset
+	 * @param fromUptime
+	 * @param toReset
+	 * @param toUptime
+	 * @param raw - write the raw values, otherwise the converted values
+	 * @return the number of records written
+	 * @throws IOException
+	 * @throws DataLoadException
+	 */
+	public int exportCsv(Writer out, int fromReset, long fromUptime, int toReset, long toUptime, boolean raw) throws IOException, DataLoadException {
+		StringBuilder line = new StringBuilder("resets,uptime,type");
+		for (int i=0; i < layout.fieldName.length; i++)
+			line.append(',').append(layout.fieldName[i]);
+		out.write(line.append('\n').toString());
+		RecordCursor cursor = getCursor(fromReset, fromUptime, toReset, toUptime, Integer.MAX_VALUE, false);
+		int count = 0;
+		while (cursor.next()) {
+			line.setLength(0);
+			line.append(cursor.getResets()).append(',').append(cursor.getUptime()).append(',').append(cursor.getType());
+			for (int i=0; i < cursor.getFieldCount(); i++) {
+				line.append(',');
+				if (raw)
+					line.append(cursor.getRawValue(i));
+				else
+					line.append(cursor.getDoubleValue(i));
+			}
+			out.write(line.append('\n').toString());
+			count++;
+		}
+		return count;
+	}
+	
+	private void saveRollups() throws IOException {
+		for (RollupTier tier : rollups)
+			tier.save();
+	}
+	
+	private void closeRollups() throws IOException {
+		for (RollupTier tier : rollups)
+			tier.close();
+	}
+	
+	/**
+	 * Keep the file for the segment being written open and commit records to disk in groups.  A group is committed
+	 * when it reaches maxRecords or when a record is saved more than intervalMs after the last commit, whichever is
+	 * first.  A timer also commits the group when no more records arrive, so the records of a quiet table reach the
+	 * disk and the listeners within about two intervals.  The index journal is only updated when a group is committed.  Call flush() when the data
+	 * must be on disk, for example at the end of a pass, and close() when the table is no longer needed.
+	 * Pass maxRecords of zero to go back to writing every record as it arrives.
+	 * @param maxRecords
+	 * @param intervalMs
+	 * @throws IOException
+	 */
+	public void setGroupCommit(int maxRecords, long intervalMs) throws IOException {
+		lock.writeLock().lock();
+		try {
+			if (maxRecords <= 0)
+				close();
+			stopCommitTimer(); // started again with the new interval by the next save
+			maxCommitRecords = Math.max(0, maxRecords);
+			maxCommitInterval = intervalMs;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	public boolean isGroupCommit() { return maxCommitRecords > 0; }
+	
+	/**
+	 * Commit any buffered records and the index journal to disk
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		lock.writeLock().lock();
+		try {
+			commitWriter(true);
+			journal.sync();
+			saveRollups();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Flush the table, compact the index and close the files that are open for writing
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		lock.writeLock().lock();
+		try {
+			try {
+				commitWriter(true);
+				if (journal.getEntries() > 0)
+					saveIdx();
+				saveRollups();
+			} finally {
+				try {
+					closeWriter();
+				} finally {
+					try {
+						closeRollups();
+					} finally {
+						stopCommitTimer();
+						journal.close();
+					}
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Write the buffered records to the segment file and log them in the index journal
+	 * @param force
+	 * @throws IOException
+	 */
+	private void commitWriter(boolean force) throws IOException {
+		if (writer == null) return;
+		int n = writer.commit(force);
+		if (n > 0) {
+			journal.recordsAdded(writerSeg, n);
+			saveRollups();
+			notifier.recordsAdded(uncommitted);
+		}
+		uncommitted.clear();
+	}
+	
+	/**
+	 * Commit the group every maxCommitInterval from a shared timer thread while group commit is on, so that a group
+	 * is not left buffered when records stop arriving.  The timer runs until the table is closed.
+	 */
+	private void startCommitTimer() {
+		if (commitTimer != null || maxCommitInterval <= 0) return;
+		commitTimer = commitTimers.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				lock.writeLock().lock();
+				try {
+					if (writer != null && writer.getPending() > 0 
+							&& System.currentTimeMillis() - writer.getLastCommit() >= maxCommitInterval)
+						commitWriter(true);
+				} catch (IOException e) {
+					e.printStackTrace(); // the records stay buffered and are committed with the next group
+				} finally {
+					lock.writeLock().unlock();
+				}
+			}
+		}, maxCommitInterval, maxCommitInterval, TimeUnit.MILLISECONDS);
+	}
+	
+	private void stopCommitTimer() {
+		if (commitTimer != null)
+			commitTimer.cancel(false);
+		commitTimer = null;
+	}
+	
+	private void closeWriter() throws IOException {
+		if (writer != null) {
+			try {
+				commitWriter(true);
+				writer.close();
+			} finally {
+				writer = null;
+				writerSeg = null;
+			}
+		}
+	}
+	
+	/**
+	 * Hold the loaded records in columns, one array per field, rather than as a DataRecord per row.  This uses much less
+	 * memory for wide layouts and a graph of one field reads one array.  The position of the spacecraft is not kept
+	 * with the records in this mode.  If a record arrives with a reset, uptime or type that can not be stored in the
+	 * columns then the table goes back to storing DataRecords.
+	 * @param columnar
+	 * @return true if the records are now stored as requested
+	 */
+	public boolean setColumnar(boolean columnar) {
+		lock.writeLock().lock();
+		try {
+			if (columnar == isColumnar()) return true;
+			int capacity = Math.max(rtRecords.size(), INITIAL_RECORDS);
+			RecordStore store;
+			if (columnar) {
+				for (int i=0; i < rtRecords.size(); i++)
+					if (!RecordKey.isPackable(rtRecords.getResets(i), rtRecords.getUptime(i), rtRecords.getType(i)))
+						return false;
+				store = new ColumnStore(layout, capacity);
+			} else
+				store = new SortedDataRecordArrayList(capacity);
+			for (int i=0; i < rtRecords.size(); i++)
+				store.add(rtRecords.get(i));
+			rtRecords = store;
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	public boolean isColumnar() {
+		lock.readLock().lock();
+		try {
+			return rtRecords instanceof ColumnStore;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Limit the number of records that are held in memory.  When a query or save starts and the table holds more than
+	 * this, the least recently used segments are unloaded until it fits.  A query can still load more than the limit,
+	 * which is then trimmed at the start of the next one.  The segment new data is saved to is never unloaded.
+	 * @param maxRecords - the limit, or zero for no limit, which is the default
+	 */
+	public void setCacheSize(int maxRecords) {
+		lock.writeLock().lock();
+		try {
+			cache.setMaxRecords(maxRecords);
+			trimCache();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	public int getCacheSize() { return cache.getMaxRecords(); }
+	public long getCacheHits() { return cache.getHits(); }
+	public long getCacheMisses() { return cache.getMisses(); }
+	public long getCacheEvictions() { return cache.getEvictions(); }
+	public int getLoadedRecords() {
+		lock.readLock().lock();
+		try {
+			return rtRecords.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Load the segment if it is not already loaded and count the access for the cache
+	 */
+	private void ensureLoaded(TableSeg seg) throws IOException, NumberFormatException, DataLoadException {
+		if (!cache.access(seg))
+			load(seg);
+	}
+	
+	/**
+	 * Unload the least recently used segments until the records in memory fit in the cache size
+	 */
+	private void trimCache() {
+		if (!cache.isBounded() || rtRecords.size() <= cache.getMaxRecords()) return;
+		for (TableSeg seg : cache.getLeastRecentlyUsed()) {
+			if (rtRecords.size() <= cache.getMaxRecords()) break;
+			if (seg.isLoaded())
+				unload(seg);
+		}
+	}
+	
+	/**
+	 * Unload a segment and remove its records from memory.  The records of a segment are normally together in the
+	 * sorted records, but a record that arrived late can be saved in a segment whose range overlaps another.  Then
+	 * all of the loaded segments that overlap are unloaded together, so that we remove one continuous range of records.
+	 * Segments that are being written to, or that hold keys we can not pack, are not unloaded.
+	 * @param seg
+	 * @return true if it was unloaded
+	 */
+	private boolean unload(TableSeg seg) {
+		ArrayList<TableSeg> group = new ArrayList<TableSeg>();
+		group.add(seg);
+		long min = seg.minKey;
+		long max = seg.maxKey;
+		boolean grown = seg.hasKeys();
+		while (grown) {
+			grown = false;
+			for (TableSeg other : tableIdx)
+				if (other.isLoaded() && !group.contains(other) && other.overlaps(min, max)) {
+					group.add(other);
+					min = Math.min(min, other.minKey);
+					max = Math.max(max, other.maxKey);
+					grown = true;
+				}
+		}
+		TableSeg head = tableIdx.get(tableIdx.size()-1);
+		for (TableSeg g : group)
+			if (g == head || g == writerSeg || !g.packedKeys)
+				return false;
+		if (max >= 0) {
+			int from = lowerBound(min);
+			int to = lowerBound(max);
+			if (to < rtRecords.size() && rtRecords.getResets(to) == RecordKey.getResets(max) 
+					&& rtRecords.getUptime(to) == RecordKey.getUptime(max) && rtRecords.getType(to) == RecordKey.getType(max))
+				to++;
+			rtRecords.removeRecords(from, to);
+		}
+		for (TableSeg g : group) {
+			g.setLoaded(false);
+			g.clearKeyRange();
+			cache.evicted(g);
+		}
+		return true;
+	}
+	
+	/**
+	 * The first record that is greater than or equal to a packed key
+	 */
+	private int lowerBound(long key) {
+		int resets = RecordKey.getResets(key);
+		long uptime = RecordKey.getUptime(key);
+		int type = RecordKey.getType(key);
+		int low = 0;
+		int high = rtRecords.size();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (compareKey(rtRecords.getResets(mid), rtRecords.getUptime(mid), rtRecords.getType(mid), resets, uptime, type) < 0)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+	
+	/**
+	 * The table is marked as updated when a record is saved, so that a screen polling it knows to query it again.  A
+	 * listener is told what was added without polling, see addTableListener().
+	 */
 	public void setUpdated(boolean t) { updated = t; }
 	public boolean getUpdated() { return updated; }
+	
+	/**
+	 * Tell a listener about the records that are saved to this table.  It is called once each time records are
+	 * committed, which is for every record unless the table uses group commit, and on its own thread so it does not
+	 * hold up saving.  Commits that happen before it runs are given to it as one change.
+	 * @param listener
+	 */
+	public void addTableListener(TableListener listener) {
+		notifier.add(listener);
+	}
+	
+	/**
+	 * Tell a listener about the records that are saved to this table, running it on an executor, such as one that
+	 * passes the change to the Swing thread
+	 * @param listener
+	 * @param executor
+	 */
+	public void addTableListener(TableListener listener, Executor executor) {
+		notifier.add(listener, executor);
+	}
+	
+	public boolean removeTableListener(TableListener listener) {
+		return notifier.remove(listener);
+	}
 		
-	public int getSize() { 
-		int s=0;
-		for (TableSeg t: tableIdx) {
-			s = s + t.records;
+	public int getSize() {
+		lock.readLock().lock();
+		try {
+			int s=0;
+			for (TableSeg t: tableIdx) {
+				s = s + t.records;
+			}
+			return s; 
+		} finally {
+			lock.readLock().unlock();
 		}
-		return s; 
 	}
 	
 	public boolean hasFrame(int id, long uptime, int resets) throws IOException, NumberFormatException, DataLoadException { 
-		// Make sure the segment is loaded, so we can check
-		@SuppressWarnings("unused")
-		TableSeg seg = loadSeg(resets, uptime);
-		return rtRecords.hasFrame(id, uptime, resets); }
+		lock.writeLock().lock();
+		try {
+			// Make sure the segment is loaded, so we can check
+			trimCache();
+			@SuppressWarnings("unused")
+			TableSeg seg = loadSeg(resets, uptime);
+			return rtRecords.hasFrame(id, uptime, resets);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
 	
 	public DataRecord getLatest() throws IOException, NumberFormatException, DataLoadException {
-		if (tableIdx.size() > 0) {
-			TableSeg lastSeg = tableIdx.get(tableIdx.size()-1);
-			if (!lastSeg.isLoaded()) {
-				load(lastSeg);
-				
+		lock.writeLock().lock();
+		try {
+			if (tableIdx.size() > 0) {
+				trimCache();
+				TableSeg lastSeg = tableIdx.get(tableIdx.size()-1);
+				ensureLoaded(lastSeg);
+				if (rtRecords.size() == 0) return null;
+				return rtRecords.get(rtRecords.size()-1);
 			}
-			if (rtRecords.size() == 0) return null;
-			return rtRecords.get(rtRecords.size()-1);
+			return null;
+		} finally {
+			lock.writeLock().unlock();
 		}
-		return null;
 	}
 	
 	/**
@@ -113,34 +826,46 @@ public class DataTable {
 	 * @throws LayoutLoadException 
 	 * @throws NumberFormatException 
 	 */
-	public DataRecord getFrame(int id, long uptime, int resets, boolean prev) throws IOException, NumberFormatException, DataLoadException { 
-		// Make sure the segment is loaded, so we can check
-		@SuppressWarnings("unused")
-		TableSeg seg = loadSeg(resets, uptime);
-		if (seg.records == 0) return null;
-		if (prev) {
-			int i = rtRecords.getNearestPrevFrameIndex(id, uptime, resets); 
-			if (i == -1) return null;
-			return rtRecords.get(i);
-		} else {
-			int i = rtRecords.getNearestFrameIndex(id, uptime, resets); 
-			if (i == -1) return null;
-			return rtRecords.get(i);
+	public DataRecord getFrame(int id, long uptime, int resets, boolean prev) throws IOException, NumberFormatException, DataLoadException {
+		lock.writeLock().lock();
+		try {
+			// Make sure the segment is loaded, so we can check
+			trimCache();
+			@SuppressWarnings("unused")
+			TableSeg seg = loadSeg(resets, uptime);
+			if (seg.records == 0) return null;
+			if (prev) {
+				int i = rtRecords.getNearestPrevFrameIndex(id, uptime, resets); 
+				if (i == -1) return null;
+				return rtRecords.get(i);
+			} else {
+				int i = rtRecords.getNearestFrameIndex(id, uptime, resets); 
+				if (i == -1) return null;
+				return rtRecords.get(i);
+			}
+		} finally {
+			lock.writeLock().unlock();
 		}
 	}
 	
-	public DataRecord getFrame(int id, long uptime, int resets, int type, boolean prev) throws IOException, NumberFormatException, DataLoadException { 
-		// Make sure the segment is loaded, so we can check
-		@SuppressWarnings("unused")
-		TableSeg seg = loadSeg(resets, uptime);
-		if (prev) {
-			int i = rtRecords.getNearestPrevFrameIndex(id, uptime, resets, type); 
-			if (i == -1) return null;
-			return rtRecords.get(i);
-		} else {
-			int i = rtRecords.getNearestFrameIndex(id, uptime, resets, type); 
-			if (i == -1) return null;
-			return rtRecords.get(i);
+	public DataRecord getFrame(int id, long uptime, int resets, int type, boolean prev) throws IOException, NumberFormatException, DataLoadException {
+		lock.writeLock().lock();
+		try {
+			// Make sure the segment is loaded, so we can check
+			trimCache();
+			@SuppressWarnings("unused")
+			TableSeg seg = loadSeg(resets, uptime);
+			if (prev) {
+				int i = rtRecords.getNearestPrevFrameIndex(id, uptime, resets, type); 
+				if (i == -1) return null;
+				return rtRecords.get(i);
+			} else {
+				int i = rtRecords.getNearestFrameIndex(id, uptime, resets, type); 
+				if (i == -1) return null;
+				return rtRecords.get(i);
+			}
+		} finally {
+			lock.writeLock().unlock();
 		}
 	}
 	
@@ -163,7 +888,30 @@ public class DataTable {
 	 */
 	public String[][] getPayloadData(int period, int id, int fromReset, long fromUptime, int length, boolean returnType, boolean reverse) throws IOException, NumberFormatException, LayoutLoadException, DataLoadException {
 		if (rtRecords == null) return null;
-		loadSegments(fromReset, fromUptime, period, reverse);
+		loadAndReadLock(fromReset, fromUptime, period, reverse);
+		try {
+			return copyPayloadData(period, id, fromReset, fromUptime, length, returnType, reverse);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Load the segments for a query under the write lock and then hold the read lock while the records are copied.
+	 * The caller must release the read lock.
+	 */
+	private void loadAndReadLock(int fromReset, long fromUptime, int period, boolean reverse) throws IOException, NumberFormatException, DataLoadException {
+		lock.writeLock().lock();
+		try {
+			trimCache();
+			loadSegments(fromReset, fromUptime, period, reverse);
+			lock.readLock().lock();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	private String[][] copyPayloadData(int period, int id, int fromReset, long fromUptime, int length, boolean returnType, boolean reverse) {
 		int start = 0;
 		int end = 0;
 		
@@ -192,11 +940,11 @@ public class DataTable {
 		int j = results.length-1;
 		for (int i=end-1; i>= start; i--) {
 			//System.out.println(rtRecords.size());
-			results[j] = rtRecords.get(i).fieldValue;
+			results[j] = rtRecords.getFieldValues(i);
 			if (returnType)
-				type[j] = ""+rtRecords.get(i).type; // get type returns a different type for some payloads, e.g. HerciPackets.  Reference directly
-			upTime[j] = ""+rtRecords.get(i).uptime;
-			resets[j--] = ""+rtRecords.get(i).resets;
+				type[j] = ""+rtRecords.getType(i); // get type returns a different type for some payloads, e.g. HerciPackets.  Reference directly
+			upTime[j] = ""+rtRecords.getUptime(i);
+			resets[j--] = ""+rtRecords.getResets(i);
 		}
 		
 		// Create a results set, with reset, uptime and the data on the same line
@@ -230,7 +978,55 @@ public class DataTable {
 	 * @throws NumberFormatException 
 	 */
 	double[][] getGraphData(String name, int period,int id, int fromReset, long fromUptime, boolean raw, boolean positionData, boolean reverse) throws IOException, NumberFormatException, DataLoadException {
-		loadSegments(fromReset, fromUptime, period, reverse);
+		return getGraphData(new String[] {name}, period, id, fromReset, fromUptime, raw, positionData, reverse)[0];
+	}
+	
+	/**
+	 * Return several fields over the same records, such as all of the lines on one graph.  The segments are loaded and
+	 * the records found once for all of the fields.  Each field is returned in the same form as getGraphData() for a
+	 * single field and they share the same resets, uptime and position arrays, so the caller must not change them.
+	 * @param names
+	 * @return an array of graph data in the same order as the names
+	 * @throws IOException 
+	 * @throws DataLoadException 
+	 * @throws NumberFormatException 
+	 */
+	double[][][] getGraphData(String[] names, int period,int id, int fromReset, long fromUptime, boolean raw, boolean positionData, boolean reverse) throws IOException, NumberFormatException, DataLoadException {
+		return getGraphData(getFields(names), period, id, fromReset, fromUptime, raw, positionData, reverse, 0);
+	}
+	
+	/**
+	 * Find the fields once, rather than searching the layout for every row
+	 */
+	private int[] getFields(String[] names) {
+		int[] fields = new int[names.length];
+		for (int f=0; f < names.length; f++)
+			fields[f] = layout.getPositionByName(names[f]);
+		return fields;
+	}
+	
+	/**
+	 * @param buckets - the number of min/max pairs to reduce the records to as they are read, or zero for every record
+	 */
+	private double[][][] getGraphData(int[] fields, int period,int id, int fromReset, long fromUptime, boolean raw, boolean positionData, boolean reverse, int buckets) throws IOException, NumberFormatException, DataLoadException {
+		if (!positionData) {
+			commitAndReadLock(); // so the mapped files hold everything we have saved
+			try {
+				double[][][] mapped = getMappedGraphData(fields, period, fromReset, fromUptime, raw, reverse, buckets);
+				if (mapped != null) return mapped;
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+		loadAndReadLock(fromReset, fromUptime, period, reverse);
+		try {
+			return copyGraphData(fields, period, id, fromReset, fromUptime, raw, positionData, reverse, buckets);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	private double[][][] copyGraphData(int[] fields, int period,int id, int fromReset, long fromUptime, boolean raw, boolean positionData, boolean reverse, int buckets) {
 		int start = 0;
 		int end = 0;
 		
@@ -253,38 +1049,423 @@ public class DataTable {
 		if (end < start) end = start;
 		if (start < 0) start = 0;
 		if (start > rtRecords.size()) start = rtRecords.size();
-		double[] results = new double[end-start];
+		if (!positionData && buckets > 0 && end-start > 2 * buckets)
+			return decimateGraphData(new Rows() {
+				public double getResets(int row) { return rtRecords.getResets(row); }
+				public double getUptime(int row) { return rtRecords.getUptime(row); }
+				public void getRawValues(int field, int from, int[] rawValues, int count) {
+					if (rtRecords instanceof ColumnStore)
+						System.arraycopy(((ColumnStore)rtRecords).getColumn(field), from, rawValues, 0, count);
+					else
+						for (int i=0; i < count; i++)
+							rawValues[i] = rtRecords.getRawValue(from+i, field);
+				}
+			}, start, end, fields, raw, buckets);
 		double[] upTime = new double[end-start];
 		double[] resets = new double[end-start];
 		if (positionData) {
 			lat = new double[end-start];
 			lon = new double[end-start];
 		}
-		int j = results.length-1;
+		int j = upTime.length-1;
 		for (int i=end-1; i>= start; i--) {
 			//System.out.println(rtRecords.size());
-			if (raw)
-				results[j] = rtRecords.get(i).getRawValue(name);
-			else
-				results[j] = rtRecords.get(i).getDoubleValue(name);
 			if (positionData) {
-				lat[j] = rtRecords.get(i).satLatitude;
-				lon[j] = rtRecords.get(i).satLongitude;
+				DataRecord r = rtRecords.get(i);
+				lat[j] = r.satLatitude;
+				lon[j] = r.satLongitude;
 			}
-			upTime[j] = rtRecords.get(i).uptime;
-			resets[j--] = rtRecords.get(i).resets;
+			upTime[j] = rtRecords.getUptime(i);
+			resets[j--] = rtRecords.getResets(i);
 		}
 		
-		double[][] resultSet = new double[COLUMNS][end-start];
-		resultSet[DATA_COL] = results;
-		resultSet[UPTIME_COL] = upTime;
-		resultSet[RESETS_COL] = resets;
-		if (positionData) {
-			resultSet[LAT_COL] = lat;
-			resultSet[LON_COL] = lon;
-			
+		double[][][] resultSets = new double[fields.length][][];
+		int[] rawValues = new int[end-start];
+		for (int f=0; f < fields.length; f++) {
+			int field = fields[f];
+			double[] results = new double[end-start];
+			// A field that is not in the layout is all zeros, as DataRecord returns
+			if (field != ByteArrayLayout.ERROR_POSITION) {
+				if (rtRecords instanceof ColumnStore)
+					System.arraycopy(((ColumnStore)rtRecords).getColumn(field), start, rawValues, 0, end-start);
+				else
+					for (int i=start; i < end; i++)
+						rawValues[i-start] = rtRecords.getRawValue(i, field);
+				convert(field, rawValues, results, raw);
+			}
+			double[][] resultSet = new double[COLUMNS][];
+			resultSet[DATA_COL] = results;
+			resultSet[UPTIME_COL] = upTime;
+			resultSet[RESETS_COL] = resets;
+			if (positionData) {
+				resultSet[LAT_COL] = lat;
+				resultSet[LON_COL] = lon;
+			}
+			resultSets[f] = resultSet;
 		}
-		return resultSet;
+		return resultSets;
+	}
+	
+	/**
+	 * Return several fields for a graph that is maxPoints wide, such as a graph with one point per pixel.  If there are
+	 * more records than that then the smallest and largest value in each group of records is returned, so the peaks
+	 * are still drawn.  See MinMaxDecimator.  Position data is not returned, so this is not used for maps.
+	 * @param maxPoints - the number of points across the graph, or zero for all of the records
+	 */
+	double[][][] getGraphData(String[] names, int period,int id, int fromReset, long fromUptime, boolean raw, boolean reverse, int maxPoints) throws IOException, NumberFormatException, DataLoadException {
+		if (maxPoints > 0) {
+			lock.readLock().lock();
+			try {
+				double[][][] data = getRollupGraphData(names, period, fromReset, fromUptime, raw, reverse, maxPoints / 2);
+				if (data != null) return data;
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+		// The records are reduced as they are read, so only the points that are returned are allocated
+		return getGraphData(getFields(names), period, id, fromReset, fromUptime, raw, false, reverse, Math.max(0, maxPoints / 2));
+	}
+	
+	/**
+	 * The rows of graph data, read from the loaded records or from the mapped segment files
+	 */
+	private interface Rows {
+		double getResets(int row);
+		double getUptime(int row);
+		void getRawValues(int field, int from, int[] rawValues, int count);
+	}
+	
+	/**
+	 * Reduce the rows from start to end to the smallest and largest value in each of the buckets, in the same way as
+	 * MinMaxDecimator, but as the rows are read.  Each bucket is read and converted into a buffer that is reused, so
+	 * only the buffer and the points that are returned are allocated, however many rows there are.
+	 */
+	private double[][][] decimateGraphData(Rows rows, int start, int end, int[] fields, boolean raw, int buckets) {
+		int count = end - start;
+		double[] resets = new double[2 * buckets];
+		double[] upTime = new double[2 * buckets];
+		for (int b=0; b < buckets; b++) {
+			int first = start + MinMaxDecimator.bucketStart(b, count, buckets);
+			int last = start + MinMaxDecimator.bucketStart(b+1, count, buckets) - 1;
+			resets[2*b] = rows.getResets(first);
+			upTime[2*b] = rows.getUptime(first);
+			resets[2*b+1] = rows.getResets(last);
+			upTime[2*b+1] = rows.getUptime(last);
+		}
+		int[] rawValues = new int[(count + buckets - 1) / buckets]; // the largest bucket
+		double[] values = new double[rawValues.length];
+		double[][][] resultSets = new double[fields.length][][];
+		for (int f=0; f < fields.length; f++) {
+			double[] results = new double[2 * buckets];
+			// A field that is not in the layout is all zeros, as DataRecord returns
+			if (fields[f] != ByteArrayLayout.ERROR_POSITION) {
+				for (int b=0; b < buckets; b++) {
+					int first = start + MinMaxDecimator.bucketStart(b, count, buckets);
+					int n = start + MinMaxDecimator.bucketStart(b+1, count, buckets) - first;
+					rows.getRawValues(fields[f], first, rawValues, n);
+					convert(fields[f], rawValues, values, raw, n);
+					int min = 0;
+					int max = 0;
+					for (int i=1; i < n; i++) {
+						if (values[i] < values[min]) min = i;
+						if (values[i] > values[max]) max = i;
+					}
+					results[2*b] = values[Math.min(min, max)];
+					results[2*b+1] = values[Math.max(min, max)];
+				}
+			}
+			resultSets[f] = new double[3][];
+			resultSets[f][DATA_COL] = results;
+			resultSets[f][UPTIME_COL] = upTime;
+			resultSets[f][RESETS_COL] = resets;
+		}
+		return resultSets;
+	}
+	
+	/**
+	 * Return the graph data from the coarsest rollup tier that still has a bucket for each pixel.  Each bucket gives
+	 * two points, the min and max, at the first and last record in the bucket.  The tiers keep the min and max of the
+	 * raw values, which are only the peaks of the converted values if the conversion keeps their order.  So the tiers
+	 * are not used for a field with a conversion that can turn, such as a quadratic.
+	 * @param pixels - the number of buckets we need
+	 * @return the graph data or null if no tier is complete and coarse enough to be worth using
+	 */
+	private double[][][] getRollupGraphData(String[] names, int period, int fromReset, long fromUptime, boolean raw, boolean reverse, int pixels) {
+		if (rollups.size() == 0 || pixels < 1) return null;
+		if (!raw)
+			for (String name : names) {
+				int field = layout.getPositionByName(name);
+				if (field != ByteArrayLayout.ERROR_POSITION && !layout.getConversionTable().isMonotonic(layout.conversion[field]))
+					return null;
+			}
+		int size = getSize();
+		ArrayList<RollupTier.Bucket> buckets = null;
+		for (int t=rollups.size()-1; t >= 0 && buckets == null; t--) {
+			RollupTier tier = rollups.get(t);
+			if (!tier.isComplete(size)) continue;
+			ArrayList<RollupTier.Bucket> candidate = tier.getBuckets(fromReset, fromUptime, period, reverse);
+			if (candidate.size() < pixels) continue;
+			long records = 0;
+			for (RollupTier.Bucket b : candidate)
+				records += b.count;
+			if (records > 2L * candidate.size())
+				buckets = candidate;
+		}
+		if (buckets == null) return null;
+
+		int n = buckets.size();
+		double[] resets = new double[2*n];
+		double[] upTime = new double[2*n];
+		for (int i=0; i < n; i++) {
+			RollupTier.Bucket b = buckets.get(i);
+			resets[2*i] = b.resets;
+			resets[2*i+1] = b.resets;
+			upTime[2*i] = b.firstUptime;
+			upTime[2*i+1] = b.lastUptime;
+		}
+		double[][][] resultSets = new double[names.length][][];
+		int[] rawMin = new int[n];
+		int[] rawMax = new int[n];
+		double[] min = new double[n];
+		double[] max = new double[n];
+		for (int f=0; f < names.length; f++) {
+			int field = layout.getPositionByName(names[f]);
+			double[] results = new double[2*n];
+			if (field != ByteArrayLayout.ERROR_POSITION) {
+				for (int i=0; i < n; i++) {
+					rawMin[i] = buckets.get(i).min[field];
+					rawMax[i] = buckets.get(i).max[field];
+				}
+				convert(field, rawMin, min, raw);
+				convert(field, rawMax, max, raw);
+				for (int i=0; i < n; i++) {
+					results[2*i] = Math.min(min[i], max[i]);
+					results[2*i+1] = Math.max(min[i], max[i]);
+				}
+			}
+			double[][] resultSet = new double[3][];
+			resultSet[DATA_COL] = results;
+			resultSet[UPTIME_COL] = upTime;
+			resultSet[RESETS_COL] = resets;
+			resultSets[f] = resultSet;
+		}
+		return MinMaxDecimator.decimate(resultSets, pixels);
+	}
+	
+	private void convert(int field, int[] rawValues, double[] results, boolean raw) {
+		convert(field, rawValues, results, raw, rawValues.length);
+	}
+	
+	private void convert(int field, int[] rawValues, double[] results, boolean raw, int count) {
+		if (raw)
+			for (int i=0; i < count; i++)
+				results[i] = rawValues[i];
+		else
+			layout.getConversionTable().convert(layout.conversion[field], rawValues, 0, results, 0, count);
+	}
+	
+	/**
+	 * Return fields for graphing by reading the columns straight from the memory mapped segment files, rather
+	 * than loading the segments into DataRecords.  The segments are picked in the same way as loadSegments() and the
+	 * rows are selected in the same way as getGraphData().  This only works for binary segments and when the segments
+	 * are in order end to end.  Otherwise this returns null and the caller loads the records.  Position data is not
+	 * stored in the segment files, so it is not available here.
+	 * @return the graph data or null if it can not be read from the mapped files
+	 * @throws IOException
+	 * @throws DataLoadException
+	 */
+	private double[][][] getMappedGraphData(int[] fields, int period, int fromReset, long fromUptime, boolean raw, boolean reverse, int buckets) throws IOException, DataLoadException {
+		if (tableIdx.size() == 0) return null;
+		int first = 0;
+		int last = tableIdx.size()-1;
+		int total = 0;
+		if (reverse) {
+			for (int i=tableIdx.size()-1; i>=0; i--) {
+				total += tableIdx.get(i).records;
+				if (total >= period) {
+					first = i;
+					break;
+				}
+			}
+		} else {
+			first = findFirstSeg(fromReset, fromUptime);
+			if (first < 0) return null;
+			for (last = first; last < tableIdx.size()-1; last++) {
+				total += tableIdx.get(last).records;
+				if (total >= period+MAX_SEGMENT_SIZE) break;
+			}
+		}
+		// Only the segments for the range are checked and mapped
+		for (int i=first; i <= last; i++)
+			if (!tableIdx.get(i).isBinary()) return null;
+		MappedSegment[] segs = new MappedSegment[last-first+1];
+		int[] starts = new int[segs.length+1]; // the first row of each segment in the combined range
+		for (int i=0; i < segs.length; i++) {
+			segs[i] = MappedSegment.get(dbDir+File.separator + tableIdx.get(first+i).fileName);
+			starts[i+1] = starts[i] + segs[i].getRows();
+		}
+		if (!mappedSegmentsInOrder(segs))
+			return null; // the segments overlap so we need the sorted records
+		if (mappedOverlapsLoaded(segs, tableIdx.subList(first, last+1)))
+			return null; // the loaded records from another segment would be mixed in with these
+		int size = starts[segs.length];
+		
+		int start = 0;
+		int end = 0;
+		if (reverse) { // then we take records nearest the end
+			start = size-period;
+			end = size;
+		} else {
+			start = mappedNearest(segs, starts, fromReset, fromUptime);
+			if (start == -1 ) start = size-period;
+			end = start + period;
+		}
+		if (end > size) end = size;
+		if (end < start) end = start;
+		if (start < 0) start = 0;
+		if (start > size) start = size;
+		if (buckets > 0 && end-start > 2 * buckets) {
+			final MappedSegment[] mapped = segs;
+			final int[] mappedStarts = starts;
+			return decimateGraphData(new Rows() {
+				public double getResets(int row) {
+					int s = segmentOf(mappedStarts, row);
+					return mapped[s].getResets(row - mappedStarts[s]);
+				}
+				public double getUptime(int row) {
+					int s = segmentOf(mappedStarts, row);
+					return mapped[s].getUptime(row - mappedStarts[s]);
+				}
+				public void getRawValues(int field, int from, int[] rawValues, int count) {
+					int s = segmentOf(mappedStarts, from);
+					for (int i=from; i < from+count; i++) {
+						while (i >= mappedStarts[s+1]) s++;
+						rawValues[i-from] = mapped[s].getInt(i - mappedStarts[s], field);
+					}
+				}
+			}, start, end, fields, raw, buckets);
+		}
+		
+		double[] upTime = new double[end-start];
+		double[] resets = new double[end-start];
+		int s = 0;
+		for (int i=start; i < end; i++) {
+			while (i >= starts[s+1]) s++;
+			int row = i - starts[s];
+			upTime[i-start] = segs[s].getUptime(row);
+			resets[i-start] = segs[s].getResets(row);
+		}
+		double[][][] resultSets = new double[fields.length][][];
+		int[] rawValues = new int[end-start];
+		for (int f=0; f < fields.length; f++) {
+			double[] results = new double[end-start];
+			if (fields[f] != ByteArrayLayout.ERROR_POSITION) {
+				s = 0;
+				for (int i=start; i < end; i++) {
+					while (i >= starts[s+1]) s++;
+					rawValues[i-start] = segs[s].getInt(i - starts[s], fields[f]);
+				}
+				convert(fields[f], rawValues, results, raw);
+			}
+			resultSets[f] = new double[3][];
+			resultSets[f][DATA_COL] = results;
+			resultSets[f][UPTIME_COL] = upTime;
+			resultSets[f][RESETS_COL] = resets;
+		}
+		return resultSets;
+	}
+	
+	/**
+	 * Check that the records in each segment come after all of the records in the segments before it, so that the
+	 * segments read end to end are in order.  Records are normally saved in order, but an old record that arrives late
+	 * can be saved into a segment that overlaps the next one.
+	 * @param segs - the segments of the range that is being read, in index order
+	 * @return true if the segments are in order
+	 */
+	private static boolean mappedSegmentsInOrder(MappedSegment[] segs) {
+		MappedSegment prev = null;
+		for (MappedSegment m : segs) {
+			if (m.getRows() == 0) continue;
+			if (prev != null) {
+				int r = prev.getRows()-1;
+				if (compareKey(m.getResets(0), m.getUptime(0), m.getType(0), prev.getResets(r), prev.getUptime(r), prev.getType(r)) <= 0)
+					return false;
+			}
+			prev = m;
+		}
+		return true;
+	}
+	
+	/**
+	 * Check if a segment that is loaded but is not one of the range has records with keys in the range.  The loaded
+	 * records are sorted together, so getGraphData() from the records would include them.
+	 * @param segs - the mapped segments of the range, in order
+	 * @param range - the index entries of the same segments
+	 * @return true if the range overlaps a loaded segment, or the keys can not be compared
+	 */
+	private boolean mappedOverlapsLoaded(MappedSegment[] segs, List<TableSeg> range) {
+		int fs = 0;
+		while (fs < segs.length && segs[fs].getRows() == 0) fs++;
+		if (fs == segs.length) return false;
+		int ls = segs.length-1;
+		while (segs[ls].getRows() == 0) ls--;
+		int lr = segs[ls].getRows()-1;
+		if (!RecordKey.isPackable(segs[fs].getResets(0), segs[fs].getUptime(0), segs[fs].getType(0))
+				|| !RecordKey.isPackable(segs[ls].getResets(lr), segs[ls].getUptime(lr), segs[ls].getType(lr)))
+			return true;
+		long min = RecordKey.pack(segs[fs].getResets(0), segs[fs].getUptime(0), segs[fs].getType(0));
+		long max = RecordKey.pack(segs[ls].getResets(lr), segs[ls].getUptime(lr), segs[ls].getType(lr));
+		return cache.overlapsLoaded(min, max, range);
+	}
+	
+	/**
+	 * The same search as SortedDataRecordArrayList.getNearestFrameIndex() but over the combined rows of the mapped segments
+	 */
+	private static int mappedNearest(MappedSegment[] segs, int[] starts, int resets, long uptime) {
+		int size = starts[segs.length];
+		if (size == 0) return -1;
+		int ls = segs.length-1;
+		while (segs[ls].getRows() == 0) ls--;
+		int lr = segs[ls].getRows()-1;
+		if (resets > segs[ls].getResets(lr)) return size-1;
+		if (resets == segs[ls].getResets(lr) && uptime > segs[ls].getUptime(lr)) return size-1;
+		int fs = 0;
+		while (segs[fs].getRows() == 0) fs++;
+		int type = segs[fs].getType(0); // as the records list uses the type of its first record
+		
+		int low = 0;
+		int high = size;
+		int s = 0;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			s = segmentOf(starts, mid);
+			int row = mid - starts[s];
+			if (compareKey(resets, uptime, type, segs[s].getResets(row), segs[s].getUptime(row), segs[s].getType(row)) > 0)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		if (low == size) return -1;
+		return low;
+	}
+	
+	private static int segmentOf(int[] starts, int row) {
+		int low = 0;
+		int high = starts.length-2;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (starts[mid] <= row)
+				low = mid;
+			else
+				high = mid - 1;
+		}
+		return low;
+	}
+	
+	private static int compareKey(int resets, long uptime, int type, int r2, long u2, int t2) {
+		if (resets != r2) return resets < r2 ? -1 : 1;
+		if (uptime != u2) return uptime < u2 ? -1 : 1;
+		return Integer.compare(type, t2);
 	}
 	
 	private TableSeg getSeg(int reset, long uptime) throws IOException {
@@ -294,9 +1475,9 @@ public class DataTable {
 			}
 		}
 		// We could not find a valid Segment, so create a new segment at the head of the list
-		TableSeg seg = new TableSeg(reset, uptime, tableName);
+		TableSeg seg = new TableSeg(reset, uptime, tableName, getSegmentFormat());
 		tableIdx.add(seg);
-		saveIdx();
+		journal.segmentCreated(seg);
 		return seg;
 	}
 	
@@ -310,8 +1491,7 @@ public class DataTable {
 	 */
 	private TableSeg loadSeg(int reset, long uptime) throws IOException, NumberFormatException, DataLoadException {
 		TableSeg seg = getSeg(reset, uptime);
-		if (seg.isLoaded()) return seg;
-		load(seg);
+		ensureLoaded(seg);
 		return seg;
 	}
 	
@@ -330,26 +1510,31 @@ public class DataTable {
 	 * @throws NumberFormatException 
 	 */
 	protected int getNumberOfPayloadsBetweenTimestamps(int reset, long uptime, int toReset, long toUptime) throws IOException, NumberFormatException, LayoutLoadException, DataLoadException {
-		int fromSeg = findFirstSeg(reset, uptime);
-		int toSeg = findFirstSeg(toReset, toUptime);
-		int number = 0;
-		// Then we need to load segment at i and start counting from here, until we find the toReset and toUptime
-		//System.err.println("Loading from seg: "+i);
+		lock.writeLock().lock();
+		try {
+			int fromSeg = findFirstSeg(reset, uptime);
+			int toSeg = findFirstSeg(toReset, toUptime);
+			int number = 0;
+			// Then we need to load segment at i and start counting from here, until we find the toReset and toUptime
+			//System.err.println("Loading from seg: "+i);
 
-		int i = fromSeg;
-		while(i <= toSeg && i < tableIdx.size()) {
-			if (!tableIdx.get(i).isLoaded())
-				load(tableIdx.get(i));
-			i++;
-		}
-		int id = rtRecords.get(0).id; // id is the same for all records in this table
-		// Now all the segments are loaded that contain the data we want, so find the nearest records and count the distance between
-		int start = rtRecords.getNearestFrameIndex(id, uptime, reset);
-		int end = rtRecords.getNearestFrameIndex(id, toUptime, toReset);
-		if (start < end)
-			number = end - start;
+			trimCache();
+			int i = fromSeg;
+			while(i <= toSeg && i < tableIdx.size()) {
+				ensureLoaded(tableIdx.get(i));
+				i++;
+			}
+			int id = rtRecords.getId(0); // id is the same for all records in this table
+			// Now all the segments are loaded that contain the data we want, so find the nearest records and count the distance between
+			int start = rtRecords.getNearestFrameIndex(id, uptime, reset);
+			int end = rtRecords.getNearestFrameIndex(id, toUptime, toReset);
+			if (start < end)
+				number = end - start;
 
-		return number;
+			return number;
+		} finally {
+			lock.writeLock().unlock();
+		}
 	}
 	
 	/**
@@ -473,9 +1658,7 @@ public class DataTable {
 			total = 0;
 			// Now start index is the first segment we need to load, so now load them if needed
 			for (int i=startIdx; i<tableIdx.size(); i++) {
-				if (!tableIdx.get(i).isLoaded()) {
-					load(tableIdx.get(i));
-				}
+				ensureLoaded(tableIdx.get(i));
 				total += tableIdx.get(i).records;
 				
 			}
@@ -486,8 +1669,7 @@ public class DataTable {
 			//System.err.println("Loading from seg: "+i);
 			if (i >= 0)
 				while(i < tableIdx.size()) {
-					if (!tableIdx.get(i).isLoaded())
-						load(tableIdx.get(i));
+					ensureLoaded(tableIdx.get(i));
 					total += tableIdx.get(i++).records;
 					if (total >= number+MAX_SEGMENT_SIZE) break; // add an extra segment because often we start from the segment before
 				}
@@ -502,27 +1684,84 @@ public class DataTable {
 	 * @throws NumberFormatException 
 	 */
 	public boolean save(DataRecord f) throws IOException, NumberFormatException, DataLoadException {
-		// Make sure this segment is loaded, or create an empty segment if it does not exist
-		TableSeg seg = loadSeg(f.resets, f.uptime);
-		if (rtRecords.add(f)) {
-		//if (!rtRecords.hasFrame(f.id, f.uptime, f.resets)) {
-			updated = true;
-			if (seg.records == MAX_SEGMENT_SIZE) {
-				// We need to add a new segment with this as the first record
-				seg = new TableSeg(f.resets, f.uptime, tableName);
-				tableIdx.add(seg);
-			}
-			save(f, dbDir+File.separator + seg.fileName);
-			seg.records++;
-			saveIdx();
-			//return rtRecords.add(f);
-			return true;
-		} else {
-			// Duplicate record
-			return false;
+		lock.writeLock().lock();
+		try {
+			// Make sure this segment is loaded, or create an empty segment if it does not exist
+			trimCache();
+			TableSeg seg = loadSeg(f.resets, f.uptime);
+			if (isColumnar() && !ColumnStore.canStore(f))
+				setColumnar(false);
+			if (rtRecords.add(f)) {
+			//if (!rtRecords.hasFrame(f.id, f.uptime, f.resets)) {
+				updated = true;
+				for (RollupTier tier : rollups)
+					tier.add(f);
+				if (seg.records == MAX_SEGMENT_SIZE) {
+					// We need to add a new segment with this as the first record
+					seg = new TableSeg(f.resets, f.uptime, tableName, getSegmentFormat());
+					tableIdx.add(seg);
+					journal.segmentCreated(seg);
+					seg.setLoaded(true); // it only has the record we are saving, which is in memory
+					cache.loaded(seg);
+				}
+				seg.include(f);
+				if (isGroupCommit()) {
+					append(f, seg);
+				} else {
+					if (seg.isBinary()) {
+						// Keep the file open between records, as append() does, but write each record through without
+						// forcing it to disk, like the CSV path
+						if (writerSeg != seg) {
+							closeWriter();
+							writer = new SegmentWriter(dbDir+File.separator + seg.fileName, true, layout.fieldName.length);
+							writerSeg = seg;
+						}
+						writer.append(f);
+						writer.commit(false);
+					} else
+						save(f, dbDir+File.separator + seg.fileName);
+					seg.records++;
+					journal.recordsAdded(seg, 1);
+					saveRollups();
+					if (notifier.hasListeners())
+						notifier.recordsAdded(Collections.singletonList(f));
+				}
+				if (journal.getEntries() >= MAX_JOURNAL_ENTRIES)
+					saveIdx();
+				//return rtRecords.add(f);
+				return true;
+			} else {
+				// Duplicate record
+				return false;
+			}
+		} finally {
+			lock.writeLock().unlock();
 		}
 	}
 	
+	/**
+	 * Append a record to the open segment file and commit the group if it is full or old enough.  If the record is
+	 * for a different segment then the current one is committed and closed before we switch.
+	 * @param f
+	 * @param seg
+	 * @throws IOException
+	 */
+	private void append(DataRecord f, TableSeg seg) throws IOException {
+		if (writerSeg != seg) {
+			closeWriter();
+			writer = new SegmentWriter(dbDir+File.separator + seg.fileName, seg.isBinary(), layout.fieldName.length);
+			writerSeg = seg;
+		}
+		writer.append(f);
+		uncommitted.add(f); // even with no listeners, as one may be added before the group is committed
+		seg.records++;
+		if (writer.getPending() >= maxCommitRecords 
+				|| System.currentTimeMillis() - writer.getLastCommit() >= maxCommitInterval)
+			commitWriter(true);
+		else
+			startCommitTimer();
+	}
+	
 	/**
 	 * Load a table segment file from disk
 	 * 
@@ -531,26 +1770,61 @@ public class DataTable {
 	 * @throws DataLoadException 
 	 */
 	public void load(TableSeg seg) throws IOException, NumberFormatException, DataLoadException {
-		String log = dbDir+File.separator + seg.fileName;
+		lock.writeLock().lock();
+		try {
+			String log = dbDir+File.separator + seg.fileName;
+	        if (seg == writerSeg)
+	        	commitWriter(false); // so we read back anything that is still buffered
+	        seg.clearKeyRange();
+	        seg.clearStats();
+	        try {
+	        	load(seg, log);
+	        } catch (IllegalArgumentException e) {
+	        	// A record that the columns can not store.  Go back to DataRecords and load again, the records we already have are skipped
+	        	setColumnar(false);
+	        	seg.clearStats();
+	        	load(seg, log);
+	        }
+	        seg.setLoaded(true);
+	        cache.loaded(seg);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	private void load(TableSeg seg, String log) throws IOException, DataLoadException {
+        if (seg.isBinary()) {
+        	BinarySegment.load(log, layout, rtRecords, seg);
+        } else {
+        	createNewFile(log);
+        	readCsv(log, rtRecords, seg);
+        }
+	}
+	
+	/**
+	 * Read the records in a CSV segment file into the list
+	 * @param log
+	 * @param records
+	 * @param seg - if not null, the key range and field statistics of the records are recorded in the segment
+	 * @throws IOException
+	 * @throws DataLoadException
+	 */
+	private void readCsv(String log, RecordStore records, TableSeg seg) throws IOException, DataLoadException {
         String line;
-        createNewFile(log);
- 
         BufferedReader dis = new BufferedReader(new FileReader(log));
 
         try {
         	while ((line = dis.readLine()) != null) {
-        		if (line != null) {
-        			DataRecord rt = addLine(line);
-        			boolean ret = rtRecords.add(rt);
+        		DataRecord rt = addLine(line);
+        		if (rt != null) {
+        			records.add(rt);
+        			if (seg != null)
+        				seg.include(rt);
         		}
         	}
-        	seg.setLoaded(true);
-        	dis.close();
-        
         } finally {
         	dis.close();
         }
-
 	}
 
 	/**
@@ -627,16 +1901,21 @@ public class DataTable {
 	}
 
 	/**
-	 * Save Index to the a file
+	 * Compact the index.  The whole index is written to a temporary file, forced to disk and then moved over the
+	 * .idx file, so a crash leaves either the old index and its journal or the new one.  The new index is stamped
+	 * with the next journal generation, so if we stop before the journal is emptied it is not replayed again.
 	 * @throws IOException
 	 */
 	private void saveIdx() throws IOException {
-		File aFile = new File(fileName + ".idx" );
-		createNewFile(fileName + ".idx");
+		commitWriter(true); // the index must not count records that are not on disk yet
+		long generation = journal.getGeneration() + 1;
+		File aFile = new File(fileName + ".idx.tmp" );
 		//Log.println("Saving: " + log);
 		//use buffering and REPLACE the existing file
-		Writer output = new BufferedWriter(new FileWriter(aFile, false));
+		FileOutputStream fos = new FileOutputStream(aFile, false);
+		Writer output = new BufferedWriter(new OutputStreamWriter(fos));
 		try {
+			output.write("G," + generation + "\n");
 			for (TableSeg seg: tableIdx) {
 
 				output.write( seg.toFile() + "\n" );
@@ -645,8 +1924,11 @@ public class DataTable {
 		} finally {
 			// Make sure it is closed even if we hit an error
 			output.flush();
+			fos.getFD().sync();
 			output.close();
 		}
+		Files.move(aFile.toPath(), new File(fileName + ".idx").toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		journal.truncate(generation);
 	}
 	
 	
@@ -655,37 +1937,176 @@ public class DataTable {
 	 * @throws IOException 
 	 */
 	public void loadIdx() throws IOException, NumberFormatException {
-        String line;
-        File aFile = new File(fileName + ".idx" );
-		if (createNewFile(fileName + ".idx")) {
-			Writer output = new BufferedWriter(new FileWriter(aFile, true));
-			output.close();
-		}
+		lock.writeLock().lock();
+		try {
+	        String line;
+	        File aFile = new File(fileName + ".idx" );
+			if (createNewFile(fileName + ".idx")) {
+				Writer output = new BufferedWriter(new FileWriter(aFile, true));
+				output.close();
+			}
  
-        BufferedReader dis = new BufferedReader(new FileReader(aFile.getPath()));
-
-        try {
-        	while ((line = dis.readLine()) != null) {
-        		if (line != null) {
-        			StringTokenizer st = new StringTokenizer(line, ",");
+	        BufferedReader dis = new BufferedReader(new FileReader(aFile.getPath()));
+	        long generation = 0; // an index from before the journal had generations
+	        try {
+	        	while ((line = dis.readLine()) != null) {
+	        		if (line.startsWith("G,")) {
+	        			generation = Long.parseLong(line.substring(2).trim());
+	        		} else {
+	        			StringTokenizer st = new StringTokenizer(line, ",");
         			
-        			int resets = Integer.valueOf(st.nextToken()).intValue();
-        			long uptime = Long.valueOf(st.nextToken()).longValue();
-        			int records = Integer.valueOf(st.nextToken()).intValue();
-        			String name = st.nextToken();
-        			TableSeg seg = new TableSeg(resets, uptime, name, records);
-    				tableIdx.add(seg);
-        		}
-        	}
-        } finally {        	
-        	dis.close();
-        }
+	        			int resets = Integer.valueOf(st.nextToken()).intValue();
+	        			long uptime = Long.valueOf(st.nextToken()).longValue();
+	        			int records = Integer.valueOf(st.nextToken()).intValue();
+	        			String name = st.nextToken();
+	        			String format = st.hasMoreTokens() ? st.nextToken() : ByteArrayLayout.FORMAT_CSV;
+	        			TableSeg seg = new TableSeg(resets, uptime, name, records, format);
+	        			seg.readStats(st);
+	    				tableIdx.add(seg);
+	        		}
+	        	}
+	        } finally {        	
+	        	dis.close();
+	        }
+	        // Then apply the changes since the index was last compacted
+	        if (journal.replay(tableIdx, generation) > 0)
+	        	saveIdx();
+		} finally {
+			lock.writeLock().unlock();
+		}
 	}	
 	
+	/**
+	 * Rebuild the index from the segment files on disk.  This recovers the record counts if they do not match the data,
+	 * for example after a crash, and adds any segment files that are missing from the index.
+	 * @throws IOException
+	 */
+	public void recoverIdx() throws IOException {
+		lock.writeLock().lock();
+		try {
+			commitWriter(true);
+			HashSet<String> names = new HashSet<String>();
+			for (TableSeg seg: tableIdx)
+				names.add(seg.fileName);
+			File[] files = new File(dbDir).listFiles();
+			if (files != null)
+				for (File f : files) {
+					String name = f.getName();
+					if (names.contains(name) || !name.startsWith(tableName + "_")) continue;
+					String format;
+					if (name.endsWith(TableSeg.CSV_EXT))
+						format = ByteArrayLayout.FORMAT_CSV;
+					else if (name.endsWith(TableSeg.BINARY_EXT))
+						format = ByteArrayLayout.FORMAT_BINARY;
+					else
+						continue;
+					// The rest of the name must be resets_uptime, otherwise it belongs to another table
+					String[] key = name.substring(tableName.length()+1, name.length()-4).split("_");
+					if (key.length != 2) continue;
+					try {
+						tableIdx.add(new TableSeg(Integer.parseInt(key[0]), Long.parseLong(key[1]), name, 0, format));
+					} catch (NumberFormatException e) {
+						continue;
+					}
+				}
+			for (TableSeg seg: tableIdx)
+				if (seg.isBinary())
+					seg.records = BinarySegment.count(dbDir+File.separator + seg.fileName);
+				else
+					seg.records = countRecords(dbDir+File.separator + seg.fileName);
+			saveIdx();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	private String getSegmentFormat() {
+		return layout.isBinarySegments() ? ByteArrayLayout.FORMAT_BINARY : ByteArrayLayout.FORMAT_CSV;
+	}
+	
+	/**
+	 * Rewrite any segments that are not in the format set in the layout, so that an existing table can be moved
+	 * between the CSV and binary formats.  Each segment is written to a new file, the index is saved and then the old
+	 * file is removed.  The records that are loaded in memory are not changed.
+	 * @return the number of segments converted
+	 * @throws IOException
+	 * @throws DataLoadException 
+	 */
+	public int convertSegments() throws IOException, DataLoadException {
+		lock.writeLock().lock();
+		try {
+			closeWriter();
+			String format = getSegmentFormat();
+			boolean binary = ByteArrayLayout.FORMAT_BINARY.equals(format);
+			int converted = 0;
+			for (TableSeg seg: tableIdx) {
+				if (seg.format.equals(format)) continue;
+				String oldFile = seg.fileName;
+				SortedDataRecordArrayList records = new SortedDataRecordArrayList(seg.records);
+				if (seg.isBinary())
+					BinarySegment.load(dbDir+File.separator + oldFile, layout, records, null);
+				else
+					readCsv(dbDir+File.separator + oldFile, records, null);
+				String newFile = TableSeg.makeFileName(tableName, seg.fromReset, seg.fromUptime, format);
+				MappedSegment.release(dbDir+File.separator + newFile);
+				remove(dbDir+File.separator + newFile); // left over from a conversion that did not finish
+				SegmentWriter w = new SegmentWriter(dbDir+File.separator + newFile, binary, layout.fieldName.length);
+				try {
+					for (DataRecord r : records)
+						w.append(r);
+				} finally {
+					w.close();
+				}
+				seg.fileName = newFile;
+				seg.format = format;
+				seg.records = records.size();
+				seg.clearStats();
+				for (DataRecord r : records)
+					seg.includeStats(r);
+				saveIdx();
+				MappedSegment.release(dbDir+File.separator + oldFile);
+				remove(dbDir+File.separator + oldFile);
+				converted++;
+			}
+			return converted;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	private static int countRecords(String log) throws IOException {
+		File aFile = new File(log);
+		if (!aFile.exists()) return 0;
+		int count = 0;
+		BufferedReader dis = new BufferedReader(new FileReader(aFile));
+		try {
+			String line;
+			while ((line = dis.readLine()) != null)
+				if (line.length() > 0)
+					count++;
+		} finally {
+			dis.close();
+		}
+		return count;
+	}
+	
 	public void remove() throws IOException, SecurityException {
-		for (TableSeg seg: tableIdx)
-			remove(dbDir+File.separator + seg.fileName);
-		remove(fileName + ".idx");
+		lock.writeLock().lock();
+		try {
+			stopCommitTimer();
+			closeWriter();
+			closeRollups();
+			journal.remove();
+			for (TableSeg seg: tableIdx) {
+				MappedSegment.release(dbDir+File.separator + seg.fileName);
+				remove(dbDir+File.separator + seg.fileName);
+			}
+			remove(fileName + ".idx");
+			for (RollupTier tier : rollups)
+				remove(fileName + ".rollup" + tier.getInterval());
+		} finally {
+			lock.writeLock().unlock();
+		}
 	}
 	
 	/**
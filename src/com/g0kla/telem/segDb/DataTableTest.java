@@ -0,0 +1,754 @@
+package com.g0kla.telem.segDb;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.g0kla.telem.data.ByteArrayLayout;
+import com.g0kla.telem.data.ConversionTable;
+import com.g0kla.telem.data.DataRecord;
+
+class DataTableTest {
+
+	File dir;
+	ByteArrayLayout layout;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		dir = Files.createTempDirectory("tabletest").toFile();
+		File layoutFile = new File(dir, "layout.csv");
+		Writer w = new FileWriter(layoutFile);
+		w.write("2,fields\n");
+		w.write("0,INT,value,16,-,0,NONE,0,0,0,value,test field\n");
+		w.write("1,BYTE,other,8,-,0,NONE,0,0,0,other,test field\n");
+		w.close();
+		layout = new ByteArrayLayout("test", layoutFile.getPath());
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		for (File f : dir.listFiles())
+			f.delete();
+		dir.delete();
+	}
+
+	DataRecord record(int resets, long uptime) throws Exception {
+		int[] data = {(int)(uptime & 0xff), (int)((uptime >> 8) & 0xff), resets};
+		return new DataRecord(layout, 1, resets, uptime, 0, data);
+	}
+
+	@Test
+	void testFieldIndex() throws Exception {
+		assertEquals(1, layout.getPositionByName("OTHER"));
+		assertEquals(ByteArrayLayout.ERROR_POSITION, layout.getPositionByName("missing"));
+		assertTrue(layout.hasFieldName("Value"));
+		DataRecord r = record(0, 300);
+		assertEquals(r.getRawValue("value"), r.getRawValue(0));
+		assertEquals(0, r.getRawValue("missing"));
+	}
+
+	@Test
+	void testMultiFieldGraphData() throws Exception {
+		for (String format : new String[] {ByteArrayLayout.FORMAT_CSV, ByteArrayLayout.FORMAT_BINARY}) {
+			layout.segmentFormat = format;
+			DataTable table = new DataTable(100, dir.getPath(), layout, "multi" + format);
+			for (int i=0; i < 3 * DataTable.MAX_SEGMENT_SIZE; i++)
+				table.save(record(0, i));
+			String[] names = {"other", "missing", "value"};
+			double[][][] all = table.getGraphData(names, 1500, 1, 0, 700, true, false, false);
+			assertEquals(names.length, all.length);
+			for (int f=0; f < names.length; f++) {
+				double[][] one = table.getGraphData(names[f], 1500, 1, 0, 700, true, false, false);
+				for (int col = 0; col <= DataTable.DATA_COL; col++)
+					assertArrayEquals(one[col], all[f][col], 0);
+			}
+			assertTrue(all[0][DataTable.UPTIME_COL] == all[2][DataTable.UPTIME_COL]);
+			table.close();
+		}
+	}
+
+	@Test
+	void testDecimatedGraphData() throws Exception {
+		DataTable table = new DataTable(100, dir.getPath(), layout, "decimate");
+		int total = 2 * DataTable.MAX_SEGMENT_SIZE;
+		for (int i=0; i < total; i++)
+			table.save(record(0, i));
+		String[] names = {"value", "other"};
+		double[][][] all = table.getGraphData(names, total, 1, 0, 0, true, false, false);
+		double[][][] dec = table.getGraphData(names, total, 1, 0, 0, true, false, 200);
+		assertEquals(200, dec[0][DataTable.DATA_COL].length);
+		assertTrue(dec[0][DataTable.UPTIME_COL] == dec[1][DataTable.UPTIME_COL]);
+		for (int f=0; f < names.length; f++) {
+			double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+			for (double v : all[f][DataTable.DATA_COL]) { min = Math.min(min, v); max = Math.max(max, v); }
+			double dmin = Double.MAX_VALUE, dmax = -Double.MAX_VALUE;
+			for (double v : dec[f][DataTable.DATA_COL]) { dmin = Math.min(dmin, v); dmax = Math.max(dmax, v); }
+			assertEquals(min, dmin, 0);
+			assertEquals(max, dmax, 0);
+		}
+		for (int i=1; i < dec[0][DataTable.UPTIME_COL].length; i++)
+			assertTrue(dec[0][DataTable.UPTIME_COL][i] > dec[0][DataTable.UPTIME_COL][i-1]);
+		// Fewer records than points are returned as they are
+		assertEquals(50, table.getGraphData(names, 50, 1, 0, 0, true, false, 200)[0][DataTable.DATA_COL].length);
+		table.close();
+	}
+
+	@Test
+	void testDecimatedWhileReading() throws Exception {
+		int total = 3 * DataTable.MAX_SEGMENT_SIZE + 77;
+		String[] names = {"value", "other", "missing"};
+		for (String format : new String[] {ByteArrayLayout.FORMAT_CSV, ByteArrayLayout.FORMAT_BINARY}) {
+			layout.segmentFormat = format; // the binary segments are read from the mapped files
+			DataTable table = new DataTable(100, dir.getPath(), layout, "scan" + format);
+			Random rand = new Random(3);
+			for (int i=0; i < total; i++) {
+				int[] data = {rand.nextInt(256), rand.nextInt(256), rand.nextInt(256)};
+				table.save(new DataRecord(layout, 1, i / 1000, i % 1000, 0, data));
+			}
+			for (boolean reverse : new boolean[] {false, true}) {
+				double[][][] all = table.getGraphData(names, 2000, 1, 1, 500, true, false, reverse);
+				double[][][] expected = MinMaxDecimator.decimate(all, 150);
+				double[][][] dec = table.getGraphData(names, 2000, 1, 1, 500, true, reverse, 300);
+				for (int f=0; f < names.length; f++)
+					for (int col=0; col < 3; col++)
+						assertArrayEquals(expected[f][col], dec[f][col], 0);
+			}
+			table.close();
+		}
+	}
+
+	@Test
+	void testRollupGraphData() throws Exception {
+		DataTable table = new DataTable(100, dir.getPath(), layout, "rollup");
+		table.setRollups(3600, 60);
+		int total = 10 * DataTable.MAX_SEGMENT_SIZE;
+		for (int i=0; i < total; i++)
+			table.save(record(0, 2*i));
+		DataRecord spike = record(0, 10001);
+		spike.fieldValue[0] = 50000;
+		table.save(spike);
+		String[] names = {"value", "other"};
+		// The hour tier has too few buckets for 100 pixels, so the minute tier is used
+		double[][][] dec = table.getGraphData(names, total+1, 1, 0, 0, true, false, 200);
+		assertEquals(200, dec[0][DataTable.DATA_COL].length);
+		assertEquals(0, dec[0][DataTable.UPTIME_COL][0], 0);
+		assertEquals(2*(total-1), dec[0][DataTable.UPTIME_COL][199], 0);
+		double max = -Double.MAX_VALUE;
+		for (double v : dec[0][DataTable.DATA_COL]) max = Math.max(max, v);
+		assertEquals(50000, max, 0);
+		table.close();
+
+		// A tier added to a table with data is not used until it is rebuilt
+		for (File f : dir.listFiles())
+			if (f.getName().contains(".rollup")) f.delete();
+		DataTable reload = new DataTable(100, dir.getPath(), layout, "rollup");
+		reload.setRollups(60, 3600);
+		double[][][] raw = reload.getGraphData(names, total+1, 1, 0, 0, true, false, 200);
+		assertFalse(Arrays.equals(dec[0][DataTable.UPTIME_COL], raw[0][DataTable.UPTIME_COL])); // the records are grouped differently
+		reload.rebuildRollups();
+		double[][][] rebuilt = reload.getGraphData(names, total+1, 1, 0, 0, true, false, 200);
+		for (int f=0; f < names.length; f++)
+			for (int col = 0; col <= DataTable.DATA_COL; col++)
+				assertArrayEquals(dec[f][col], rebuilt[f][col], 0);
+		reload.close();
+
+		DataTable reopened = new DataTable(100, dir.getPath(), layout, "rollup");
+		reopened.setRollups(60, 3600);
+		double[][][] saved = reopened.getGraphData(names, total+1, 1, 0, 0, true, false, 200);
+		assertArrayEquals(dec[0][DataTable.DATA_COL], saved[0][DataTable.DATA_COL], 0);
+		reopened.close();
+	}
+
+	@Test
+	void testRollupSavedWithoutClose() throws Exception {
+		DataTable table = new DataTable(100, dir.getPath(), layout, "rollupnoclose");
+		table.setRollups(3600, 60);
+		int total = 10 * DataTable.MAX_SEGMENT_SIZE;
+		for (int i=0; i < total; i++)
+			table.save(record(0, 2*i));
+		String[] names = {"value", "other"};
+		double[][][] dec = table.getGraphData(names, total, 1, 0, 0, true, false, 200);
+
+		// Opened again without closing the first table, as after a crash
+		DataTable reopened = new DataTable(100, dir.getPath(), layout, "rollupnoclose");
+		reopened.setRollups(60, 3600);
+		double[][][] saved = reopened.getGraphData(names, total, 1, 0, 0, true, false, 200);
+		for (int f=0; f < names.length; f++)
+			for (int col = 0; col <= DataTable.DATA_COL; col++)
+				assertArrayEquals(dec[f][col], saved[f][col], 0);
+		double[][][] scanned = MinMaxDecimator.decimate(reopened.getGraphData(names, total, 1, 0, 0, true, false, false), 100);
+		assertFalse(Arrays.equals(scanned[0][DataTable.UPTIME_COL], saved[0][DataTable.UPTIME_COL])); // so it was from the tier
+		reopened.close();
+		table.close();
+	}
+
+	@Test
+	void testRollupNotUsedForPolynomial() throws Exception {
+		File conversions = new File(dir, "conversions.csv");
+		Writer w = new FileWriter(conversions);
+		w.write("a,a,quadratic,16384,-256,1,0,0,0,x,0,0,turns at 128\n");
+		w.write("NOTES:\n");
+		w.close();
+		layout.setConversionTable(new ConversionTable(conversions.getPath()));
+		DataTable table = new DataTable(100, dir.getPath(), layout, "rollupconv");
+		table.setRollups(3600, 60);
+		int total = 10 * DataTable.MAX_SEGMENT_SIZE;
+		Random rand = new Random(5);
+		for (int i=0; i < total; i++) {
+			int[] data = {rand.nextInt(256), 0, rand.nextInt(256)};
+			table.save(new DataRecord(layout, 1, 0, 2*i, 0, data));
+		}
+		String[] names = {"value", "other"};
+		double[][][] expected = MinMaxDecimator.decimate(table.getGraphData(names, total, 1, 0, 0, false, false, false), 100);
+		double[][][] dec = table.getGraphData(names, total, 1, 0, 0, false, false, 200);
+		for (int f=0; f < names.length; f++)
+			for (int col = 0; col <= DataTable.DATA_COL; col++)
+				assertArrayEquals(expected[f][col], dec[f][col], 0);
+		table.close();
+	}
+
+	@Test
+	void testRecordsInRange() throws Exception {
+		DataTable table = new DataTable(100, dir.getPath(), layout, "range");
+		int total = 5 * DataTable.MAX_SEGMENT_SIZE;
+		for (int i=0; i < total; i++) {
+			DataRecord r = record(0, i);
+			r.fieldValue[0] = i / 10;
+			table.save(r);
+		}
+		assertEquals(110, table.getRecordsInRange("value", 250, 260, true).size());
+		table.close();
+
+		// The min and max are saved in the index, so a segment that can not match is not read.  If the first segment
+		// was read it would now give the same matches twice.
+		DataTable reload = new DataTable(100, dir.getPath(), layout, "range");
+		Files.copy(new File(dir, "range_0_2000.log").toPath(), new File(dir, "range_0_0.log").toPath(), StandardCopyOption.REPLACE_EXISTING);
+		ArrayList<DataRecord> found = reload.getRecordsInRange("value", 250, 260, true);
+		assertEquals(110, found.size());
+		assertEquals(2500, found.get(0).uptime);
+		assertEquals(2609, found.get(found.size()-1).uptime);
+		assertEquals(0, reload.getRecordsInRange("value", 5000, 6000, true).size());
+		assertEquals(0, reload.getRecordsInRange("missing", 0, 6000, true).size());
+		reload.close();
+	}
+
+	@Test
+	void testCursor() throws Exception {
+		DataTable table = new DataTable(100, dir.getPath(), layout, "cursor");
+		int total = 3 * DataTable.MAX_SEGMENT_SIZE;
+		for (int i=0; i < total; i++)
+			table.save(record(0, i));
+		RecordCursor c = table.getCursor(0, 500, 0, 2500, Integer.MAX_VALUE, false);
+		long expected = 500;
+		while (c.next())
+			assertEquals(expected++, c.getUptime());
+		assertEquals(2501, expected);
+
+		c = table.getCursor(0, 0, Integer.MAX_VALUE, Long.MAX_VALUE, 1500, true);
+		expected = total-1;
+		while (c.next()) {
+			assertEquals(expected, c.getUptime());
+			assertEquals(table.getFrame(1, expected, 0, false).fieldValue[0], c.getRawValue(0));
+			expected--;
+		}
+		assertEquals(total-1501, expected);
+
+		StringWriter out = new StringWriter();
+		assertEquals(11, table.exportCsv(out, 0, 995, 0, 1005, true));
+		String[] lines = out.toString().split("\n");
+		assertEquals(12, lines.length);
+		assertEquals("resets,uptime,type,value,other", lines[0]);
+		assertTrue(lines[1].startsWith("0,995,0,"));
+		table.close();
+	}
+
+	@Test
+	void testRowPages() throws Exception {
+		DataTable table = new DataTable(100, dir.getPath(), layout, "rows");
+		int total = 3 * DataTable.MAX_SEGMENT_SIZE;
+		for (int i=0; i < total; i++)
+			table.save(record(0, 2*i));
+		assertEquals(0, table.getRowNumber(0, 0));
+		assertEquals(1200, table.getRowNumber(0, 2400));
+		assertEquals(1201, table.getRowNumber(0, 2401));
+		assertEquals(total, table.getRowNumber(1, 0));
+		ArrayList<DataRecord> rows = table.getRows(900, 256);
+		assertEquals(256, rows.size());
+		for (int i=0; i < rows.size(); i++)
+			assertEquals(2*(900+i), rows.get(i).uptime);
+		assertEquals(10, table.getRows(total-10, 256).size());
+		table.close();
+	}
+
+	@Test
+	void testGroupCommit() throws Exception {
+		int total = 2 * DataTable.MAX_SEGMENT_SIZE + 500;
+		DataTable table = new DataTable(100, dir.getPath(), layout, "test");
+		table.setGroupCommit(250, 60000);
+		for (int i=0; i < total; i++)
+			assertTrue(table.save(record(0, i)));
+		assertFalse(table.save(record(0, 10)));
+		assertEquals(total, table.getSize());
+		table.close();
+
+		DataTable reload = new DataTable(100, dir.getPath(), layout, "test");
+		assertEquals(total, reload.getSize());
+		assertTrue(reload.hasFrame(1, total-1, 0));
+		assertEquals(total-1, reload.getLatest().uptime);
+		double[][] graph = reload.getGraphData("value", total, 1, 0, 0, true, false, false);
+		assertEquals(total, graph[DataTable.DATA_COL].length);
+		for (int i=0; i < total; i++)
+			assertEquals(i & 0xffff, graph[DataTable.DATA_COL][i], 0);
+	}
+
+	@Test
+	void testGroupCommitTimer() throws Exception {
+		DataTable table = new DataTable(100, dir.getPath(), layout, "timer");
+		final ArrayList<Integer> groups = new ArrayList<Integer>();
+		table.addTableListener(new TableListener() {
+			public void recordsAdded(TableChange change) {
+				synchronized (groups) {
+					groups.add(change.size());
+				}
+			}
+		}, new java.util.concurrent.Executor() {
+			public void execute(Runnable r) {
+				r.run();
+			}
+		});
+		table.setGroupCommit(100, 50);
+		for (int i=0; i < 10; i++)
+			table.save(record(0, i));
+		// No more records arrive, so the timer commits the group
+		for (int wait=0; wait < 100; wait++) {
+			synchronized (groups) {
+				if (!groups.isEmpty()) break;
+			}
+			Thread.sleep(20);
+		}
+		synchronized (groups) {
+			assertEquals(Arrays.asList(10), groups);
+		}
+		DataTable reader = new DataTable(100, dir.getPath(), layout, "timer");
+		assertEquals(10, reader.getSize()); // from the journal, without a flush
+		reader.close();
+		table.close();
+	}
+
+	@Test
+	void testTableListener() throws Exception {
+		final ArrayList<TableChange> changes = new ArrayList<TableChange>();
+		TableListener listener = new TableListener() {
+			public void recordsAdded(TableChange change) {
+				changes.add(change);
+			}
+		};
+		// Hold the listener until we run it, as a busy Swing thread would
+		final ArrayList<Runnable> queued = new ArrayList<Runnable>();
+		java.util.concurrent.Executor later = new java.util.concurrent.Executor() {
+			public void execute(Runnable r) {
+				queued.add(r);
+			}
+		};
+		DataTable table = new DataTable(100, dir.getPath(), layout, "listen");
+		table.addTableListener(listener, later);
+		for (int i=0; i < 5; i++)
+			table.save(record(0, 10 + i));
+		table.save(record(0, 3)); // late
+		assertFalse(table.save(record(0, 12))); // duplicates are not passed on
+		assertEquals(1, queued.size());
+		queued.remove(0).run();
+		assertEquals(1, changes.size());
+		TableChange c = changes.get(0);
+		assertEquals(6, c.size());
+		assertEquals(3, c.getFromUptime());
+		assertEquals(14, c.getToUptime());
+		assertEquals(3, c.getLatest().uptime);
+
+		// With group commit a listener hears about each group once it is committed
+		final ArrayList<Integer> groups = new ArrayList<Integer>();
+		TableListener direct = new TableListener() {
+			public void recordsAdded(TableChange change) {
+				groups.add(change.size());
+			}
+		};
+		table.addTableListener(direct, new java.util.concurrent.Executor() {
+			public void execute(Runnable r) {
+				r.run();
+			}
+		});
+		table.setGroupCommit(100, 60000);
+		for (int i=0; i < 250; i++)
+			table.save(record(1, i));
+		assertEquals(Arrays.asList(100, 100), groups);
+		table.flush();
+		assertEquals(Arrays.asList(100, 100, 50), groups);
+		// The listener that has not run yet gets the three groups as one change
+		assertEquals(1, queued.size());
+		queued.remove(0).run();
+		assertEquals(2, changes.size());
+		assertEquals(250, changes.get(1).size());
+		assertEquals(1, changes.get(1).getFromReset());
+		assertEquals(249, changes.get(1).getToUptime());
+
+		assertTrue(table.removeTableListener(listener));
+		table.save(record(2, 0));
+		table.flush();
+		assertEquals(0, queued.size());
+		assertEquals(4, groups.size());
+		table.close();
+
+		// A listener added part way through a group hears about the whole group
+		DataTable grouped = new DataTable(100, dir.getPath(), layout, "listenlate");
+		grouped.setGroupCommit(100, 60000);
+		for (int i=0; i < 30; i++)
+			grouped.save(record(0, i));
+		final ArrayList<Integer> late = new ArrayList<Integer>();
+		grouped.addTableListener(new TableListener() {
+			public void recordsAdded(TableChange change) {
+				late.add(change.size());
+			}
+		}, new java.util.concurrent.Executor() {
+			public void execute(Runnable r) {
+				r.run();
+			}
+		});
+		for (int i=30; i < 50; i++)
+			grouped.save(record(0, i));
+		grouped.flush();
+		assertEquals(Arrays.asList(50), late);
+		grouped.close();
+	}
+
+	@Test
+	void testIndexJournal() throws Exception {
+		int total = DataTable.MAX_SEGMENT_SIZE + 200;
+		DataTable table = new DataTable(100, dir.getPath(), layout, "test");
+		for (int i=0; i < total; i++)
+			table.save(record(1, i));
+		// Not closed, so the counts are only in the journal.  Leave a partial line at the end as if we crashed.
+		File jnl = new File(dir, "test.idx.jnl");
+		assertTrue(jnl.length() > 0);
+		FileWriter w = new FileWriter(jnl, true);
+		w.write("D,test_1_0.l");
+		w.close();
+		DataTable reload = new DataTable(100, dir.getPath(), layout, "test");
+		assertEquals(total, reload.getSize());
+		assertEquals(0, jnl.length()); // compacted when it was replayed
+		reload.close();
+
+		// Lose the index completely and rebuild it from the segment files
+		new File(dir, "test.idx").delete();
+		DataTable lost = new DataTable(100, dir.getPath(), layout, "test");
+		assertEquals(0, lost.getSize());
+		lost.recoverIdx();
+		assertEquals(total, lost.getSize());
+		assertEquals(total-1, lost.getLatest().uptime);
+		lost.close();
+		assertEquals(total, new DataTable(100, dir.getPath(), layout, "test").getSize());
+	}
+
+	@Test
+	void testIndexSavedButJournalNotTruncated() throws Exception {
+		int total = DataTable.MAX_SEGMENT_SIZE + 200;
+		DataTable table = new DataTable(100, dir.getPath(), layout, "test");
+		for (int i=0; i < total; i++)
+			table.save(record(1, i));
+		table.flush();
+		File jnl = new File(dir, "test.idx.jnl");
+		File old = new File(dir, "old.jnl");
+		Files.copy(jnl.toPath(), old.toPath());
+		table.close(); // compacts the index and empties the journal
+		// As if we stopped after the new index was moved into place but before the journal was truncated
+		Files.copy(old.toPath(), jnl.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		old.delete();
+		DataTable reload = new DataTable(100, dir.getPath(), layout, "test");
+		assertEquals(total, reload.getSize());
+		assertEquals(0, jnl.length());
+		for (int i=total; i < total + 10; i++)
+			reload.save(record(1, i));
+		reload.close();
+		assertEquals(total + 10, new DataTable(100, dir.getPath(), layout, "test").getSize());
+	}
+
+	@Test
+	void testBinarySegments() throws Exception {
+		int total = DataTable.MAX_SEGMENT_SIZE + 300;
+		layout.segmentFormat = ByteArrayLayout.FORMAT_BINARY;
+		DataTable table = new DataTable(100, dir.getPath(), layout, "bin");
+		for (int i=0; i < 100; i++)
+			table.save(record(0, i));
+		table.setGroupCommit(64, 60000);
+		for (int i=100; i < total; i++)
+			table.save(record(0, i));
+		table.close();
+		assertTrue(new File(dir, "bin_0_0.bin").exists());
+		assertEquals(BinarySegment.HEADER_LENGTH + DataTable.MAX_SEGMENT_SIZE * BinarySegment.getRecordLength(2), new File(dir, "bin_0_0.bin").length());
+		checkTable("bin", total);
+
+		// Convert it to CSV and back again
+		layout.segmentFormat = ByteArrayLayout.FORMAT_CSV;
+		assertEquals(2, new DataTable(100, dir.getPath(), layout, "bin").convertSegments());
+		assertFalse(new File(dir, "bin_0_0.bin").exists());
+		checkTable("bin", total);
+		layout.segmentFormat = ByteArrayLayout.FORMAT_BINARY;
+		DataTable table2 = new DataTable(100, dir.getPath(), layout, "bin");
+		assertEquals(2, table2.convertSegments());
+		assertEquals(0, table2.convertSegments());
+		checkTable("bin", total);
+
+		// A record cut short at the end is dropped and the next one is appended after the last good record
+		FileWriter w = new FileWriter(new File(dir, table2Seg()), true);
+		w.write("xx");
+		w.close();
+		assertTrue(table2.save(record(0, total)));
+		table2.close();
+		checkTable("bin", total+1);
+	}
+
+	private String table2Seg() {
+		return "bin_0_" + DataTable.MAX_SEGMENT_SIZE + ".bin";
+	}
+
+	private void checkTable(String name, int total) throws Exception {
+		DataTable reload = new DataTable(100, dir.getPath(), layout, name);
+		assertEquals(total, reload.getSize());
+		double[][] graph = reload.getGraphData("value", total, 1, 0, 0, true, false, false);
+		assertEquals(total, graph[DataTable.DATA_COL].length);
+		for (int i=0; i < total; i++) {
+			assertEquals(i & 0xffff, graph[DataTable.DATA_COL][i], 0);
+			assertEquals(i, graph[DataTable.UPTIME_COL][i], 0);
+		}
+		reload.close();
+	}
+
+	@Test
+	void testMappedGraphData() throws Exception {
+		layout.segmentFormat = ByteArrayLayout.FORMAT_BINARY;
+		int total = 3 * DataTable.MAX_SEGMENT_SIZE + 500;
+		// Records in order, except for some gaps in the last segment that are filled later so its rows are out of order
+		DataTable table = new DataTable(100, dir.getPath(), layout, "map");
+		table.setGroupCommit(100, 60000);
+		for (int i=0; i < total; i++)
+			if (i < 3 * DataTable.MAX_SEGMENT_SIZE || i % 10 != 5)
+				table.save(record(i / 1000, 2 * (i % 1000)));
+		for (int i=3 * DataTable.MAX_SEGMENT_SIZE + 5; i < total; i+=10)
+			table.save(record(i / 1000, 2 * (i % 1000)));
+		compareMapped(table);
+		table.close();
+
+		// Late records that land in earlier segments, so the segments overlap and the records have to be loaded
+		DataTable overlap = new DataTable(100, dir.getPath(), layout, "overlap");
+		for (int i=0; i < total; i++)
+			if (i % 10 != 5)
+				overlap.save(record(i / 1000, 2 * (i % 1000)));
+		for (int i=5; i < 800; i+=10)
+			overlap.save(record(i / 1000, 2 * (i % 1000)));
+		compareMapped(overlap);
+		overlap.close();
+
+		// Only the segments for the range are mapped
+		DataTable recent = new DataTable(100, dir.getPath(), layout, "recent");
+		for (int i=0; i < total; i++)
+			recent.save(record(0, i));
+		recent.flush();
+		int before = MappedSegment.getMappingCount();
+		double[][] latest = recent.getGraphData("value", 10, 1, 0, 0, true, false, true);
+		assertEquals(total-1, latest[DataTable.UPTIME_COL][9]);
+		assertEquals(Math.min(before + 1, MappedSegment.MAX_MAPPINGS), MappedSegment.getMappingCount());
+		recent.close();
+	}
+
+	private void compareMapped(DataTable table) throws Exception {
+		java.util.Random rand = new java.util.Random(3);
+		for (int q=0; q < 200; q++) {
+			int period = 1 + rand.nextInt(2500);
+			int resets = rand.nextInt(4);
+			long uptime = rand.nextInt(2100);
+			boolean reverse = rand.nextInt(4) == 0;
+			// Position data is not mapped, so asking for it returns the data from the loaded records
+			double[][] mapped = table.getGraphData("value", period, 1, resets, uptime, true, false, reverse);
+			double[][] loaded = table.getGraphData("value", period, 1, resets, uptime, true, true, reverse);
+			for (int col = 0; col <= DataTable.DATA_COL; col++)
+				assertArrayEquals(loaded[col], mapped[col], 0);
+		}
+	}
+
+	@Test
+	void testColumnar() throws Exception {
+		DataTable rows = new DataTable(100, dir.getPath(), layout, "rows");
+		DataTable cols = new DataTable(100, dir.getPath(), layout, "cols");
+		assertTrue(cols.setColumnar(true));
+		java.util.Random rand = new java.util.Random(5);
+		for (int n=0; n < 4000; n++) {
+			DataRecord r = record(rand.nextInt(3), rand.nextInt(3000));
+			assertEquals(rows.save(r), cols.save(r));
+		}
+		assertEquals(rows.getSize(), cols.getSize());
+		for (int q=0; q < 100; q++) {
+			int period = 1 + rand.nextInt(3000);
+			int resets = rand.nextInt(3);
+			long uptime = rand.nextInt(3000);
+			boolean reverse = rand.nextInt(4) == 0;
+			double[][] a = rows.getGraphData("value", period, 1, resets, uptime, true, false, reverse);
+			double[][] b = cols.getGraphData("value", period, 1, resets, uptime, true, false, reverse);
+			for (int col = 0; col <= DataTable.DATA_COL; col++)
+				assertArrayEquals(a[col], b[col], 0);
+			String[][] pa = rows.getPayloadData(period, 1, resets, uptime, 2, true, reverse);
+			String[][] pb = cols.getPayloadData(period, 1, resets, uptime, 2, true, reverse);
+			assertTrue(java.util.Arrays.deepEquals(pa, pb));
+			assertEquals(rows.hasFrame(1, uptime, resets), cols.hasFrame(1, uptime, resets));
+			DataRecord fa = rows.getFrame(1, uptime, resets, 0, true);
+			DataRecord fb = cols.getFrame(1, uptime, resets, 0, true);
+			assertEquals(fa == null, fb == null);
+			if (fa != null)
+				assertEquals(0, fa.compareTo(fb));
+		}
+		// A reset that does not fit in the columns moves the table back to DataRecords
+		assertTrue(cols.save(record(40000, 1)));
+		assertFalse(cols.isColumnar());
+		assertEquals(40000, cols.getLatest().resets);
+	}
+
+	@Test
+	void testSegmentCache() throws Exception {
+		DataTable all = new DataTable(100, dir.getPath(), layout, "cache");
+		int total = 10 * DataTable.MAX_SEGMENT_SIZE;
+		for (int i=0; i < total; i++)
+			all.save(record(i / 2500, 2 * (i % 2500)));
+		all.close();
+
+		DataTable bounded = new DataTable(100, dir.getPath(), layout, "cache");
+		bounded.setColumnar(true);
+		bounded.setCacheSize(2500);
+		DataTable unbounded = new DataTable(100, dir.getPath(), layout, "cache");
+		java.util.Random rand = new java.util.Random(11);
+		for (int q=0; q < 300; q++) {
+			int period = 1 + rand.nextInt(1500);
+			// An odd uptime is never the start of a segment, so the query loads the segments it needs, whatever else
+			// happens to be loaded
+			int resets = 1 + rand.nextInt(3);
+			long uptime = 1 + 2 * rand.nextInt(2500);
+			boolean reverse = rand.nextInt(5) == 0;
+			double[][] a = unbounded.getGraphData("value", period, 1, resets, uptime, true, false, reverse);
+			double[][] b = bounded.getGraphData("value", period, 1, resets, uptime, true, false, reverse);
+			for (int col = 0; col <= DataTable.DATA_COL; col++)
+				assertArrayEquals(a[col], b[col], 0);
+			assertEquals(unbounded.hasFrame(1, uptime-1, resets), bounded.hasFrame(1, uptime-1, resets));
+		}
+		assertTrue(bounded.getCacheEvictions() > 0);
+		assertTrue(bounded.getCacheHits() > 0);
+		assertTrue(bounded.getCacheMisses() > 0);
+		assertTrue(bounded.getLoadedRecords() < unbounded.getLoadedRecords());
+		unbounded.close();
+
+		// Late records land in earlier segments, so those segments overlap and have to be unloaded together
+		for (int i=5; i < total; i+=40)
+			assertTrue(bounded.save(record(i / 2500, 2 * (i % 2500) + 1)));
+		assertFalse(bounded.save(record(0, 11)));
+		bounded.setCacheSize(1);
+		assertTrue(bounded.getLoadedRecords() <= 2 * DataTable.MAX_SEGMENT_SIZE); // only the head segment, which may overlap another, is kept
+		assertTrue(bounded.hasFrame(1, 11, 0));
+		double[][] a = bounded.getGraphData("value", total * 2, 1, 0, 0, true, false, false);
+		bounded.close();
+		DataTable fresh = new DataTable(100, dir.getPath(), layout, "cache");
+		double[][] b = fresh.getGraphData("value", total * 2, 1, 0, 0, true, false, false);
+		assertEquals(total + (total - 5 + 39) / 40, b[0].length);
+		for (int col = 0; col <= DataTable.DATA_COL; col++)
+			assertArrayEquals(b[col], a[col], 0);
+		fresh.close();
+	}
+
+	@Test
+	void testConcurrentReaders() throws Exception {
+		final DataTable table = new DataTable(100, dir.getPath(), layout, "concurrent");
+		table.setCacheSize(1500); // so the readers also unload segments while the writer saves
+		final int total = 8 * DataTable.MAX_SEGMENT_SIZE;
+		final java.util.concurrent.atomic.AtomicBoolean writing = new java.util.concurrent.atomic.AtomicBoolean(true);
+		final java.util.concurrent.atomic.AtomicInteger saved = new java.util.concurrent.atomic.AtomicInteger();
+		final java.util.List<Throwable> errors = java.util.Collections.synchronizedList(new ArrayList<Throwable>());
+
+		Thread writer = new Thread(new Runnable() {
+			public void run() {
+				try {
+					for (int i=0; i < total; i++) {
+						assertTrue(table.save(record(0, 2 * i)));
+						saved.set(i+1);
+					}
+				} catch (Throwable e) {
+					errors.add(e);
+				} finally {
+					writing.set(false);
+				}
+			}
+		});
+		Thread[] readers = new Thread[4];
+		for (int t=0; t < readers.length; t++) {
+			final int kind = t;
+			readers[t] = new Thread(new Runnable() {
+				public void run() {
+					java.util.Random rand = new java.util.Random(kind);
+					try {
+						while (writing.get()) {
+							// Stay inside the records that are saved.  A key past the end would make a new segment ahead of the writer
+							int n = saved.get();
+							if (n == 0) continue;
+							long uptime = 2 * rand.nextInt(n);
+							if (kind == 0) {
+								double[][] data = table.getGraphData("value", 300, 1, 0, uptime, true, false, rand.nextBoolean());
+								for (int i=0; i < data[0].length; i++) {
+									assertEquals(data[DataTable.UPTIME_COL][i], data[DataTable.DATA_COL][i], 0);
+									if (i > 0) assertTrue(data[DataTable.UPTIME_COL][i] > data[DataTable.UPTIME_COL][i-1]);
+								}
+							} else if (kind == 1) {
+								DataRecord r = table.getFrame(1, uptime, 0, false);
+								assertEquals(uptime, r.uptime);
+							} else if (kind == 2) {
+								RecordCursor c = table.getCursor(0, uptime, 0, 2 * (n-1), 500, false);
+								long last = uptime - 2;
+								while (c.next()) {
+									assertEquals(last + 2, c.getUptime());
+									last = c.getUptime();
+								}
+							} else {
+								int size = table.getSize();
+								ArrayList<DataRecord> rows = table.getRows(Math.max(0, size - 200), 200);
+								for (int i=1; i < rows.size(); i++)
+									assertEquals(rows.get(i-1).uptime + 2, rows.get(i).uptime);
+							}
+						}
+					} catch (Throwable e) {
+						errors.add(e);
+					}
+				}
+			});
+		}
+		for (Thread r : readers)
+			r.start();
+		writer.start();
+		writer.join();
+		for (Thread r : readers)
+			r.join();
+		if (errors.size() > 0)
+			throw new AssertionError(errors.get(0));
+
+		assertEquals(total, table.getSize());
+		double[][] all = table.getGraphData("value", total, 1, 0, 0, true, false, false);
+		assertEquals(total, all[0].length);
+		for (int i=0; i < total; i++)
+			assertEquals(2 * i, all[DataTable.UPTIME_COL][i], 0);
+		table.close();
+	}
+}
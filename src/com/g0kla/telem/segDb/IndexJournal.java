@@ -0,0 +1,191 @@
+package com.g0kla.telem.segDb;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.StringTokenizer;
+
+import com.g0kla.telem.data.ByteArrayLayout;
+
+/**
+ *
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2018 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * An append only log of the changes to a table index, so that we do not rewrite the whole index every time a
+ * record is saved.  The lines are:
+ *   S,resets,uptime,records,fileName[,format]   a segment was created
+ *   D,fileName,delta                              records were added to a segment
+ * The index is the last compacted .idx file with the journal replayed on top of it.  When the table compacts
+ * the index it rewrites the .idx file and then truncates the journal.
+ *
+ * The journal starts with G,generation and the .idx file starts with the generation of the next journal.  If we
+ * stop after the new .idx file is in place but before the journal is truncated, then the old journal has a lower
+ * generation than the index and is not replayed, because its changes are already counted in the index.
+ *
+ */
+class IndexJournal {
+	private static final Charset CHARSET = Charset.defaultCharset();
+	public static final String EXT = ".jnl";
+	private final File file;
+	private FileChannel channel;
+	private int entries = 0; // entries written since the journal was last truncated
+	private long generation = 0;
+
+	IndexJournal(String idxFileName) {
+		file = new File(idxFileName + EXT);
+	}
+
+	int getEntries() { return entries; }
+	long getGeneration() { return generation; }
+
+	void segmentCreated(TableSeg seg) throws IOException {
+		write("S," + seg.toFile() + "\n");
+	}
+
+	void recordsAdded(TableSeg seg, int delta) throws IOException {
+		write("D," + seg.fileName + "," + delta + "\n");
+	}
+
+	private void write(String line) throws IOException {
+		if (channel == null)
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		if (channel.size() == 0)
+			line = "G," + generation + "\n" + line;
+		ByteBuffer bytes = CHARSET.encode(line);
+		while (bytes.hasRemaining())
+			channel.write(bytes);
+		entries++;
+	}
+
+	/**
+	 * Force the journal to disk
+	 * @throws IOException
+	 */
+	void sync() throws IOException {
+		if (channel != null)
+			channel.force(false);
+	}
+
+	/**
+	 * Replay the journal onto the segments loaded from the index.  A line that is cut short, because we stopped
+	 * while it was being written, is ignored along with anything after it.  A journal from before the index was
+	 * last compacted is emptied rather than replayed.
+	 * @param tableIdx
+	 * @param idxGeneration - the generation stamped on the index
+	 * @return the number of entries that were replayed
+	 * @throws IOException
+	 */
+	int replay(SortedArrayList<TableSeg> tableIdx, long idxGeneration) throws IOException {
+		generation = idxGeneration;
+		if (!file.exists()) return 0;
+		HashMap<String, TableSeg> segs = new HashMap<String, TableSeg>();
+		for (TableSeg seg : tableIdx)
+			segs.put(seg.fileName, seg);
+		int count = 0;
+		BufferedReader dis = new BufferedReader(new FileReader(file));
+		try {
+			String line = dis.readLine();
+			if (line != null && line.startsWith("G,")) {
+				long journalGeneration;
+				try {
+					journalGeneration = Long.parseLong(line.substring(2).trim());
+				} catch (NumberFormatException e) {
+					journalGeneration = -1; // the header was cut short, so nothing after it was written
+				}
+				if (journalGeneration < idxGeneration) {
+					dis.close();
+					truncate(idxGeneration); // already counted in the index
+					return 0;
+				}
+				generation = journalGeneration;
+				line = dis.readLine();
+			}
+			for (; line != null; line = dis.readLine()) {
+				try {
+					StringTokenizer st = new StringTokenizer(line, ",");
+					String op = st.nextToken();
+					if (op.equals("S")) {
+						int resets = Integer.parseInt(st.nextToken());
+						long uptime = Long.parseLong(st.nextToken());
+						int records = Integer.parseInt(st.nextToken());
+						String name = st.nextToken();
+						String format = st.hasMoreTokens() ? st.nextToken() : ByteArrayLayout.FORMAT_CSV;
+						if (!segs.containsKey(name)) {
+							TableSeg seg = new TableSeg(resets, uptime, name, records, format);
+							seg.readStats(st);
+							tableIdx.add(seg);
+							segs.put(name, seg);
+						}
+					} else if (op.equals("D")) {
+						String name = st.nextToken();
+						int delta = Integer.parseInt(st.nextToken());
+						TableSeg seg = segs.get(name);
+						if (seg != null)
+							seg.records += delta;
+					} else
+						break;
+					count++;
+				} catch (RuntimeException e) {
+					break; // NoSuchElement or NumberFormat from a partial line at the end
+				}
+			}
+		} finally {
+			dis.close();
+		}
+		entries = count;
+		return count;
+	}
+
+	/**
+	 * Empty the journal and start a new generation.  Only call this once the index file holds everything that was
+	 * in it and is stamped with the new generation.
+	 * @param newGeneration
+	 * @throws IOException
+	 */
+	void truncate(long newGeneration) throws IOException {
+		generation = newGeneration;
+		if (channel != null) {
+			channel.truncate(0);
+			channel.force(false);
+		} else if (file.exists())
+			DataTable.remove(file.getPath());
+		entries = 0;
+	}
+
+	void close() throws IOException {
+		if (channel != null) {
+			try {
+				channel.close();
+			} finally {
+				channel = null;
+			}
+		}
+	}
+
+	void remove() throws IOException {
+		close();
+		DataTable.remove(file.getPath());
+		entries = 0;
+	}
+}
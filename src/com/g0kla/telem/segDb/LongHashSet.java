@@ -0,0 +1,166 @@
+package com.g0kla.telem.segDb;
+
+import java.util.Arrays;
+
+/**
+ *
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2018 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * A set of primitive longs.  This uses open addressing with linear probing, so nothing is boxed and a lookup
+ * is usually a single array access.  Slots that hold 0 are empty, so the key 0 is tracked with a separate flag.
+ * Removal shifts the following entries back, rather than leaving tombstones, so the table does not degrade when
+ * records are unloaded and reloaded.
+ *
+ */
+public class LongHashSet {
+	private static final int MIN_CAPACITY = 16;
+	private long[] keys;
+	private int size; // number of non zero keys in the table
+	private boolean hasZero;
+	private int mask;
+	private int resizeAt;
+
+	public LongHashSet() {
+		this(MIN_CAPACITY);
+	}
+
+	public LongHashSet(int expected) {
+		int cap = MIN_CAPACITY;
+		while (cap * 3 / 4 < expected) cap = cap << 1;
+		allocate(cap);
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		mask = capacity - 1;
+		resizeAt = capacity * 3 / 4;
+	}
+
+	/**
+	 * Spread the bits of the key so that keys that differ only in the high bits, like the packed record keys,
+	 * land in different slots
+	 */
+	private static int hash(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return (int)key;
+	}
+
+	public int size() { return hasZero ? size + 1 : size; }
+	public boolean isEmpty() { return size() == 0; }
+
+	public boolean contains(long key) {
+		if (key == 0) return hasZero;
+		int i = hash(key) & mask;
+		long k;
+		while ((k = keys[i]) != 0) {
+			if (k == key) return true;
+			i = (i + 1) & mask;
+		}
+		return false;
+	}
+
+	/**
+	 * Add the key to the set
+	 * @param key
+	 * @return true if the key was added, false if it was already in the set
+	 */
+	public boolean add(long key) {
+		if (key == 0) {
+			if (hasZero) return false;
+			hasZero = true;
+			return true;
+		}
+		int i = hash(key) & mask;
+		long k;
+		while ((k = keys[i]) != 0) {
+			if (k == key) return false;
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		if (++size > resizeAt)
+			rehash(keys.length << 1);
+		return true;
+	}
+
+	/**
+	 * Remove the key from the set
+	 * @param key
+	 * @return true if the key was in the set
+	 */
+	public boolean remove(long key) {
+		if (key == 0) {
+			if (!hasZero) return false;
+			hasZero = false;
+			return true;
+		}
+		int i = hash(key) & mask;
+		long k;
+		while ((k = keys[i]) != 0) {
+			if (k == key) {
+				shiftBack(i);
+				size--;
+				return true;
+			}
+			i = (i + 1) & mask;
+		}
+		return false;
+	}
+
+	/**
+	 * Close the gap at slot i by moving back any later entry in the probe run that can legally live there
+	 */
+	private void shiftBack(int gap) {
+		int i = gap;
+		while (true) {
+			i = (i + 1) & mask;
+			long k = keys[i];
+			if (k == 0) break;
+			int home = hash(k) & mask;
+			// The entry can move to the gap if its home slot is not cyclically between the gap and where it is now
+			if (((i - home) & mask) >= ((i - gap) & mask)) {
+				keys[gap] = k;
+				gap = i;
+			}
+		}
+		keys[gap] = 0;
+	}
+
+	private void rehash(int capacity) {
+		long[] old = keys;
+		allocate(capacity);
+		for (long k : old) {
+			if (k != 0) {
+				int i = hash(k) & mask;
+				while (keys[i] != 0)
+					i = (i + 1) & mask;
+				keys[i] = k;
+			}
+		}
+	}
+
+	public void clear() {
+		if (size > 0)
+			Arrays.fill(keys, 0L);
+		size = 0;
+		hasZero = false;
+	}
+}
@@ -5,7 +5,8 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -14,8 +15,6 @@ import java.util.StringTokenizer;
 import com.g0kla.telem.data.DataRecord;
 import com.g0kla.telem.data.LayoutLoadException;
 
-import java.util.Map.Entry;
-
 /**
  * @author chris.e.thompson g0kla/ac2cz
  *
@@ -36,17 +35,58 @@ import java.util.Map.Entry;
  *
  *
  * A table of values that can be used to interpolate a final reading
- * We store the reference values in a file and read on startup.  The values are read into a Map sorted
- * by the key.
+ * We store the reference values in a file and read on startup.  The values are read into a Map in file order.
  *
- * To look up a value we find the nearest key value by iterating over the map, then return the interpolated value
- * 
+ * Before the first lookup the map is frozen into arrays sorted by key, and a second pair of arrays sorted by value
+ * for the reverse lookup.  A lookup is then a binary search and a linear interpolation.  If the keys cover a small
+ * range, such as the counts from a 12 bit ADC, then every value in the range is calculated when the table is frozen
+ * and the lookup is an array index.  If entries are added to the map later then it is frozen again.
  *
  */
 public class LookUpTable {
+	public static final int MAX_DENSE_RANGE = 4096; // the largest range of keys that is calculated in advance
 	
 	public String name; // the name, which is stored in the spacecraft file and used to index the tables
 	protected Map<Integer, Double> table = new LinkedHashMap<Integer, Double>();
+	private volatile Frozen frozen = null;
+	
+	/**
+	 * The table as sorted arrays.  It is not changed once it is built, so it can be shared between threads.
+	 */
+	private static class Frozen {
+		final int size;
+		final int[] keys; // ascending
+		final double[] values;
+		final double[] reverseKeys; // the values, ascending
+		final int[] reverseValues; // the keys in the order of reverseKeys
+		double[] dense = null; // the value of every key from keys[0] to keys[size-1]
+		
+		Frozen(Map<Integer, Double> table) {
+			size = table.size();
+			keys = new int[size];
+			values = new double[size];
+			reverseKeys = new double[size];
+			reverseValues = new int[size];
+			Integer[] sorted = table.keySet().toArray(new Integer[size]);
+			Arrays.sort(sorted);
+			for (int i=0; i < size; i++) {
+				keys[i] = sorted[i];
+				values[i] = table.get(sorted[i]);
+			}
+			Integer[] byValue = new Integer[size];
+			for (int i=0; i < size; i++)
+				byValue[i] = i;
+			Arrays.sort(byValue, new Comparator<Integer>() {
+				public int compare(Integer a, Integer b) {
+					return Double.compare(values[a], values[b]);
+				}
+			});
+			for (int i=0; i < size; i++) {
+				reverseKeys[i] = values[byValue[i]];
+				reverseValues[i] = keys[byValue[i]];
+			}
+		}
+	}
 
 	/**
 	 * Called for a static table where the values are not loaded from a file
@@ -74,16 +114,40 @@ public class LookUpTable {
 	 * @param y1
 	 * @return
 	 */
-	private double linearInterpolation(double x, double x0, double x1, double y0, double y1) {
+	private static double linearInterpolation(double x, double x0, double x1, double y0, double y1) {
 		double y = y0 + (y1 - y0) * ((x - x0)/(x1 - x0));
 		return y;
 	}
+	
+	/**
+	 * Build the sorted arrays from the map.  This is called before the first lookup, and again if the map has grown,
+	 * but a table that changes the values of existing keys should call it after the change.
+	 */
+	public void freeze() {
+		Frozen f = new Frozen(table);
+		long range = f.size == 0 ? 0 : (long)f.keys[f.size-1] - f.keys[0] + 1;
+		if (f.size > 1 && range <= MAX_DENSE_RANGE) {
+			double[] dense = new double[(int)range];
+			for (int i=0; i < dense.length; i++)
+				dense[i] = interpolate(f.keys, f.values, f.size, f.keys[0] + i);
+			f.dense = dense;
+		}
+		frozen = f;
+	}
+	
+	private Frozen getFrozen() {
+		Frozen f = frozen;
+		if (f == null || f.size != table.size()) {
+			freeze();
+			f = frozen;
+		}
+		return f;
+	}
 		
 	/**
-	 * Look up a value from the table.  We start from the top of the table.  The keys are in ascending order
-	 * with the lowest value first.  So we search for the first key that is greater than the key we are 
-	 * looking up.  Then we run a linear interpolation between the previous key and the key that is greater than
-	 * our lookup key.
+	 * Look up a value from the table.  The keys are in ascending order with the lowest value first.  So we search for
+	 * the first key that is greater than the key we are looking up.  Then we run a linear interpolation between the
+	 * previous key and the key that is greater than our lookup key.
 	 * 
 	 * If the lookup key is less than the first key in the table then we must extrapolate
 	 * If the lookup key is greater than the last key in the table we must extrapolate past the end
@@ -91,101 +155,96 @@ public class LookUpTable {
 	 * @return
 	 */
 	public double lookupValue(int lookUpKey) {
-		Iterator<Entry<Integer, Double>> it = table.entrySet().iterator();
-		double lastValue = 0;
-		int lastKey = 0;
-		double prevValue = 0;
-		int prevKey = 0;
-		Entry<Integer, Double> pairs = null;
-		int key;
-		boolean firstKey = true;
-		double value = (double)DataRecord.ERROR_VALUE;
-	    while (it.hasNext()) {
-	        pairs = it.next();
-	        key = (Integer)pairs.getKey();
-	        value = (Double)pairs.getValue(); 
-	        if (firstKey) {
-	        	firstKey = false;
-	        	if (lookUpKey < key) {
-	        		
-	        		// store the values
-	        		lastKey = key;
-	    	        lastValue = value;
-	        		// get the next set
-	    	        pairs = it.next();
-	    	        key = (Integer)pairs.getKey();
-	    	        value = (Double)pairs.getValue();
-	    	        // and extrapolate from there
-	        		value = linearInterpolation((double)lookUpKey, lastKey, (double)pairs.getKey(), lastValue, (Double)pairs.getValue());
-	        		return value;
-	        	}
-	        }
-	        if (lookUpKey == key) 
-	        	return value;
-	        else if (lookUpKey < key) {
-	        	// Solve for the value using linear interpolation
-	  //      	System.out.println("Interpolating: " + (double)lookUpkKey +" "+ lastKey + " " + (double)pairs.getKey() + " " + lastValue + " " + (Double)pairs.getValue());
-	        	value = linearInterpolation((double)lookUpKey, lastKey, (double)pairs.getKey(), lastValue, (Double)pairs.getValue());
-	        	return value;
-	        }
-	        prevKey = lastKey;
-	        prevValue = lastValue;
-	        lastKey = key;
-	        lastValue = value;
-	    }
-	    // try to extrapolate off the end
-	    if (pairs != null)
-	    	value = linearInterpolation((double)lookUpKey, prevKey, lastKey, prevValue, lastValue);
-	    return value;
+		Frozen f = getFrozen();
+		if (f.dense != null) {
+			long i = (long)lookUpKey - f.keys[0];
+			if (i >= 0 && i < f.dense.length)
+				return f.dense[(int)i];
+		}
+		return interpolate(f.keys, f.values, f.size, lookUpKey);
 	}
 	
+	/**
+	 * Look up a column of values, such as the data for a graph
+	 * @param lookUpKeys
+	 * @param out - must be at least as long as lookUpKeys
+	 */
+	public void lookupValues(int[] lookUpKeys, double[] out) {
+		Frozen f = getFrozen();
+		for (int i=0; i < lookUpKeys.length; i++) {
+			long d = f.dense == null ? -1 : (long)lookUpKeys[i] - f.keys[0];
+			if (d >= 0 && d < f.dense.length)
+				out[i] = f.dense[(int)d];
+			else
+				out[i] = interpolate(f.keys, f.values, f.size, lookUpKeys[i]);
+		}
+	}
+	
+	/**
+	 * Find the key that gives this value.  The search is over the values in ascending order, so it works whether the
+	 * values rise or fall with the key.
+	 * @param lookUpKey - the value
+	 * @return the key, interpolated and truncated to an int
+	 */
 	public int reverseLookup(double lookUpKey) {
-		Iterator<Entry<Integer, Double>> it = table.entrySet().iterator();
-		int lastValue = 0;
-		double lastKey = 0;
-		int prevValue = 0;
-		double prevKey = 0;
-		Entry<Integer, Double> pairs = null;
-		double key;
-		boolean firstKey = true;
-		int value = (int)DataRecord.ERROR_VALUE;
-	    while (it.hasNext()) {
-	        pairs = it.next();
-	        value = (Integer)pairs.getKey();
-	        key = (Double)pairs.getValue(); 
-	        if (firstKey) {
-	        	firstKey = false;
-	        	if (lookUpKey < key) {
-	        		
-	        		// store the values
-	        		lastKey = key;
-	    	        lastValue = value;
-	        		// get the next set
-	    	        pairs = it.next();
-	    	        value = (Integer)pairs.getKey();
-	    	        key = (Double)pairs.getValue();
-	    	        // and extrapolate from there
-	        		value = (int) linearInterpolation((double)lookUpKey, lastKey, (double)pairs.getKey(), lastValue, (Double)pairs.getValue());
-	        		return value;
-	        	}
-	        }
-	        if (lookUpKey == key) 
-	        	return value;
-	        else if (lookUpKey < key) {
-	        	// Solve for the value using linear interpolation
-	  //      	System.out.println("Interpolating: " + (double)lookUpkKey +" "+ lastKey + " " + (double)pairs.getKey() + " " + lastValue + " " + (Double)pairs.getValue());
-	        	value = (int) linearInterpolation((double)lookUpKey, lastKey, (double)pairs.getKey(), lastValue, (Double)pairs.getValue());
-	        	return value;
-	        }
-	        prevKey = lastKey;
-	        prevValue = lastValue;
-	        lastKey = key;
-	        lastValue = value;
-	    }
-	    // try to extrapolate off the end
-	    if (pairs != null)
-	    	value = (int) linearInterpolation((double)lookUpKey, prevKey, lastKey, prevValue, lastValue);
-	    return value;
+		Frozen f = getFrozen();
+		if (f.size == 0) return (int)DataRecord.ERROR_VALUE;
+		return (int) interpolate(f.reverseKeys, f.reverseValues, f.size, lookUpKey);
+	}
+	
+	/**
+	 * Interpolate between the two keys either side of x, or extrapolate from the first two or last two keys if x is
+	 * outside the table.  A table with one entry is extrapolated from zero.
+	 */
+	private static double interpolate(int[] keys, double[] values, int size, double x) {
+		if (size == 0) return (double)DataRecord.ERROR_VALUE;
+		if (size == 1) return x == keys[0] ? values[0] : linearInterpolation(x, 0, keys[0], 0, values[0]);
+		int i = upperBound(keys, size, x);
+		if (i > 0 && keys[i-1] == x) return values[i-1];
+		if (i == 0) i = 1;
+		if (i == size) i = size-1;
+		return linearInterpolation(x, keys[i-1], keys[i], values[i-1], values[i]);
+	}
+	
+	private static double interpolate(double[] keys, int[] values, int size, double x) {
+		if (size == 1) return x == keys[0] ? values[0] : linearInterpolation(x, 0, keys[0], 0, values[0]);
+		int i = upperBound(keys, size, x);
+		if (i > 0 && keys[i-1] == x) {
+			while (i > 1 && keys[i-2] == x) i--; // the first key that matches
+			return values[i-1];
+		}
+		if (i == 0) i = 1;
+		if (i == size) i = size-1;
+		return linearInterpolation(x, keys[i-1], keys[i], values[i-1], values[i]);
+	}
+	
+	/**
+	 * The first position with a key greater than x, or size if there is none
+	 */
+	private static int upperBound(int[] keys, int size, double x) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (keys[mid] <= x)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+	
+	private static int upperBound(double[] keys, int size, double x) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (keys[mid] <= x)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
 	}
 	
 	protected void load(String fileName) throws LayoutLoadException, IOException {
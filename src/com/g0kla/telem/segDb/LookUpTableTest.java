@@ -0,0 +1,63 @@
+package com.g0kla.telem.segDb;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class LookUpTableTest {
+
+	LookUpTable table(int[] keys, double[] values) {
+		LookUpTable t = new LookUpTable();
+		for (int i=0; i < keys.length; i++)
+			t.table.put(keys[i], values[i]);
+		return t;
+	}
+
+	@Test
+	void testLookupValue() {
+		LookUpTable t = table(new int[] {0, 10, 20}, new double[] {0, 100, 150});
+		assertEquals(-50, t.lookupValue(-5), 1e-9);
+		assertEquals(50, t.lookupValue(5), 1e-9);
+		assertEquals(100, t.lookupValue(10), 1e-9);
+		assertEquals(125, t.lookupValue(15), 1e-9);
+		assertEquals(200, t.lookupValue(30), 1e-9);
+		assertEquals(15, t.reverseLookup(125));
+		assertEquals(-5, t.reverseLookup(-50));
+
+		// Entries added after the first lookup are used, even out of order
+		t.table.put(-10, -200.0);
+		assertEquals(-100, t.lookupValue(-5), 1e-9);
+	}
+
+	@Test
+	void testDenseMatchesSearch() {
+		// The same curve, with the keys spread too far apart for a dense table
+		int[] keys = {0, 100, 1000, 4000};
+		int[] wide = {0, 10000, 100000, 400000};
+		double[] values = {-40, -10, 35, 120};
+		LookUpTable dense = table(keys, values);
+		LookUpTable sparse = table(wide, values);
+		int[] raw = new int[4200];
+		int[] rawWide = new int[raw.length];
+		for (int i=0; i < raw.length; i++) {
+			raw[i] = i - 100;
+			rawWide[i] = raw[i] * 100;
+		}
+		double[] a = new double[raw.length];
+		double[] b = new double[raw.length];
+		dense.lookupValues(raw, a);
+		sparse.lookupValues(rawWide, b);
+		assertArrayEquals(b, a, 1e-9);
+		for (int i=0; i < raw.length; i += 37)
+			assertEquals(a[i], dense.lookupValue(raw[i]), 0);
+	}
+
+	@Test
+	void testReverseLookupFallingValues() {
+		// A thermistor, where the value falls as the counts rise
+		LookUpTable t = table(new int[] {0, 100, 200}, new double[] {80, 20, -20});
+		assertEquals(50, t.reverseLookup(50));
+		assertEquals(150, t.reverseLookup(0));
+		assertEquals(200, t.reverseLookup(-20));
+	}
+}
@@ -0,0 +1,172 @@
+package com.g0kla.telem.segDb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.g0kla.telem.data.DataLoadException;
+
+/**
+ *
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2018 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * A read only, memory mapped view of a binary table segment.  Columns are read straight from the mapped file without
+ * creating a DataRecord for each row.  The pages belong to the operating system page cache, so they are shared by every
+ * process that reads the same segment, for example the GUI and the server.
+ *
+ * Rows are returned in record order.  Records are normally appended in order, but if an older record was saved into
+ * the segment later then we keep a permutation that puts the rows in order.
+ *
+ * The mappings are cached by path and remapped if the file has grown since it was mapped.  Only the most recently used
+ * MAX_MAPPINGS are kept, so a long running server does not end up holding a mapping for every segment it has ever
+ * read.  A mapping that is dropped is unmapped when it is garbage collected.
+ *
+ */
+class MappedSegment {
+	public static final int MAX_MAPPINGS = 256;
+	@SuppressWarnings("serial")
+	private static final LinkedHashMap<String, MappedSegment> cache = new LinkedHashMap<String, MappedSegment>(16, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry<String, MappedSegment> eldest) {
+			return size() > MAX_MAPPINGS;
+		}
+	};
+
+	private final long length; // the length of the file when it was mapped
+	private final ByteBuffer buf;
+	private final int fields;
+	private final int recordLength;
+	private final int rows;
+	private final int[] order; // row to record number, or null if the records are already in order
+
+	/**
+	 * Return the mapping for a segment file, mapping it if this is the first time or the file has changed length
+	 * @param path
+	 * @return
+	 * @throws IOException
+	 * @throws DataLoadException if the file is not a binary segment
+	 */
+	static MappedSegment get(String path) throws IOException, DataLoadException {
+		long length = new File(path).length();
+		MappedSegment m;
+		synchronized (cache) {
+			m = cache.get(path);
+		}
+		if (m != null && m.length == length) return m;
+		m = new MappedSegment(path, length);
+		synchronized (cache) {
+			cache.put(path, m);
+		}
+		return m;
+	}
+
+	static int getMappingCount() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	/**
+	 * Drop the mapping for a file that is being removed or replaced
+	 * @param path
+	 */
+	static void release(String path) {
+		synchronized (cache) {
+			cache.remove(path);
+		}
+	}
+
+	private MappedSegment(String path, long length) throws IOException, DataLoadException {
+		this.length = length;
+		if (length == 0) {
+			buf = ByteBuffer.allocate(0);
+			fields = 0;
+			recordLength = BinarySegment.getRecordLength(0);
+			rows = 0;
+			order = null;
+			return;
+		}
+		FileChannel channel = FileChannel.open(new File(path).toPath(), StandardOpenOption.READ);
+		try {
+			buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, length); // the mapping stays valid after the channel is closed
+		} finally {
+			channel.close();
+		}
+		fields = BinarySegment.readHeader(buf.duplicate(), path);
+		recordLength = BinarySegment.getRecordLength(fields);
+		rows = (int) ((length - BinarySegment.HEADER_LENGTH) / recordLength);
+		order = sortOrder();
+	}
+
+	private int[] sortOrder() {
+		boolean sorted = true;
+		for (int r=1; r < rows && sorted; r++)
+			if (compareRecords(r-1, r) > 0)
+				sorted = false;
+		if (sorted) return null;
+		Integer[] idx = new Integer[rows];
+		for (int r=0; r < rows; r++)
+			idx[r] = r;
+		Arrays.sort(idx, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return compareRecords(a, b);
+			}
+		});
+		int[] order = new int[rows];
+		for (int r=0; r < rows; r++)
+			order[r] = idx[r];
+		return order;
+	}
+
+	private int compareRecords(int a, int b) {
+		int pa = BinarySegment.HEADER_LENGTH + a * recordLength;
+		int pb = BinarySegment.HEADER_LENGTH + b * recordLength;
+		int c = Integer.compare(buf.getInt(pa+4), buf.getInt(pb+4));
+		if (c != 0) return c;
+		c = Long.compare(buf.getLong(pa+8), buf.getLong(pb+8));
+		if (c != 0) return c;
+		return Integer.compare(buf.getInt(pa+16), buf.getInt(pb+16));
+	}
+
+	private int offset(int row) {
+		int record = order == null ? row : order[row];
+		return BinarySegment.HEADER_LENGTH + record * recordLength;
+	}
+
+	int getRows() { return rows; }
+	int getFields() { return fields; }
+
+	int getId(int row) { return buf.getInt(offset(row)); }
+	int getResets(int row) { return buf.getInt(offset(row) + 4); }
+	long getUptime(int row) { return buf.getLong(offset(row) + 8); }
+	int getType(int row) { return buf.getInt(offset(row) + 16); }
+
+	/**
+	 * Return the raw value of a field.  Fields that are not in the file, because the layout has grown since it was
+	 * written, are zero, which is what a DataRecord loaded from the file would hold.
+	 */
+	int getInt(int row, int field) {
+		if (field >= fields) return 0;
+		return buf.getInt(offset(row) + BinarySegment.KEY_LENGTH + 4 * field);
+	}
+}
@@ -0,0 +1,83 @@
+package com.g0kla.telem.segDb;
+
+/**
+ *
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2018 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Reduces graph data to a number of points that can be drawn, keeping the peaks.  The records are split into
+ * buckets of about the same number of rows, one for each pixel across the graph, and each bucket becomes two points:
+ * the smallest and largest value in the bucket, in the order they happened.  The two points are placed at the first
+ * and last record of the bucket, so every field keeps the same time axis.
+ *
+ */
+public class MinMaxDecimator {
+
+	private MinMaxDecimator() {}
+
+	/**
+	 * Decimate graph data in the form returned by DataTable.getGraphData().  The fields must share the same records,
+	 * which is true for the multi field query.  Position data is not kept.
+	 * @param sets - one double[][] for each field
+	 * @param buckets - the number of buckets, normally the width of the graph in pixels
+	 * @return the decimated data, or the same data if it already has no more than two points per bucket
+	 */
+	public static double[][][] decimate(double[][][] sets, int buckets) {
+		if (sets.length == 0 || sets[0] == null || buckets < 1) return sets;
+		double[] resets = sets[0][DataTable.RESETS_COL];
+		double[] uptime = sets[0][DataTable.UPTIME_COL];
+		int rows = uptime.length;
+		if (rows <= 2 * buckets) return sets;
+
+		double[] newResets = new double[2 * buckets];
+		double[] newUptime = new double[2 * buckets];
+		for (int b=0; b < buckets; b++) {
+			int first = bucketStart(b, rows, buckets);
+			int last = bucketStart(b+1, rows, buckets) - 1;
+			newResets[2*b] = resets[first];
+			newUptime[2*b] = uptime[first];
+			newResets[2*b+1] = resets[last];
+			newUptime[2*b+1] = uptime[last];
+		}
+		double[][][] result = new double[sets.length][][];
+		for (int f=0; f < sets.length; f++) {
+			double[] data = sets[f][DataTable.DATA_COL];
+			double[] newData = new double[2 * buckets];
+			for (int b=0; b < buckets; b++) {
+				int first = bucketStart(b, rows, buckets);
+				int end = bucketStart(b+1, rows, buckets);
+				int min = first;
+				int max = first;
+				for (int i=first+1; i < end; i++) {
+					if (data[i] < data[min]) min = i;
+					if (data[i] > data[max]) max = i;
+				}
+				newData[2*b] = data[Math.min(min, max)];
+				newData[2*b+1] = data[Math.max(min, max)];
+			}
+			result[f] = new double[3][];
+			result[f][DataTable.RESETS_COL] = newResets;
+			result[f][DataTable.UPTIME_COL] = newUptime;
+			result[f][DataTable.DATA_COL] = newData;
+		}
+		return result;
+	}
+
+	static int bucketStart(int bucket, int rows, int buckets) {
+		return (int)((long)bucket * rows / buckets);
+	}
+}
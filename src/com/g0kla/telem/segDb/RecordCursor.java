@@ -0,0 +1,132 @@
+package com.g0kla.telem.segDb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import com.g0kla.telem.data.ConversionTable;
+import com.g0kla.telem.data.DataLoadException;
+import com.g0kla.telem.data.DataRecord;
+
+/**
+ *
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2018 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Reads the records of a DataTable between two keys, forwards or backwards, one segment at a time.  Only the
+ * segment being read is held in memory and it is read into its own list, so the cache is not disturbed.  The values
+ * are returned as primitives, so a caller that fills a table or writes a file does not need to go through strings.
+ *
+ * Call next() to move to the first record and then to each record after it:
+ *
+ *   RecordCursor c = table.getCursor(0, 0, Integer.MAX_VALUE, Long.MAX_VALUE, 1000, true);
+ *   while (c.next())
+ *       total += c.getRawValue(field);
+ *
+ */
+public class RecordCursor {
+	private final DataTable table;
+	private final ArrayList<TableSeg> segs; // in the order they are read
+	private final int fromReset;
+	private final long fromUptime;
+	private final int toReset;
+	private final long toUptime;
+	private final boolean reverse;
+	private int remaining;
+
+	private int nextSeg = 0;
+	private SortedDataRecordArrayList records; // the segment being read
+	private int pos;
+	private DataRecord current;
+	private boolean done = false;
+
+	RecordCursor(DataTable table, ArrayList<TableSeg> segs, int fromReset, long fromUptime, int toReset, long toUptime, int limit, boolean reverse) {
+		this.table = table;
+		this.segs = segs;
+		this.fromReset = fromReset;
+		this.fromUptime = fromUptime;
+		this.toReset = toReset;
+		this.toUptime = toUptime;
+		this.reverse = reverse;
+		remaining = limit;
+	}
+
+	public boolean isReverse() { return reverse; }
+
+	/**
+	 * Move to the next record in the range
+	 * @return false when there are no more records
+	 * @throws IOException
+	 * @throws DataLoadException
+	 */
+	public boolean next() throws IOException, DataLoadException {
+		while (!done && remaining > 0) {
+			if (records != null) {
+				pos += reverse ? -1 : 1;
+				if (pos >= 0 && pos < records.size()) {
+					DataRecord r = records.get(pos);
+					int afterStart = compare(r, fromReset, fromUptime);
+					int afterEnd = compare(r, toReset, toUptime);
+					if (reverse) {
+						if (afterEnd > 0) continue;
+						if (afterStart < 0) break; // the records before this are earlier still
+					} else {
+						if (afterStart < 0) continue;
+						if (afterEnd > 0) break;
+					}
+					current = r;
+					remaining--;
+					return true;
+				}
+			}
+			if (nextSeg >= segs.size()) break;
+			records = table.readCommittedSegment(segs.get(nextSeg++)); // the writer may have added to it since we started
+			pos = reverse ? records.size() : -1;
+		}
+		done = true;
+		current = null;
+		records = null;
+		return false;
+	}
+
+	private static int compare(DataRecord r, int resets, long uptime) {
+		if (r.resets != resets) return r.resets < resets ? -1 : 1;
+		if (r.uptime != uptime) return r.uptime < uptime ? -1 : 1;
+		return 0;
+	}
+
+	public int getId() { return current.id; }
+	public int getResets() { return current.resets; }
+	public long getUptime() { return current.uptime; }
+	public int getType() { return current.type; }
+	public int getFieldCount() { return current.fieldValue.length; }
+	public int getRawValue(int field) { return current.fieldValue[field]; }
+
+	/**
+	 * Return the converted value of a field, or the raw value if the layout has no conversions
+	 * @param field
+	 */
+	public double getDoubleValue(int field) {
+		ConversionTable ct = current.layout.getConversionTable();
+		if (ct == null) return current.fieldValue[field];
+		return ct.convertRawValue(current.layout.conversion[field], current.fieldValue[field]);
+	}
+
+	/**
+	 * The current record.  It belongs to the cursor and is not in the cache, so it can be kept after the cursor moves.
+	 */
+	public DataRecord getRecord() { return current; }
+}
@@ -0,0 +1,69 @@
+package com.g0kla.telem.segDb;
+
+import com.g0kla.telem.data.DataRecord;
+
+/**
+ *
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2018 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Packs the reset, uptime and type of a record into a single long so that it can be stored in a primitive
+ * index.  The layout is:
+ *   bits 48-62 resets (15 bits)
+ *   bits 16-47 uptime (32 bits)
+ *   bits 0-15  type   (16 bits)
+ * The key is never negative and sorts in the same order as DataRecord.compareTo().  Values outside these
+ * ranges can not be packed and the caller has to fall back to searching the records.
+ *
+ */
+public final class RecordKey {
+	public static final int MAX_RESETS = 0x7FFF;
+	public static final long MAX_UPTIME = 0xFFFFFFFFL;
+	public static final int MAX_TYPE = 0xFFFF;
+
+	private RecordKey() {}
+
+	public static boolean isPackable(int resets, long uptime, int type) {
+		return resets >= 0 && resets <= MAX_RESETS && uptime >= 0 && uptime <= MAX_UPTIME && type >= 0 && type <= MAX_TYPE;
+	}
+
+	public static boolean isPackable(DataRecord r) {
+		return isPackable(r.resets, r.uptime, r.type);
+	}
+
+	/**
+	 * Pack the key.  The values must be packable
+	 */
+	public static long pack(int resets, long uptime, int type) {
+		return ((long)resets << 48) | (uptime << 16) | type;
+	}
+
+	public static long pack(DataRecord r) {
+		return pack(r.resets, r.uptime, r.type);
+	}
+
+	/**
+	 * The key for a reset and uptime, ignoring the type
+	 */
+	public static long packTime(int resets, long uptime) {
+		return pack(resets, uptime, 0);
+	}
+
+	public static int getResets(long key) { return (int)(key >>> 48); }
+	public static long getUptime(long key) { return (key >>> 16) & MAX_UPTIME; }
+	public static int getType(long key) { return (int)(key & MAX_TYPE); }
+}
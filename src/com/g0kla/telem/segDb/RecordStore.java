@@ -0,0 +1,75 @@
+package com.g0kla.telem.segDb;
+
+import com.g0kla.telem.data.DataRecord;
+
+/**
+ *
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2018 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The records of a DataTable that are loaded into memory, sorted by reset, uptime and type.  The records are either
+ * held as DataRecords in a SortedDataRecordArrayList or as columns in a ColumnStore.  The row accessors let the table
+ * read a value without creating a DataRecord, which is what get() does for the ColumnStore.
+ *
+ */
+public interface RecordStore {
+
+	public int size();
+
+	/**
+	 * Add a record in sort order
+	 * @param r
+	 * @return true if it was added, false if it is a duplicate
+	 */
+	public boolean add(DataRecord r);
+
+	/**
+	 * Return the record at this row.  For a ColumnStore this creates a new DataRecord, so a change to it does not
+	 * change the store
+	 */
+	public DataRecord get(int i);
+
+	public void clear();
+
+	/**
+	 * Remove the records from fromIndex, inclusive, to toIndex, exclusive.  Used when a segment is unloaded
+	 */
+	public void removeRecords(int fromIndex, int toIndex);
+
+	public int getId(int i);
+	public int getResets(int i);
+	public long getUptime(int i);
+	public int getType(int i);
+
+	/**
+	 * Return the raw value of the field with this position in the layout
+	 */
+	public int getRawValue(int i, int field);
+
+	/**
+	 * Return the raw values of all of the fields in a row.  The caller must not change the array
+	 */
+	public int[] getFieldValues(int i);
+
+	public boolean hasFrame(int id, long uptime, int resets);
+	public boolean hasFrame(int id, long uptime, int resets, int type);
+
+	public int getNearestFrameIndex(int id, long uptime, int resets);
+	public int getNearestFrameIndex(int id, long uptime, int resets, int type);
+	public int getNearestPrevFrameIndex(int id, long uptime, int resets);
+	public int getNearestPrevFrameIndex(int id, long uptime, int resets, int type);
+}
@@ -0,0 +1,341 @@
+package com.g0kla.telem.segDb;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.TreeMap;
+
+import com.g0kla.telem.data.DataRecord;
+
+/**
+ *
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2018 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * A summary of a DataTable at a coarser resolution, so that a graph over a long period does not have to load every
+ * record.  The records are grouped into buckets of a fixed number of seconds of uptime within a reset, and for each
+ * bucket we keep the number of records and the min, max and sum of the raw value of every field.
+ *
+ * The tier is held in memory and updated as records are saved.  Each time the table commits records the buckets that
+ * changed are appended to the file of the tier, with the number of records the tier has seen, and the file is written
+ * again in full once it holds too many old copies of buckets.  If the count does not match the table, because the
+ * tier was added to a table that already had data or we stopped between saving a record and saving the tier, then
+ * the tier is not used until it is rebuilt from the segments.
+ *
+ */
+public class RollupTier {
+	public static final int MAGIC = 0x544c4d52; // TLMR
+	public static final int VERSION = 2;
+	private static final int COMPACT_SLACK = 10000; // bucket copies that can be appended before the file is rewritten
+	private static final int INDEX_BITS = 40;
+	private static final long MAX_RESETS = (1L << (63 - INDEX_BITS)) - 1;
+
+	private final int interval; // seconds of uptime in each bucket
+	private final int fields;
+	private final String path;
+	private final TreeMap<Long, Bucket> buckets = new TreeMap<Long, Bucket>();
+	private long records = 0; // the records that have been added
+	private final HashSet<Long> dirty = new HashSet<Long>(); // the buckets that changed since the tier was saved
+	private boolean savedRecords = true; // false if records were added since the tier was saved
+	private boolean rewrite = false; // the file must be written in full, after clear() or if it could not be read
+	private long logged = 0; // the buckets in the file, including old copies of buckets that changed since
+	private FileOutputStream out; // kept open for appending between saves
+
+	static class Bucket {
+		final int resets;
+		int count;
+		long firstUptime; // the first and last record in the bucket
+		long lastUptime;
+		final int[] min;
+		final int[] max;
+		final long[] sum;
+
+		Bucket(int resets, int fields) {
+			this.resets = resets;
+			min = new int[fields];
+			max = new int[fields];
+			sum = new long[fields];
+		}
+
+		double getMean(int field) {
+			return count == 0 ? 0 : (double)sum[field] / count;
+		}
+	}
+
+	/**
+	 * Create a tier and load it from its file if it has one
+	 * @param interval - the seconds of uptime in each bucket
+	 * @param fields - the number of fields in the layout
+	 * @param path - the file the tier is saved in
+	 */
+	RollupTier(int interval, int fields, String path) {
+		if (interval < 1)
+			throw new IllegalArgumentException("Rollup interval must be at least one second: " + interval);
+		this.interval = interval;
+		this.fields = fields;
+		this.path = path;
+		load();
+	}
+
+	int getInterval() { return interval; }
+	long getRecords() { return records; }
+	int getBuckets() { return buckets.size(); }
+
+	/**
+	 * The tier can be used if it has seen every record in the table
+	 * @param tableRecords
+	 */
+	boolean isComplete(long tableRecords) {
+		return records == tableRecords;
+	}
+
+	private static long key(int resets, long index) {
+		return ((long)resets << INDEX_BITS) | index;
+	}
+
+	/**
+	 * Add a new record to its bucket.  The caller must not add the same record twice.  A record that does not fit in
+	 * the key is not counted, so the tier will not be used until it is rebuilt.
+	 * @param r
+	 */
+	void add(DataRecord r) {
+		long index = r.uptime / interval;
+		if (r.resets < 0 || r.resets > MAX_RESETS || r.uptime < 0 || index >= (1L << INDEX_BITS)) return;
+		long key = key(r.resets, index);
+		Bucket b = buckets.get(key);
+		int n = Math.min(fields, r.fieldValue.length);
+		if (b == null) {
+			b = new Bucket(r.resets, fields);
+			b.firstUptime = r.uptime;
+			b.lastUptime = r.uptime;
+			for (int f=0; f < n; f++) {
+				b.min[f] = r.fieldValue[f];
+				b.max[f] = r.fieldValue[f];
+			}
+			buckets.put(key, b);
+		} else {
+			if (r.uptime < b.firstUptime) b.firstUptime = r.uptime;
+			if (r.uptime > b.lastUptime) b.lastUptime = r.uptime;
+			for (int f=0; f < n; f++) {
+				if (r.fieldValue[f] < b.min[f]) b.min[f] = r.fieldValue[f];
+				if (r.fieldValue[f] > b.max[f]) b.max[f] = r.fieldValue[f];
+			}
+		}
+		for (int f=0; f < n; f++)
+			b.sum[f] += r.fieldValue[f];
+		b.count++;
+		records++;
+		dirty.add(key);
+		savedRecords = false;
+	}
+
+	void clear() {
+		buckets.clear();
+		dirty.clear();
+		records = 0;
+		rewrite = true;
+	}
+
+	/**
+	 * Return the buckets that hold the same records as a graph query for this many records.  Going forwards we start
+	 * from the bucket that holds the reset and uptime.  If there is nothing after it, or we are going in reverse,
+	 * then we take the buckets at the end.
+	 * @return the buckets in order
+	 */
+	ArrayList<Bucket> getBuckets(int fromReset, long fromUptime, int period, boolean reverse) {
+		ArrayList<Bucket> result = new ArrayList<Bucket>();
+		int total = 0;
+		if (!reverse && fromReset >= 0 && fromReset <= MAX_RESETS) {
+			long index = Math.max(0, fromUptime) / interval;
+			for (Bucket b : buckets.tailMap(key(fromReset, Math.min(index, (1L << INDEX_BITS)-1)), true).values()) {
+				if (total >= period) break;
+				result.add(b);
+				total += b.count;
+			}
+			if (result.size() > 0) return result;
+		}
+		for (Bucket b : buckets.descendingMap().values()) {
+			if (total >= period) break;
+			result.add(0, b);
+			total += b.count;
+		}
+		return result;
+	}
+
+	/**
+	 * Append the buckets that changed since the last save to the file of the tier.  Once the file holds too many old
+	 * copies of buckets it is written again in full.
+	 * @throws IOException
+	 */
+	void save() throws IOException {
+		if (dirty.isEmpty() && savedRecords && !rewrite) return;
+		if (rewrite || logged > 2L * buckets.size() + COMPACT_SLACK) {
+			writeAll();
+			return;
+		}
+		if (out == null)
+			out = new FileOutputStream(path, true);
+		out.write(block(dirty));
+		logged += dirty.size();
+		dirty.clear();
+		savedRecords = true;
+	}
+
+	/**
+	 * Close the file if it is open for appending
+	 * @throws IOException
+	 */
+	void close() throws IOException {
+		if (out == null) return;
+		try {
+			out.close();
+		} finally {
+			out = null;
+		}
+	}
+
+	/**
+	 * Write the whole tier to a temporary file and move it over the file of the tier, so a crash leaves the old file.
+	 * @throws IOException
+	 */
+	private void writeAll() throws IOException {
+		close();
+		File tmp = new File(path + ".tmp");
+		FileOutputStream all = new FileOutputStream(tmp);
+		try {
+			DataOutputStream header = new DataOutputStream(all);
+			header.writeInt(MAGIC);
+			header.writeInt(VERSION);
+			header.writeInt(interval);
+			header.writeInt(fields);
+			header.flush();
+			all.write(block(buckets.keySet()));
+		} finally {
+			all.close();
+		}
+		Files.move(tmp.toPath(), new File(path).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		logged = buckets.size();
+		dirty.clear();
+		savedRecords = true;
+		rewrite = false;
+	}
+
+	/**
+	 * A block of buckets, with its length first so that a block that was cut short by a crash can be found and
+	 * ignored, and the number of records the tier has seen
+	 */
+	private byte[] block(Collection<Long> keys) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + keys.size() * (28 + 16 * fields));
+		DataOutputStream data = new DataOutputStream(bytes);
+		data.writeInt(0); // the length, filled in below
+		data.writeLong(records);
+		data.writeInt(keys.size());
+		for (Long key : keys) {
+			Bucket b = buckets.get(key);
+			data.writeLong(key);
+			data.writeInt(b.count);
+			data.writeLong(b.firstUptime);
+			data.writeLong(b.lastUptime);
+			for (int f=0; f < fields; f++) {
+				data.writeInt(b.min[f]);
+				data.writeInt(b.max[f]);
+				data.writeLong(b.sum[f]);
+			}
+		}
+		data.flush();
+		byte[] block = bytes.toByteArray();
+		ByteBuffer.wrap(block).putInt(0, block.length - 4);
+		return block;
+	}
+
+	/**
+	 * Load the tier from its file.  A later copy of a bucket replaces the earlier one.  If the file can not be read,
+	 * or is for a different interval or layout, then we start with an empty tier, which will not be used until it is
+	 * rebuilt.  A block at the end that was cut short is ignored and the file is written again without it.
+	 */
+	private void load() {
+		File file = new File(path);
+		if (!file.exists()) {
+			rewrite = true; // so the file is started with its header
+			return;
+		}
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != interval || in.readInt() != fields)
+					throw new IOException("Rollup file does not match the table: " + path);
+				while (true) {
+					int length;
+					try {
+						length = in.readInt();
+					} catch (EOFException e) {
+						break; // the end of the file
+					}
+					byte[] block = new byte[length];
+					try {
+						in.readFully(block);
+					} catch (EOFException e) {
+						rewrite = true; // cut short, so drop it
+						break;
+					}
+					DataInputStream data = new DataInputStream(new ByteArrayInputStream(block));
+					long count = data.readLong();
+					int n = data.readInt();
+					for (int i=0; i < n; i++) {
+						long key = data.readLong();
+						Bucket b = new Bucket((int)(key >>> INDEX_BITS), fields);
+						b.count = data.readInt();
+						b.firstUptime = data.readLong();
+						b.lastUptime = data.readLong();
+						for (int f=0; f < fields; f++) {
+							b.min[f] = data.readInt();
+							b.max[f] = data.readInt();
+							b.sum[f] = data.readLong();
+						}
+						buckets.put(key, b);
+					}
+					records = count;
+					logged += n;
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException | NegativeArraySizeException e) {
+			buckets.clear();
+			records = 0;
+			logged = 0;
+			rewrite = true;
+		}
+	}
+
+	public String toString() {
+		return "Rollup " + interval + "s: " + buckets.size() + " buckets, " + records + " records";
+	}
+}
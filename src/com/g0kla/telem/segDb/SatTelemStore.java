@@ -2,6 +2,8 @@ package com.g0kla.telem.segDb;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.Executor;
 
 import com.g0kla.telem.data.ByteArrayLayout;
 import com.g0kla.telem.data.DataLoadException;
@@ -59,6 +61,17 @@ public class SatTelemStore {
 		return ERROR_IDX;
 	}
 
+	/**
+	 * Return the table for a layout, or null if there is no such layout
+	 * @param layout
+	 */
+	public DataTable getTable(String layout) {
+		int i = getLayoutIdxByName(layout);
+		if (i != ERROR_IDX)
+			return records[i];
+		return null;
+	}
+	
 	public ByteArrayLayout getLayoutByName(String name) {
 		for (int i=0; i<layouts.length; i++)
 			if (layouts[i].name.equalsIgnoreCase(name))
@@ -85,6 +98,83 @@ public class SatTelemStore {
 		
 	}
 	
+	/**
+	 * Write records to the tables in groups rather than one at a time.  See DataTable.setGroupCommit()
+	 * @param maxRecords
+	 * @param intervalMs
+	 * @throws IOException
+	 */
+	public void setGroupCommit(int maxRecords, long intervalMs) throws IOException {
+		for (int i=0; i<records.length; i++)
+			records[i].setGroupCommit(maxRecords, intervalMs);
+	}
+	
+	/**
+	 * Commit any buffered records and the indexes to disk
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		for (int i=0; i<records.length; i++)
+			records[i].flush();
+	}
+	
+	/**
+	 * Rebuild the rollup tiers of every table from the segments on disk.  See DataTable.rebuildRollups()
+	 * @throws IOException
+	 * @throws DataLoadException
+	 */
+	public void rebuildRollups() throws IOException, DataLoadException {
+		for (int i=0; i<records.length; i++)
+			records[i].rebuildRollups();
+	}
+	
+	public void close() throws IOException {
+		IOException err = null;
+		for (int i=0; i<records.length; i++)
+			try {
+				records[i].close();
+			} catch (IOException e) {
+				err = e; // keep closing the other tables
+			}
+		if (err != null) throw err;
+	}
+	
+	/**
+	 * Tell a listener about the records saved for a layout, on a thread of its own.  See DataTable.addTableListener()
+	 * @param layout
+	 * @param listener
+	 * @return false if there is no such layout
+	 */
+	public boolean addTableListener(String layout, TableListener listener) {
+		int i = getLayoutIdxByName(layout);
+		if (i == ERROR_IDX) return false;
+		records[i].addTableListener(listener);
+		return true;
+	}
+	
+	/**
+	 * Tell a listener about the records saved for a layout, running it on an executor
+	 * @param layout
+	 * @param listener
+	 * @param executor
+	 * @return false if there is no such layout
+	 */
+	public boolean addTableListener(String layout, TableListener listener, Executor executor) {
+		int i = getLayoutIdxByName(layout);
+		if (i == ERROR_IDX) return false;
+		records[i].addTableListener(listener, executor);
+		return true;
+	}
+	
+	public boolean removeTableListener(String layout, TableListener listener) {
+		int i = getLayoutIdxByName(layout);
+		if (i == ERROR_IDX) return false;
+		return records[i].removeTableListener(listener);
+	}
+	
+	/**
+	 * The updated flags are for screens that poll the store.  A TableListener is told what changed instead.
+	 */
 	public void setUpdatedAll() {
 		for (int i=0; i<layouts.length; i++)
 			records[i].setUpdated(true);
@@ -152,6 +242,62 @@ public class SatTelemStore {
 		return null;
 	}
 	
+	/**
+	 * Return several fields from the same layout, such as all of the lines on a graph, from one pass over the records.
+	 * See DataTable.getGraphData()
+	 * @param names
+	 * @return the graph data for each name, which share the resets and uptime columns, or null if there is no such layout
+	 * @throws IOException 
+	 * @throws DataLoadException 
+	 * @throws NumberFormatException 
+	 */
+	public double[][][] getGraphData(String[] names, int period, int id, int fromReset, long fromUptime, String layout, boolean raw, boolean positionData, boolean reverse) throws IOException, NumberFormatException, DataLoadException {
+		int i = getLayoutIdxByName(layout);
+		if (i != ERROR_IDX)
+			return records[i].getGraphData(names, period, id, fromReset, fromUptime, raw, positionData, reverse);
+		return null;
+	}
+	
+	/**
+	 * Return several fields, decimated to about maxPoints points while keeping the peaks.  See DataTable.getGraphData()
+	 * @param maxPoints - the number of points across the graph, or zero for all of the records
+	 * @return the graph data for each name, or null if there is no such layout
+	 * @throws IOException 
+	 * @throws DataLoadException 
+	 * @throws NumberFormatException 
+	 */
+	public double[][][] getGraphData(String[] names, int period, int id, int fromReset, long fromUptime, String layout, boolean raw, boolean reverse, int maxPoints) throws IOException, NumberFormatException, DataLoadException {
+		int i = getLayoutIdxByName(layout);
+		if (i != ERROR_IDX)
+			return records[i].getGraphData(names, period, id, fromReset, fromUptime, raw, reverse, maxPoints);
+		return null;
+	}
+	
+	/**
+	 * Return a cursor over the records of a layout between two keys.  See DataTable.getCursor()
+	 * @return the cursor, or null if there is no such layout
+	 * @throws IOException
+	 */
+	public RecordCursor getCursor(int fromReset, long fromUptime, int toReset, long toUptime, int limit, boolean reverse, String layout) throws IOException {
+		int i = getLayoutIdxByName(layout);
+		if (i != ERROR_IDX)
+			return records[i].getCursor(fromReset, fromUptime, toReset, toUptime, limit, reverse);
+		return null;
+	}
+	
+	/**
+	 * Write the records of a layout between two keys to a CSV file.  See DataTable.exportCsv()
+	 * @return the number of records written
+	 * @throws IOException
+	 * @throws DataLoadException
+	 */
+	public int exportCsv(Writer out, int fromReset, long fromUptime, int toReset, long toUptime, boolean raw, String layout) throws IOException, DataLoadException {
+		int i = getLayoutIdxByName(layout);
+		if (i != ERROR_IDX)
+			return records[i].exportCsv(out, fromReset, fromUptime, toReset, toUptime, raw);
+		return 0;
+	}
+	
 	public String[][] getTableData(int period, int id, int fromReset, long fromUptime, boolean returnType, boolean reverse, String layout) throws IOException, NumberFormatException, LayoutLoadException, DataLoadException {
 		int i = getLayoutIdxByName(layout);
 		if (i != ERROR_IDX)
@@ -0,0 +1,99 @@
+package com.g0kla.telem.segDb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ *
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2018 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Keeps track of the segments of a DataTable that are loaded, in least recently used order, so that the table can
+ * unload the oldest ones when it holds more records than its budget.  The table does the unloading, because it has
+ * to remove the records, and tells the cache.  The counters are for tuning the budget.
+ *
+ */
+class SegmentCache {
+	private final LinkedHashMap<TableSeg, Boolean> loaded = new LinkedHashMap<TableSeg, Boolean>(16, 0.75f, true);
+	private int maxRecords = 0; // zero means no limit
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	int getMaxRecords() { return maxRecords; }
+	void setMaxRecords(int max) { maxRecords = Math.max(0, max); }
+	boolean isBounded() { return maxRecords > 0; }
+
+	/**
+	 * Record that a query needed this segment
+	 * @param seg
+	 * @return true if it is already loaded
+	 */
+	boolean access(TableSeg seg) {
+		if (seg.isLoaded()) {
+			hits++;
+			loaded.get(seg); // move it to the most recently used end
+			return true;
+		}
+		misses++;
+		return false;
+	}
+
+	void loaded(TableSeg seg) {
+		loaded.put(seg, Boolean.TRUE);
+	}
+
+	void evicted(TableSeg seg) {
+		if (loaded.remove(seg) != null)
+			evictions++;
+	}
+
+	void clear() {
+		loaded.clear();
+	}
+
+	/**
+	 * True if a loaded segment that is not one of the given segments may hold records with keys from min to max.  A
+	 * segment with keys that could not be packed may hold anything.
+	 * @param min
+	 * @param max
+	 * @param except
+	 */
+	boolean overlapsLoaded(long min, long max, Collection<TableSeg> except) {
+		for (TableSeg seg : loaded.keySet())
+			if (!except.contains(seg) && (!seg.packedKeys || seg.overlaps(min, max)))
+				return true;
+		return false;
+	}
+
+	/**
+	 * @return the loaded segments, least recently used first
+	 */
+	List<TableSeg> getLeastRecentlyUsed() {
+		return new ArrayList<TableSeg>(loaded.keySet());
+	}
+
+	long getHits() { return hits; }
+	long getMisses() { return misses; }
+	long getEvictions() { return evictions; }
+
+	public String toString() {
+		return "Segments loaded: " + loaded.size() + " hits: " + hits + " misses: " + misses + " evictions: " + evictions;
+	}
+}
@@ -0,0 +1,90 @@
+package com.g0kla.telem.segDb;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+
+import com.g0kla.telem.data.ByteArrayLayout;
+import com.g0kla.telem.data.DataRecord;
+
+/**
+ *
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2018 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Compare the time to load a table that is saved as CSV .log segments with the same table in binary segments, both
+ * read as records and, for binary segments, read as columns from the mapped files.  This is not part of the unit
+ * tests.  Run it with:
+ *
+ *   java com.g0kla.telem.segDb.SegmentFormatBenchmark [segments]
+ *
+ */
+class SegmentFormatBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int total = (args.length > 0 ? Integer.parseInt(args[0]) : 50) * DataTable.MAX_SEGMENT_SIZE;
+		File dir = Files.createTempDirectory("segbench").toFile();
+		try {
+			File layoutFile = new File(dir, "layout.csv");
+			Writer w = new FileWriter(layoutFile);
+			w.write("2,fields\n");
+			w.write("0,INT,value,16,-,0,NONE,0,0,0,value,benchmark field\n");
+			w.write("1,BYTE,other,8,-,0,NONE,0,0,0,other,benchmark field\n");
+			w.close();
+			ByteArrayLayout layout = new ByteArrayLayout("bench", layoutFile.getPath());
+			for (String format : new String[] {ByteArrayLayout.FORMAT_CSV, ByteArrayLayout.FORMAT_BINARY}) {
+				layout.segmentFormat = format;
+				DataTable table = new DataTable(100, dir.getPath(), layout, format);
+				table.setGroupCommit(1000, 1000);
+				for (int i=0; i < total; i++) {
+					int[] data = {i & 0xff, (i >> 8) & 0xff, 0};
+					table.save(new DataRecord(layout, 1, 0, i, 0, data));
+				}
+				table.close();
+
+				long t0 = System.nanoTime();
+				DataTable reload = new DataTable(100, dir.getPath(), layout, format);
+				// Asking for the position data makes the table load the records rather than map the columns
+				double[][] graph = reload.getGraphData("value", total, 1, 0, 0, true, true, true);
+				long t1 = System.nanoTime();
+				reload.close();
+				check(total, graph);
+				System.out.println(format + ": loaded " + total + " records in " + (t1-t0)/1000000 + "ms");
+
+				if (layout.isBinarySegments()) {
+					t0 = System.nanoTime();
+					DataTable mapped = new DataTable(100, dir.getPath(), layout, format);
+					graph = mapped.getGraphData("value", total, 1, 0, 0, true, false, true);
+					t1 = System.nanoTime();
+					mapped.close();
+					check(total, graph);
+					System.out.println(format + ": mapped " + total + " records in " + (t1-t0)/1000000 + "ms");
+				}
+			}
+		} finally {
+			for (File f : dir.listFiles())
+				f.delete();
+			dir.delete();
+		}
+	}
+
+	private static void check(int total, double[][] graph) {
+		if (graph == null || graph[DataTable.DATA_COL].length != total)
+			throw new IllegalStateException("Expected " + total + " records in the graph data");
+	}
+}
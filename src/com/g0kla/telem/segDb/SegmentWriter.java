@@ -0,0 +1,146 @@
+package com.g0kla.telem.segDb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+
+import com.g0kla.telem.data.DataLoadException;
+import com.g0kla.telem.data.DataRecord;
+
+/**
+ *
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2018 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Keeps the file for the segment that is being written open and buffers the lines that are appended to it.  The
+ * buffer is written to the channel when the DataTable commits a group of records, rather than opening and closing
+ * the file for every record.  Records are written as CSV lines or fixed width binary records, depending on the
+ * format of the segment.
+ *
+ */
+class SegmentWriter {
+	private static final Charset CHARSET = Charset.defaultCharset(); // match the FileWriter used for the legacy path
+	private final String path;
+	private final boolean binary;
+	private final int fields;
+	private FileChannel channel;
+	private ByteBuffer buffer = ByteBuffer.allocate(8192);
+	private int pending = 0; // records appended since the last commit
+	private long lastCommit;
+
+	/**
+	 * Open the segment file for appending.  If the last line in an existing CSV file was not terminated, which happens if
+	 * we were stopped part way through a write, then we start with a new line so the next record is not corrupted.  A
+	 * partial record at the end of a binary file is truncated and a new binary file gets its header.
+	 * @param path
+	 * @param binary
+	 * @param fields - the number of fields in each record
+	 * @throws IOException
+	 */
+	SegmentWriter(String path, boolean binary, int fields) throws IOException {
+		this.path = path;
+		this.binary = binary;
+		this.fields = fields;
+		File file = new File(path);
+		boolean appendNewLine = !binary && file.exists() && !DataTable.newLineExists(path);
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			if (binary) {
+				long valid = BinarySegment.validLength(path, fields);
+				if (valid == 0) {
+					channel.truncate(0);
+					BinarySegment.writeHeader(buffer, fields);
+				} else {
+					ByteBuffer header = ByteBuffer.allocate(BinarySegment.HEADER_LENGTH);
+					while (header.hasRemaining() && channel.read(header, header.position()) > 0);
+					header.flip();
+					int existing = BinarySegment.readHeader(header, path);
+					if (existing != fields)
+						throw new IOException("Segment " + path + " has " + existing + " fields but the layout has " + fields);
+					if (valid < channel.size())
+						channel.truncate(valid);
+				}
+			}
+			channel.position(channel.size());
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		} catch (DataLoadException e) {
+			channel.close();
+			throw new IOException(e.getMessage());
+		}
+		if (appendNewLine)
+			buffer.put((byte)'\n');
+		lastCommit = System.currentTimeMillis();
+	}
+
+	String getPath() { return path; }
+	int getPending() { return pending; }
+	long getLastCommit() { return lastCommit; }
+
+	void append(DataRecord r) {
+		if (binary) {
+			ensureRoom(BinarySegment.getRecordLength(fields));
+			BinarySegment.write(buffer, r);
+		} else {
+			byte[] line = (r.toFile() + "\n").getBytes(CHARSET);
+			ensureRoom(line.length);
+			buffer.put(line);
+		}
+		pending++;
+	}
+
+	private void ensureRoom(int length) {
+		if (buffer.remaining() >= length) return;
+		ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + length));
+		buffer.flip();
+		bigger.put(buffer);
+		buffer = bigger;
+	}
+
+	/**
+	 * Write anything that is buffered to the file.
+	 * @param force - also force it to the disk, which is what makes a group commit durable
+	 * @return the number of records that were committed
+	 * @throws IOException
+	 */
+	int commit(boolean force) throws IOException {
+		if (buffer.position() > 0) {
+			buffer.flip();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			buffer.clear();
+			if (force)
+				channel.force(false);
+		}
+		int committed = pending;
+		pending = 0;
+		lastCommit = System.currentTimeMillis();
+		return committed;
+	}
+
+	void close() throws IOException {
+		try {
+			commit(true);
+		} finally {
+			channel.close();
+		}
+	}
+}
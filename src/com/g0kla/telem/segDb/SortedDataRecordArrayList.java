@@ -26,40 +26,169 @@ import com.g0kla.telem.data.DataRecord;
  *
  */
 @SuppressWarnings("serial")
-public class SortedDataRecordArrayList extends SortedArrayList<DataRecord> {
+public class SortedDataRecordArrayList extends SortedArrayList<DataRecord> implements RecordStore {
+	/*
+	 * Hash index of the packed reset/uptime/type keys of the records in the list, plus the reset/uptime keys on their
+	 * own, so that duplicate checks and hasFrame do not need to search the list.  If a record can not be packed then
+	 * the index is switched off until the list is cleared and we search instead.
+	 */
+	private LongHashSet keys;
+	private LongHashSet timeKeys;
+	private boolean indexed = true;
+	private int commonId; // the id of the records, which is normally the same for every record in a table
+	private boolean mixedIds = false;
 
     public SortedDataRecordArrayList(int i) {
 		super(i);
+		keys = new LongHashSet(i);
+		timeKeys = new LongHashSet(i);
+	}
+
+	/**
+	 * Add the record in sort order.  Duplicates are rejected from the hash index and records that are newer than the
+	 * last one, which is the normal case when saving new data, are appended without searching.
+	 * @return true if the record was added, false if it was a duplicate
+	 */
+	@Override
+	public boolean add(DataRecord r) {
+		if (indexed && RecordKey.isPackable(r) && keys.contains(RecordKey.pack(r)))
+			return false;
+		if (size() == 0 || get(size()-1).compareTo(r) < 0)
+			return addToEnd(r);
+		return super.add(r); // inserts with add(int, DataRecord)
+	}
+
+	@Override
+	public boolean addToEnd(DataRecord r) {
+		super.addToEnd(r);
+		addKey(r);
+		return true;
+	}
+
+	@Override
+	public void add(int index, DataRecord r) {
+		super.add(index, r);
+		addKey(r);
+	}
+
+	@Override
+	public DataRecord remove(int index) {
+		DataRecord r = super.remove(index);
+		removeKey(r, index);
+		return r;
+	}
+
+	@Override
+	protected void removeRange(int fromIndex, int toIndex) {
+		if (indexed)
+			for (int i = fromIndex; i < toIndex; i++) {
+				DataRecord r = get(i);
+				keys.remove(RecordKey.pack(r));
+				timeKeys.remove(RecordKey.packTime(r.resets, r.uptime));
+			}
+		super.removeRange(fromIndex, toIndex);
+		// Only the records either side of the gap can share a reset/uptime with a record we removed
+		if (indexed) {
+			if (fromIndex > 0)
+				timeKeys.add(RecordKey.packTime(get(fromIndex-1).resets, get(fromIndex-1).uptime));
+			if (fromIndex < size())
+				timeKeys.add(RecordKey.packTime(get(fromIndex).resets, get(fromIndex).uptime));
+		}
+	}
+
+	@Override
+	public void clear() {
+		super.clear();
+		keys.clear();
+		timeKeys.clear();
+		indexed = true;
+		mixedIds = false;
+	}
+
+	private void addKey(DataRecord r) {
+		if (size() == 1)
+			commonId = r.id;
+		else if (r.id != commonId)
+			mixedIds = true;
+		if (!indexed) return;
+		if (!RecordKey.isPackable(r)) {
+			indexed = false;
+			keys.clear();
+			timeKeys.clear();
+			return;
+		}
+		keys.add(RecordKey.pack(r));
+		timeKeys.add(RecordKey.packTime(r.resets, r.uptime));
+	}
+
+	/**
+	 * Remove the keys for a record that was at this index.  The reset/uptime key is only removed if there is not
+	 * another type at the same time, which would be next to it in the list
+	 */
+	private void removeKey(DataRecord r, int index) {
+		if (!indexed) return;
+		keys.remove(RecordKey.pack(r));
+		if (index > 0 && sameTime(get(index-1), r)) return;
+		if (index < size() && sameTime(get(index), r)) return;
+		timeKeys.remove(RecordKey.packTime(r.resets, r.uptime));
+	}
+
+	public void removeRecords(int fromIndex, int toIndex) {
+		removeRange(fromIndex, toIndex);
+	}
+
+	public int getId(int i) { return get(i).id; }
+	public int getResets(int i) { return get(i).resets; }
+	public long getUptime(int i) { return get(i).uptime; }
+	public int getType(int i) { return get(i).type; }
+	public int getRawValue(int i, int field) { return get(i).fieldValue[field]; }
+	public int[] getFieldValues(int i) { return get(i).fieldValue; }
+
+	private static boolean sameTime(DataRecord a, DataRecord b) {
+		return a.resets == b.resets && a.uptime == b.uptime;
 	}
 
 	public boolean hasFrame(int id, long uptime, int resets) {
-    	if (getFrameIndex(id, uptime, resets) != -1)
-            	return true;
-        return false;
+		if (indexed && RecordKey.isPackable(resets, uptime, 0)) {
+			if (!timeKeys.contains(RecordKey.packTime(resets, uptime))) return false;
+			if (!mixedIds) return id == commonId;
+		}
+		return getFrameIndex(id, uptime, resets) != -1;
     }
 
-	
 	public boolean hasFrame(int id, long uptime, int resets, int type) {
-    	if (getFrameIndex(id, uptime, resets, type) != -1)
-            	return true;
-        return false;
+		if (indexed && RecordKey.isPackable(resets, uptime, type)) {
+			if (!keys.contains(RecordKey.pack(resets, uptime, type))) return false;
+			if (!mixedIds) return id == commonId;
+		}
+		return getFrameIndex(id, uptime, resets, type) != -1;
     }
-    
+
+	/**
+	 * Return the index of the first record with this id, reset and uptime, of any type
+	 * @return the index or -1 if it is not in the list
+	 */
     public int getFrameIndex(int id, long uptime, int resets) {
-    	for (int i=0; i<this.size(); i++) { 
+    	for (int i = lowerBound(uptime, resets, Integer.MIN_VALUE); i < size(); i++) {
     		DataRecord f = this.get(i);
-            if (f.id == id && f.uptime == uptime && f.resets == resets)
-            	return i;
+    		if (f.uptime != uptime || f.resets != resets)
+    			break;
+    		if (f.id == id)
+    			return i;
     	}
         return -1;
     }
 
+    /**
+	 * Return the index of the record with this id, reset, uptime and type
+	 * @return the index or -1 if it is not in the list
+	 */
     public int getFrameIndex(int id, long uptime, int resets, int type) {
-    	for (int i=0; i<this.size(); i++) { 
-    		DataRecord f = this.get(i);
-            if (f.id == id && f.uptime == uptime && f.resets == resets && f.type == type)
-            	return i;
-    	}
+    	int i = lowerBound(uptime, resets, type);
+    	if (i == size()) return -1;
+    	DataRecord f = this.get(i);
+    	if (f.id == id && f.uptime == uptime && f.resets == resets && f.type == type)
+    		return i;
         return -1;
     }
 
@@ -82,43 +211,73 @@ public class SortedDataRecordArrayList extends SortedArrayList<DataRecord> {
     	return getNearestFrameIndex(id, uptime, resets, get(0).type);
     }
     
+    /**
+     * Return the index of the record with this reset/uptime/type or the first record after it.  The list is sorted
+     * so we use a binary search.  If the key is past the end of the list then we return the last record, to match
+     * what the graphs expect.
+     * @param id
+     * @param uptime
+     * @param resets
+     * @param type
+     * @return the index or -1 if there is no such record
+     */
     public int getNearestFrameIndex(int id, long uptime, int resets, int type) {
-    	// start searching from the beginning where reset and uptime should be the lowest
-    	// could probablly optimize this with binary search aglo but needs to be implement from scatch as not an exact match
     	// First check special case where we have value off the end
     	if (this.size() == 0) return -1;
     	if (resets > this.get(size()-1).resets) return size()-1;
     	if (resets == this.get(size()-1).resets && uptime > this.get(size()-1).uptime) return size()-1;
     	
-    	for (int i=0; i<this.size(); i++) { 
-    		DataRecord f = this.get(i);
-    		if (compare(f, id, uptime, resets, type) <= 0)
-            	return i;
-    	}
-        return -1;
+    	int i = lowerBound(uptime, resets, type);
+    	if (i == size()) return -1;
+    	return i;
     }
 
     public int getNearestPrevFrameIndex(int id, long uptime, int resets) {
+    	if (this.size() == 0) return -1;
     	return getNearestPrevFrameIndex(id, uptime, resets, get(0).type);
     }
 
+    /**
+     * Return the index of the record with this reset/uptime/type or the record before it.
+     * @param id
+     * @param uptime
+     * @param resets
+     * @param type
+     * @return the index or -1 if there is no such record
+     */
     public int getNearestPrevFrameIndex(int id, long uptime, int resets, int type) {
-    	// start searching from the beginning where reset and uptime should be the lowest\
     	if (this.size() == 0) return -1;
     	// First check special case where we have value off the end, we return the last value
     	if (resets > this.get(size()-1).resets) return size()-1;
     	if (resets == this.get(size()-1).resets && uptime > this.get(size()-1).uptime) return size()-1;
     	
     	// Otherwise we search
-    	for (int i=0; i<this.size(); i++) { 
-    		DataRecord f = this.get(i);
-    		if (compare(f, id, uptime, resets, type) == 0) {
-            	return i;
-    		} else if (compare(f, id, uptime, resets, type) < 0) {
-            	return i-1;
-    		}
+    	int i = lowerBound(uptime, resets, type);
+    	if (i == size()) return -1;
+    	if (compare(get(i), id, uptime, resets, type) == 0)
+    		return i;
+    	return i-1;
+    }
+    
+    /**
+     * Binary search for the first record that is greater than or equal to the reset/uptime/type passed in.
+     * Returns size() if every record is less than the key
+     * @param uptime
+     * @param resets
+     * @param type
+     * @return
+     */
+    private int lowerBound(long uptime, int resets, int type) {
+    	int low = 0;
+    	int high = size();
+    	while (low < high) {
+    		int mid = (low + high) >>> 1;
+    		if (compare(get(mid), 0, uptime, resets, type) > 0)
+    			low = mid + 1; // the key is after the record at mid
+    		else
+    			high = mid;
     	}
-        return -1;
+    	return low;
     }
     
     private int compare(DataRecord p, int id, long uptime, int resets, int type) {
@@ -0,0 +1,125 @@
+package com.g0kla.telem.segDb;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.Random;
+
+import com.g0kla.telem.data.ByteArrayLayout;
+import com.g0kla.telem.data.DataRecord;
+
+/**
+ *
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2018 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Compare the time of getNearestFrameIndex() with the linear scan it replaced, for lists of 10k, 100k and 1M
+ * records.  This is not part of the unit tests.  Run it with:
+ *
+ *   java com.g0kla.telem.segDb.SortedDataRecordArrayListBenchmark [queries]
+ *
+ * Each size is run a few times first so that the JIT has compiled both searches before they are timed.
+ *
+ */
+class SortedDataRecordArrayListBenchmark {
+	static final int[] SIZES = {10000, 100000, 1000000};
+	static final int WARMUP_ROUNDS = 3;
+
+	public static void main(String[] args) throws Exception {
+		int queries = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		File layoutFile = File.createTempFile("layout", ".csv");
+		try {
+			Writer w = new FileWriter(layoutFile);
+			w.write("1,fields\n");
+			w.write("0,BYTE,value,1,-,0,NONE,0,0,0,value,benchmark field\n");
+			w.close();
+			ByteArrayLayout layout = new ByteArrayLayout("bench", layoutFile.getPath());
+			for (int size : SIZES) {
+				Random rand = new Random(size);
+				SortedDataRecordArrayList list = makeList(layout, size, rand);
+				DataRecord last = list.get(list.size()-1);
+				long[] uptimes = new long[queries];
+				int[] resets = new int[queries];
+				for (int q=0; q < queries; q++) {
+					resets[q] = rand.nextInt(last.resets + 1);
+					uptimes[q] = rand.nextInt((int)last.uptime + 1);
+				}
+				for (int i=0; i < WARMUP_ROUNDS; i++)
+					run(list, resets, uptimes);
+				long[] times = run(list, resets, uptimes);
+				System.out.println(size + " records: linear " + times[0]/queries + "ns binary " + times[1]/queries + "ns per query");
+			}
+		} finally {
+			layoutFile.delete();
+		}
+	}
+
+	/**
+	 * Run every query with both searches
+	 * @return the linear and the binary search time in ns
+	 */
+	private static long[] run(SortedDataRecordArrayList list, int[] resets, long[] uptimes) {
+		long t0 = System.nanoTime();
+		long check = 0;
+		for (int q=0; q < resets.length; q++)
+			check += linearNearest(list, uptimes[q], resets[q], 0);
+		long t1 = System.nanoTime();
+		for (int q=0; q < resets.length; q++)
+			check -= list.getNearestFrameIndex(1, uptimes[q], resets[q], 0);
+		long t2 = System.nanoTime();
+		if (check != 0)
+			throw new IllegalStateException("The binary search did not match the linear scan");
+		return new long[] {t1-t0, t2-t1};
+	}
+
+	/**
+	 * Build a sorted list with a few resets, gaps in the uptime and more than one type at the same uptime
+	 */
+	private static SortedDataRecordArrayList makeList(ByteArrayLayout layout, int size, Random rand) throws Exception {
+		SortedDataRecordArrayList list = new SortedDataRecordArrayList(size);
+		int resets = 0;
+		long uptime = 100;
+		int[] data = {0};
+		while (list.size() < size) {
+			if (rand.nextInt(1000) == 0) {
+				resets++;
+				uptime = rand.nextInt(100);
+			}
+			uptime = uptime + 1 + rand.nextInt(10);
+			int types = 1 + rand.nextInt(3);
+			for (int t=0; t < types && list.size() < size; t++)
+				list.addToEnd(new DataRecord(layout, 1, resets, uptime, t, data));
+		}
+		return list;
+	}
+
+	/*
+	 * The original linear scan
+	 */
+	private static int linearNearest(SortedDataRecordArrayList list, long uptime, int resets, int type) {
+		if (list.size() == 0) return -1;
+		DataRecord last = list.get(list.size()-1);
+		if (resets > last.resets) return list.size()-1;
+		if (resets == last.resets && uptime > last.uptime) return list.size()-1;
+		for (int i=0; i < list.size(); i++) {
+			DataRecord p = list.get(i);
+			if (resets < p.resets || (resets == p.resets && (uptime < p.uptime || (uptime == p.uptime && type <= p.type))))
+				return i;
+		}
+		return -1;
+	}
+}
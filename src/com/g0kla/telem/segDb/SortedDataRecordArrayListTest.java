@@ -0,0 +1,173 @@
+package com.g0kla.telem.segDb;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.g0kla.telem.data.ByteArrayLayout;
+import com.g0kla.telem.data.DataRecord;
+
+class SortedDataRecordArrayListTest {
+
+	File layoutFile;
+	ByteArrayLayout layout;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		layoutFile = File.createTempFile("layout", ".csv");
+		Writer w = new FileWriter(layoutFile);
+		w.write("1,fields\n");
+		w.write("0,BYTE,value,1,-,0,NONE,0,0,0,value,test field\n");
+		w.close();
+		layout = new ByteArrayLayout("test", layoutFile.getPath());
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		layoutFile.delete();
+	}
+
+	/**
+	 * Build a sorted list with a few resets, gaps in the uptime and more than one type at the same uptime
+	 */
+	private SortedDataRecordArrayList makeList(int size, Random rand) throws Exception {
+		SortedDataRecordArrayList list = new SortedDataRecordArrayList(size);
+		int resets = 0;
+		long uptime = 100;
+		int[] data = {0};
+		while (list.size() < size) {
+			if (rand.nextInt(1000) == 0) {
+				resets++;
+				uptime = rand.nextInt(100);
+			}
+			uptime = uptime + 1 + rand.nextInt(10);
+			int types = 1 + rand.nextInt(3);
+			for (int t=0; t < types && list.size() < size; t++)
+				list.addToEnd(new DataRecord(layout, 1, resets, uptime, t, data));
+		}
+		return list;
+	}
+
+	@Test
+	void testNearestMatchesLinearScan() throws Exception {
+		Random rand = new Random(42);
+		SortedDataRecordArrayList list = makeList(5000, rand);
+		DataRecord last = list.get(list.size()-1);
+		for (int q=0; q < 20000; q++) {
+			int resets = rand.nextInt(last.resets + 2);
+			long uptime = rand.nextInt((int)last.uptime + 20);
+			int type = rand.nextInt(4);
+			assertEquals(linearNearest(list, uptime, resets, type), list.getNearestFrameIndex(1, uptime, resets, type));
+			assertEquals(linearNearestPrev(list, uptime, resets, type), list.getNearestPrevFrameIndex(1, uptime, resets, type));
+		}
+		// Exact hits
+		for (int i=0; i < list.size(); i+=7) {
+			DataRecord r = list.get(i);
+			assertEquals(i, list.getNearestFrameIndex(1, r.uptime, r.resets, r.type));
+			assertEquals(i, list.getNearestPrevFrameIndex(1, r.uptime, r.resets, r.type));
+		}
+	}
+
+	@Test
+	void testEmptyList() {
+		SortedDataRecordArrayList list = new SortedDataRecordArrayList(1);
+		assertEquals(-1, list.getNearestFrameIndex(1, 10, 0));
+		assertEquals(-1, list.getNearestPrevFrameIndex(1, 10, 0));
+	}
+
+	@Test
+	void testKeyIndex() throws Exception {
+		Random rand = new Random(7);
+		SortedDataRecordArrayList list = new SortedDataRecordArrayList(10);
+		int[] data = {0};
+		int added = 0;
+		for (int n=0; n < 5000; n++) {
+			DataRecord r = new DataRecord(layout, 1, rand.nextInt(3), rand.nextInt(2000), rand.nextInt(3), data);
+			boolean dup = linearIndex(list, r.uptime, r.resets, r.type) != -1;
+			assertEquals(!dup, list.add(r));
+			if (!dup) added++;
+		}
+		assertEquals(added, list.size());
+		for (int i=1; i < list.size(); i++)
+			assertTrue(list.get(i-1).compareTo(list.get(i)) < 0);
+		checkIndex(list, rand);
+
+		// Unload part of the list and make sure the index follows
+		list.subList(100, 900).clear();
+		list.remove(50);
+		list.remove(list.size()-1);
+		checkIndex(list, rand);
+		list.clear();
+		assertFalse(list.hasFrame(1, 5, 0));
+		assertTrue(list.add(new DataRecord(layout, 1, 0, 5, 0, data)));
+		assertTrue(list.hasFrame(1, 5, 0));
+		assertFalse(list.hasFrame(2, 5, 0));
+	}
+
+	private void checkIndex(SortedDataRecordArrayList list, Random rand) {
+		for (int q=0; q < 5000; q++) {
+			int resets = rand.nextInt(3);
+			long uptime = rand.nextInt(2000);
+			int type = rand.nextInt(3);
+			int i = linearIndex(list, uptime, resets, type);
+			assertEquals(i, list.getFrameIndex(1, uptime, resets, type));
+			assertEquals(i != -1, list.hasFrame(1, uptime, resets, type));
+			assertFalse(list.hasFrame(2, uptime, resets, type));
+			boolean any = false;
+			for (int t=0; t < 3; t++)
+				if (linearIndex(list, uptime, resets, t) != -1) any = true;
+			assertEquals(any, list.hasFrame(1, uptime, resets));
+		}
+	}
+
+	private static int linearIndex(SortedDataRecordArrayList list, long uptime, int resets, int type) {
+		for (int i=0; i < list.size(); i++) {
+			DataRecord f = list.get(i);
+			if (f.uptime == uptime && f.resets == resets && f.type == type)
+				return i;
+		}
+		return -1;
+	}
+
+	/*
+	 * The original linear scans, kept here as the reference that the binary search must match
+	 */
+	private static int linearNearest(SortedDataRecordArrayList list, long uptime, int resets, int type) {
+		if (list.size() == 0) return -1;
+		DataRecord last = list.get(list.size()-1);
+		if (resets > last.resets) return list.size()-1;
+		if (resets == last.resets && uptime > last.uptime) return list.size()-1;
+		for (int i=0; i < list.size(); i++)
+			if (compare(list.get(i), uptime, resets, type) <= 0)
+				return i;
+		return -1;
+	}
+
+	private static int linearNearestPrev(SortedDataRecordArrayList list, long uptime, int resets, int type) {
+		if (list.size() == 0) return -1;
+		DataRecord last = list.get(list.size()-1);
+		if (resets > last.resets) return list.size()-1;
+		if (resets == last.resets && uptime > last.uptime) return list.size()-1;
+		for (int i=0; i < list.size(); i++) {
+			int c = compare(list.get(i), uptime, resets, type);
+			if (c == 0) return i;
+			if (c < 0) return i-1;
+		}
+		return -1;
+	}
+
+	private static int compare(DataRecord p, long uptime, int resets, int type) {
+		if (resets == p.resets && uptime == p.uptime && type == p.type) return 0;
+		if (resets != p.resets) return resets < p.resets ? -1 : 1;
+		if (uptime != p.uptime) return uptime < p.uptime ? -1 : 1;
+		return type < p.type ? -1 : 1;
+	}
+}
@@ -11,9 +11,12 @@ import java.io.InputStream;
 import java.io.Writer;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Properties;
-import java.util.TimeZone;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
@@ -304,6 +307,22 @@ public class Spacecraft implements Comparable<Spacecraft> {
 				layout[i] = new ByteArrayLayout(name, layoutFilename[i]);
 				layout[i].name = name;
 				layout[i].parentLayout = getOptionalProperty("layout"+i+".parentLayout");
+				String format = getOptionalProperty("layout"+i+".segmentFormat");
+				if (format != null) {
+					if (!format.equalsIgnoreCase(ByteArrayLayout.FORMAT_CSV) && !format.equalsIgnoreCase(ByteArrayLayout.FORMAT_BINARY))
+						throw new LayoutLoadException("Unknown segment format: " + format + " for layout " + name);
+					layout[i].segmentFormat = format.toLowerCase();
+				}
+				String rollups = getOptionalProperty("layout"+i+".rollups");
+				if (rollups != null && rollups.trim().length() > 0) {
+					String[] intervals = rollups.split(",");
+					layout[i].rollupIntervals = new int[intervals.length];
+					for (int j=0; j < intervals.length; j++) {
+						layout[i].rollupIntervals[j] = Integer.parseInt(intervals[j].trim());
+						if (layout[i].rollupIntervals[j] < 1)
+							throw new LayoutLoadException("Rollup interval must be at least one second: " + rollups + " for layout " + name);
+					}
+				}
 			}
 
 			// Lookup Tables
@@ -394,6 +413,11 @@ public class Spacecraft implements Comparable<Spacecraft> {
 	public static final DateFormat timeDateFormat = new SimpleDateFormat("HH:mm:ss");
 	public static final DateFormat dateDateFormat = new SimpleDateFormat("dd MMM yy");
 	
+	// Thread safe versions of the formats above, already set to UTC, for labels that are drawn often
+	public static final DateTimeFormatter UTC_TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneOffset.UTC);
+	public static final DateTimeFormatter UTC_DATE_FORMAT = DateTimeFormatter.ofPattern("dd MMM yy").withZone(ZoneOffset.UTC);
+	public static final long NO_UTC = Long.MIN_VALUE; // returned when the UTC for a reset is not known
+	
 	public boolean hasTimeZero() { 
 //		if (timeZero == null) return false;
 //		if (timeZero.size() == 0) return false;
@@ -421,45 +445,68 @@ public class Spacecraft implements Comparable<Spacecraft> {
 		return null;
 	}
 	
-	public String getUtcTimeForReset(int reset, long uptime) {
-		Date dt = null;
-		if (!epochUsesT0) {
-			dt = new Date(uptime *1000);
-		} else {
-//			if (timeZero == null) return null;
-//			if (reset >= timeZero.size()) return null;
-//			dt = new Date(timeZero.get(reset) + uptime*1000);
+	/**
+	 * Return the UTC for a reset and uptime as milliseconds since the Java epoch.  This does not create any objects, so
+	 * it can be used for every point on a graph.
+	 * @param reset
+	 * @param uptime
+	 * @return the time or NO_UTC if it is not known
+	 */
+	public long getUtcMillisForReset(int reset, long uptime) {
+		if (!epochUsesT0) // then we just have unix time in seconds
+			return uptime*1000;
+//		if (timeZero == null) return NO_UTC;
+//		if (reset >= timeZero.size()) return NO_UTC;
+//		return timeZero.get(reset) + uptime*1000;
+		return NO_UTC;
+	}
+	
+	/**
+	 * Add the UTC of each point to graph data from DataTable.getGraphData() as the UTC_COL, in milliseconds since the
+	 * Java epoch, so that it is worked out once when the data is loaded rather than each time the graph is drawn.  A
+	 * double holds any epoch millis exactly.  The fields share the resets and uptimes, so they share one column too.
+	 * Columns that were not loaded, such as the position, are left null.
+	 * @param graphData
+	 * @return the graph data, with NO_UTC where the time is not known
+	 */
+	public double[][][] addUtcColumn(double[][][] graphData) {
+		if (graphData == null || graphData.length == 0 || graphData[0] == null) return graphData;
+		double[] resets = graphData[0][DataTable.RESETS_COL];
+		double[] uptimes = graphData[0][DataTable.UPTIME_COL];
+		double[] utc = new double[uptimes.length];
+		for (int i=0; i < utc.length; i++)
+			utc[i] = getUtcMillisForReset((int)resets[i], (long)uptimes[i]);
+		for (int f=0; f < graphData.length; f++) {
+			if (graphData[f] == null) continue;
+			if (graphData[f].length <= DataTable.UTC_COL)
+				graphData[f] = Arrays.copyOf(graphData[f], DataTable.UTC_COL+1);
+			graphData[f][DataTable.UTC_COL] = utc;
 		}
-		timeDateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-		String time = timeDateFormat.format(dt); 
-		return time;
+		return graphData;
+	}
+	
+	public static String formatUtcTime(long millis) {
+		if (millis == NO_UTC) return "";
+		return UTC_TIME_FORMAT.format(Instant.ofEpochMilli(millis));
+	}
+	
+	public static String formatUtcDate(long millis) {
+		if (millis == NO_UTC) return "";
+		return UTC_DATE_FORMAT.format(Instant.ofEpochMilli(millis));
+	}
+	
+	public String getUtcTimeForReset(int reset, long uptime) {
+		return formatUtcTime(getUtcMillisForReset(reset, uptime));
 	}
 
 	public String getUtcDateForReset(int reset, long uptime) {
-		Date dt = null;
-		if (!epochUsesT0) {
-			dt = new Date(uptime *1000);
-		} else {
-//		if (timeZero == null) return null;
-//		if (reset >= timeZero.size()) return null;
-//		 dt = new Date(timeZero.get(reset) + uptime *1000);
-		}
-		dateDateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-		String time = dateDateFormat.format(dt);
-		return time;
+		return formatUtcDate(getUtcMillisForReset(reset, uptime));
 	}
 
 	public Date getUtcForReset(int reset, long uptime) {
-		if (!epochUsesT0) { // then we just have unit time in seconds
-			Date dt = new Date(uptime*1000);
-			return dt;
-		} else {
-//		if (timeZero == null) return null;
-//		if (reset >= timeZero.size()) return null;
-//		Date dt = new Date(timeZero.get(reset) + uptime*1000);
-//		return dt;
-			return null;
-		}
+		long millis = getUtcMillisForReset(reset, uptime);
+		if (millis == NO_UTC) return null;
+		return new Date(millis);
 	}
 
 //	public Date getUtcForReset(int reset, long uptime) {
@@ -470,18 +517,9 @@ public class Spacecraft implements Comparable<Spacecraft> {
 //	}
 	
 	public DateTime getUtcDateTimeForReset(int reset, long uptime) {
-		if (!epochUsesT0) { // then we just have unit time in seconds
-			Date dt = new Date(uptime*1000);
-			DateTime dateTime = new DateTime(dt);
-			return dateTime;
-		} else {
-//		if (timeZero == null) return null;
-//		if (reset >= timeZero.size()) return null;
-//		Date dt = new Date(timeZero.get(reset) + uptime*1000);
-//		DateTime dateTime = new DateTime(dt); // FIXME - this date conversion is not working.  Need to understand how it works.		
-//		return dateTime;
-		}
-		return null;
+		long millis = getUtcMillisForReset(reset, uptime);
+		if (millis == NO_UTC) return null;
+		return new DateTime(millis);
 	}
 
 	/**
@@ -0,0 +1,74 @@
+package com.g0kla.telem.segDb;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.g0kla.telem.data.DataRecord;
+
+/**
+ *
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2018 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The records that were added to a table, in the order they were saved, and the range of keys they cover.  Records
+ * normally arrive in order, but a late record can be earlier than the ones before it, so the range is the lowest and
+ * highest key in the change rather than the first and last record.
+ *
+ */
+public class TableChange {
+	private final String layoutName;
+	private final List<DataRecord> records;
+	private int fromReset;
+	private long fromUptime;
+	private int toReset;
+	private long toUptime;
+
+	TableChange(String layoutName, List<DataRecord> records) {
+		this.layoutName = layoutName;
+		this.records = Collections.unmodifiableList(records);
+		DataRecord first = records.get(0);
+		fromReset = toReset = first.resets;
+		fromUptime = toUptime = first.uptime;
+		for (DataRecord r : records) {
+			if (r.resets < fromReset || (r.resets == fromReset && r.uptime < fromUptime)) {
+				fromReset = r.resets;
+				fromUptime = r.uptime;
+			}
+			if (r.resets > toReset || (r.resets == toReset && r.uptime > toUptime)) {
+				toReset = r.resets;
+				toUptime = r.uptime;
+			}
+		}
+	}
+
+	public String getLayoutName() { return layoutName; }
+	public List<DataRecord> getRecords() { return records; }
+	public int size() { return records.size(); }
+	public int getFromReset() { return fromReset; }
+	public long getFromUptime() { return fromUptime; }
+	public int getToReset() { return toReset; }
+	public long getToUptime() { return toUptime; }
+
+	/**
+	 * The last record that was saved
+	 */
+	public DataRecord getLatest() { return records.get(records.size()-1); }
+
+	public String toString() {
+		return layoutName + ": " + records.size() + " records from " + fromReset + "/" + fromUptime + " to " + toReset + "/" + toUptime;
+	}
+}
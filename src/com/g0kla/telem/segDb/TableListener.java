@@ -0,0 +1,33 @@
+package com.g0kla.telem.segDb;
+
+/**
+ *
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2018 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Told when records are saved to a table, so that a screen or a server process can update itself with the new
+ * records rather than polling the table and querying it again.  See DataTable.addTableListener().
+ *
+ */
+public interface TableListener {
+	/**
+	 * Called on the executor of the listener with the records that were committed since it was last called.  If
+	 * several commits happen before the listener runs then they are given to it as one change.
+	 * @param change
+	 */
+	void recordsAdded(TableChange change);
+}
@@ -0,0 +1,136 @@
+package com.g0kla.telem.segDb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+import com.g0kla.telem.data.DataRecord;
+
+/**
+ *
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2018 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Passes the records committed to a table to its listeners.  Each listener runs on its own executor, so a slow
+ * listener does not hold up the table or the other listeners.  The table only adds the records to a list for each
+ * listener and the listener is scheduled once.  Anything committed before it runs is given to it in the same change.
+ *
+ */
+class TableNotifier {
+	private final String layoutName;
+	private final CopyOnWriteArrayList<Registration> registrations = new CopyOnWriteArrayList<Registration>();
+
+	private class Registration implements Runnable {
+		final TableListener listener;
+		final Executor executor;
+		final boolean ownExecutor; // we made it, so we shut it down when the listener is removed
+		private ArrayList<DataRecord> pending = new ArrayList<DataRecord>();
+		private boolean scheduled = false;
+
+		Registration(TableListener listener, Executor executor, boolean ownExecutor) {
+			this.listener = listener;
+			this.executor = executor;
+			this.ownExecutor = ownExecutor;
+		}
+
+		synchronized void post(List<DataRecord> records) {
+			pending.addAll(records);
+			if (scheduled) return; // it will pick these up when it runs
+			scheduled = true;
+			try {
+				executor.execute(this);
+			} catch (RejectedExecutionException e) {
+				scheduled = false; // the executor was shut down, so the listener is being removed
+				pending.clear();
+			}
+		}
+
+		public void run() {
+			ArrayList<DataRecord> records;
+			synchronized (this) {
+				records = pending;
+				pending = new ArrayList<DataRecord>();
+				scheduled = false;
+			}
+			if (records.size() == 0) return;
+			try {
+				listener.recordsAdded(new TableChange(layoutName, records));
+			} catch (RuntimeException e) {
+				e.printStackTrace(); // keep telling the other listeners
+			}
+		}
+	}
+
+	TableNotifier(String layoutName) {
+		this.layoutName = layoutName;
+	}
+
+	boolean hasListeners() {
+		return !registrations.isEmpty();
+	}
+
+	/**
+	 * Add a listener that runs on its own thread
+	 * @param listener
+	 */
+	void add(TableListener listener) {
+		ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Table listener " + layoutName);
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		registrations.add(new Registration(listener, executor, true));
+	}
+
+	/**
+	 * Add a listener that runs on an executor, such as one that passes the change to the Swing thread
+	 * @param listener
+	 * @param executor
+	 */
+	void add(TableListener listener, Executor executor) {
+		registrations.add(new Registration(listener, executor, false));
+	}
+
+	boolean remove(TableListener listener) {
+		for (Registration reg : registrations)
+			if (reg.listener == listener) {
+				registrations.remove(reg);
+				if (reg.ownExecutor)
+					((ExecutorService)reg.executor).shutdown();
+				return true;
+			}
+		return false;
+	}
+
+	/**
+	 * Tell the listeners about records that were committed.  This is called by the table while it holds its lock, so
+	 * it does not wait for the listeners.
+	 * @param records
+	 */
+	void recordsAdded(List<DataRecord> records) {
+		if (records.size() == 0) return;
+		for (Registration reg : registrations)
+			reg.post(records);
+	}
+}
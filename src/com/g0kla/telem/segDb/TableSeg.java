@@ -1,4 +1,10 @@
 package com.g0kla.telem.segDb;
+
+import java.util.StringTokenizer;
+
+import com.g0kla.telem.data.ByteArrayLayout;
+import com.g0kla.telem.data.DataRecord;
+
 /**
  * FOX 1 Telemetry Decoder
  * @author chris.e.thompson g0kla/ac2cz
@@ -27,6 +33,21 @@ public class TableSeg implements Comparable<TableSeg> {
 	int records = 0;
 	private boolean loaded = false;
 	String fileName;
+	String format = ByteArrayLayout.FORMAT_CSV; // how the records are stored in the file
+	
+	// The range of the packed keys of the records in memory from this segment, so that they can be unloaded again
+	long minKey = Long.MAX_VALUE;
+	long maxKey = -1;
+	boolean packedKeys = true; // false if a record key could not be packed, then we can not unload the segment
+	
+	// The smallest and largest raw value of each field in the segment file, so that a query can skip the segment
+	// without reading it.  They are only used when they include every record in the segment.
+	private int[] fieldMin;
+	private int[] fieldMax;
+	private int statsRecords = 0; // the records included in the min and max, or -1 if they are not known
+	
+	public static final String CSV_EXT = ".log";
+	public static final String BINARY_EXT = ".bin";
 	
 	/**
 	 * Create a new segment and give it a filename
@@ -35,10 +56,26 @@ public class TableSeg implements Comparable<TableSeg> {
 	 * @param f
 	 */
 	public TableSeg(int r, long u, String f) {
+		this(r, u, f, ByteArrayLayout.FORMAT_CSV);
+	}
+	
+	/**
+	 * Create a new segment that stores its records in the given format
+	 * @param r
+	 * @param u
+	 * @param f
+	 * @param format
+	 */
+	public TableSeg(int r, long u, String f, String format) {
 		fromReset = r;
 		fromUptime = u;
 		records = 0;
-		fileName = f+ "_" + r + "_"+ u +".log";
+		this.format = format;
+		fileName = makeFileName(f, r, u, format);
+	}
+	
+	static String makeFileName(String tableName, int r, long u, String format) {
+		return tableName + "_" + r + "_"+ u + (ByteArrayLayout.FORMAT_BINARY.equals(format) ? BINARY_EXT : CSV_EXT);
 	}
 	
 	/**
@@ -49,11 +86,144 @@ public class TableSeg implements Comparable<TableSeg> {
 	 * @param rec
 	 */
 	TableSeg(int r, long u, String f, int rec) {
+		this(r, u, f, rec, ByteArrayLayout.FORMAT_CSV);
+	}	
+	
+	TableSeg(int r, long u, String f, int rec, String format) {
 		fromReset = r;
 		fromUptime = u;
 		records = rec;
 		fileName = f;
-	}	
+		this.format = format;
+		statsRecords = rec == 0 ? 0 : -1;
+	}
+	
+	void clearKeyRange() {
+		minKey = Long.MAX_VALUE;
+		maxKey = -1;
+		packedKeys = true;
+	}
+	
+	/**
+	 * Extend the key range to include a record that is in memory
+	 * @param r
+	 */
+	void includeKey(DataRecord r) {
+		if (!RecordKey.isPackable(r)) {
+			packedKeys = false;
+			return;
+		}
+		long key = RecordKey.pack(r);
+		if (key < minKey) minKey = key;
+		if (key > maxKey) maxKey = key;
+	}
+	
+	/**
+	 * Extend the key range and the min and max of each field to include a record that has been read from or added to
+	 * the segment file
+	 * @param r
+	 */
+	void include(DataRecord r) {
+		includeKey(r);
+		includeStats(r);
+	}
+	
+	void clearStats() {
+		fieldMin = null;
+		fieldMax = null;
+		statsRecords = 0;
+	}
+	
+	void includeStats(DataRecord r) {
+		if (statsRecords < 0) return;
+		if (fieldMin == null) {
+			fieldMin = r.fieldValue.clone();
+			fieldMax = r.fieldValue.clone();
+		} else if (r.fieldValue.length != fieldMin.length) {
+			statsRecords = -1;
+			return;
+		} else {
+			for (int i=0; i < fieldMin.length; i++) {
+				if (r.fieldValue[i] < fieldMin[i]) fieldMin[i] = r.fieldValue[i];
+				if (r.fieldValue[i] > fieldMax[i]) fieldMax[i] = r.fieldValue[i];
+			}
+		}
+		statsRecords++;
+	}
+	
+	/**
+	 * Take the min and max that were built in another segment from the records of this one.  They are only taken if
+	 * they include as many records as this segment has now, in case records were added since they were read.
+	 * @param built
+	 * @return true if this segment now has its min and max
+	 */
+	boolean copyStats(TableSeg built) {
+		if (hasStats() || built.statsRecords != records) return false;
+		fieldMin = built.fieldMin;
+		fieldMax = built.fieldMax;
+		statsRecords = built.statsRecords;
+		return hasStats();
+	}
+	
+	/**
+	 * True if the min and max of each field include every record in the segment
+	 */
+	boolean hasStats() { 
+		return statsRecords == records && (records == 0 || fieldMin != null); 
+	}
+	
+	/**
+	 * True if the segment may have a record where the raw value of the field is between low and high, inclusive.  If
+	 * we do not have the statistics for the segment then it has to be read.
+	 * @param field
+	 * @param low
+	 * @param high
+	 */
+	boolean mayContain(int field, double low, double high) {
+		if (!hasStats()) return true;
+		if (records == 0) return false;
+		if (field < 0 || field >= fieldMin.length) return true;
+		return fieldMax[field] >= low && fieldMin[field] <= high;
+	}
+	
+	int getMin(int field) { return fieldMin[field]; }
+	int getMax(int field) { return fieldMax[field]; }
+	
+	/**
+	 * Read the min and max of each field that follow the format in the index, if they are there
+	 * @param st
+	 */
+	void readStats(StringTokenizer st) {
+		if (!st.hasMoreTokens()) return;
+		try {
+			int count = Integer.parseInt(st.nextToken());
+			int fields = Integer.parseInt(st.nextToken());
+			int[] min = new int[fields];
+			int[] max = new int[fields];
+			for (int i=0; i < fields; i++) {
+				min[i] = Integer.parseInt(st.nextToken());
+				max[i] = Integer.parseInt(st.nextToken());
+			}
+			fieldMin = min;
+			fieldMax = max;
+			statsRecords = count;
+		} catch (RuntimeException e) {
+			// Not in the format we expect, so the segment is read until the stats are rebuilt
+			clearStats();
+			statsRecords = -1;
+		}
+	}
+	
+	boolean hasKeys() { return maxKey >= 0; }
+	
+	/**
+	 * True if this segment has records in memory with keys in the same range as the other segment
+	 */
+	boolean overlaps(long min, long max) {
+		return hasKeys() && minKey <= max && maxKey >= min;
+	}
+	
+	public boolean isBinary() { return ByteArrayLayout.FORMAT_BINARY.equals(format); }
 	
 	public boolean isLoaded() { return loaded; }
 	public void setLoaded(boolean t) { loaded = t; }
@@ -64,6 +234,14 @@ public class TableSeg implements Comparable<TableSeg> {
 		s = s + fromUptime + ",";
 		s = s + records + ",";
 		s = s + fileName + ",";
+		if (fieldMin != null && hasStats()) {
+			// The min and max of each field follow the format, which older versions ignore
+			s = s + format + ",";
+			s = s + statsRecords + "," + fieldMin.length + ",";
+			for (int i=0; i < fieldMin.length; i++)
+				s = s + fieldMin[i] + "," + fieldMax[i] + ",";
+		} else if (isBinary())
+			s = s + format + ","; // CSV is the default, so the index is unchanged for existing tables
 		return s;
 	}
 	